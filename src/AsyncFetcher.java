@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Fetches html without blocking, reusing connections. Unlike
+ * {@link HttpsFetcher}, which opens a new socket and asks the server to close
+ * it for every url, all requests go through one {@link HttpClient}. It keeps
+ * the connections to each host open between requests, so a crawl of a site
+ * only pays for the TCP and TLS handshakes once per connection. Requests to
+ * servers that speak HTTP/2 share a single connection per host.
+ *
+ * Responses are only read into memory when they are html with a 200 status.
+ * Any other body, including the body of a redirect, is thrown away as it
+ * arrives. The html is decoded chunk by chunk as it arrives, using the charset
+ * of the response, or UTF-8 if it has none, so only the decoded text is kept
+ * and the raw bytes of a page are never held all at once.
+ *
+ * @see HtmlFetcher#fetch(URL, int)
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class AsyncFetcher {
+
+	/**
+	 * The default time to wait for a connection or a response
+	 */
+	public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+	/**
+	 * The fetcher shared by default
+	 */
+	public static final AsyncFetcher SHARED = new AsyncFetcher(DEFAULT_TIMEOUT);
+
+	/**
+	 * The client holding the open connections
+	 */
+	private final HttpClient client;
+
+	/**
+	 * The time to wait for a response
+	 */
+	private final Duration timeout;
+
+	/**
+	 * Initializes a fetcher
+	 *
+	 * @param timeout the time to wait for a connection or a response
+	 */
+	public AsyncFetcher(Duration timeout) {
+		this.client = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.NEVER).connectTimeout(timeout)
+				.build();
+		this.timeout = timeout;
+	}
+
+	/**
+	 * fetches the html at a url, following redirects, and waits for it. Waiting
+	 * for each response before following its redirect lets the redirect reuse the
+	 * connection the response came on.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return the html, or an empty string if the response is not html with a 200
+	 *         status or the url cannot be fetched over http
+	 * @throws IOException if the server cannot be reached or does not respond in
+	 *                     time, or the thread is interrupted while waiting
+	 */
+	public String get(URL url, int redirects) throws IOException {
+		while (true) {
+			HttpRequest request = request(url);
+			if (request == null) {
+				return "";
+			}
+			HttpResponse<String> response;
+			try {
+				response = client.send(request, this::subscribe);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while fetching " + url);
+			}
+			URL location = redirect(url, response, redirects--);
+			if (location == null) {
+				return response.body();
+			}
+			url = location;
+		}
+	}
+
+	/**
+	 * starts fetching the html at a url, following redirects, without waiting for
+	 * it. Redirects are followed as soon as their response arrives, which may be
+	 * before its connection can be reused. The future fails with an
+	 * {@link IOException} if the server cannot be reached or does not respond in
+	 * time.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return the html, or an empty string if the response is not html with a 200
+	 *         status or the url cannot be fetched over http
+	 */
+	public CompletableFuture<String> fetch(URL url, int redirects) {
+		HttpRequest request = request(url);
+		if (request == null) {
+			return CompletableFuture.completedFuture("");
+		}
+		return client.sendAsync(request, this::subscribe).thenCompose(response -> {
+			URL location = redirect(url, response, redirects);
+			return location == null ? CompletableFuture.completedFuture(response.body())
+					: fetch(location, redirects - 1);
+		});
+	}
+
+	/**
+	 * helper method that builds the request for a url
+	 *
+	 * @param url the url to fetch
+	 * @return the request, or null if the url cannot be fetched over http
+	 */
+	private HttpRequest request(URL url) {
+		try {
+			return HttpRequest.newBuilder(url.toURI()).timeout(timeout).GET().build();
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * helper method that finds where a response redirects to
+	 *
+	 * @param url       the url the response came from
+	 * @param response  the response
+	 * @param redirects the number of redirects left to follow
+	 * @return the url to follow, or null if the response is not a redirect to
+	 *         follow
+	 *
+	 * @see HtmlFetcher#isRedirect(java.util.Map)
+	 */
+	private static URL redirect(URL url, HttpResponse<String> response, int redirects) {
+		Optional<String> location = response.headers().firstValue("Location");
+		if (redirects < 1 || response.statusCode() < 300 || response.statusCode() > 399 || location.isEmpty()) {
+			return null;
+		}
+		try {
+			return new URL(url, location.get());
+		} catch (MalformedURLException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * helper method that decides how to read the body of a response once its
+	 * headers arrive
+	 *
+	 * @param info the status and headers of the response
+	 * @return a subscriber decoding html with a 200 status, and discarding any
+	 *         other body
+	 */
+	private BodySubscriber<String> subscribe(HttpResponse.ResponseInfo info) {
+		Optional<String> type = info.headers().firstValue("Content-Type");
+		if (info.statusCode() == 200 && type.isPresent() && type.get().toLowerCase().contains("html")) {
+			return new Decoder(charset(info.headers()));
+		}
+		// waits for the end of the body, so the connection is free again once the response is done
+		return BodySubscribers.mapping(BodySubscribers.ofByteArrayConsumer(bytes -> {
+		}), done -> "");
+	}
+
+	/**
+	 * helper method that finds the charset of a response
+	 *
+	 * @param headers the headers of the response
+	 * @return the charset named by the content type, or UTF-8 if it names none or
+	 *         an unknown one
+	 */
+	private static Charset charset(HttpHeaders headers) {
+		for (String parameter : headers.firstValue("Content-Type").orElse("").split(";")) {
+			String[] pair = parameter.strip().split("=", 2);
+			if (pair.length == 2 && pair[0].equalsIgnoreCase("charset")) {
+				try {
+					return Charset.forName(pair[1].replace("\"", "").strip());
+				} catch (IllegalArgumentException e) {
+					break;
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Decodes the body of a response into a string chunk by chunk as it arrives.
+	 * The bytes of a character split between two chunks are kept until the next
+	 * chunk arrives. Malformed input is replaced, like {@link String} does.
+	 *
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class Decoder implements BodySubscriber<String> {
+
+		/**
+		 * The decoder of the charset of the response
+		 */
+		private final CharsetDecoder decoder;
+
+		/**
+		 * The characters decoded from one chunk before they are appended
+		 */
+		private final CharBuffer chars;
+
+		/**
+		 * The text decoded so far
+		 */
+		private final StringBuilder text;
+
+		/**
+		 * The bytes of a character split between two chunks, or null if there are
+		 * none
+		 */
+		private ByteBuffer leftover;
+
+		/**
+		 * The decoded body, completed once the whole body is read
+		 */
+		private final CompletableFuture<String> body;
+
+		/**
+		 * Initializes a decoder
+		 *
+		 * @param charset the charset of the response
+		 */
+		private Decoder(Charset charset) {
+			this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			this.chars = CharBuffer.allocate(8192);
+			this.text = new StringBuilder();
+			this.leftover = null;
+			this.body = new CompletableFuture<String>();
+		}
+
+		@Override
+		public CompletionStage<String> getBody() {
+			return body;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers) {
+			try {
+				for (ByteBuffer buffer : buffers) {
+					decode(buffer, false);
+				}
+			} catch (CharacterCodingException e) {
+				body.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			body.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			try {
+				decode(ByteBuffer.allocate(0), true);
+				while (decoder.flush(chars).isOverflow()) {
+					drain();
+				}
+				drain();
+				body.complete(text.toString());
+			} catch (CharacterCodingException e) {
+				body.completeExceptionally(e);
+			}
+		}
+
+		/**
+		 * helper method that decodes a chunk of the body, after the bytes left over
+		 * from the chunk before it
+		 *
+		 * @param buffer the chunk
+		 * @param last   true if no chunk follows it
+		 * @throws CharacterCodingException if the decoder reports an error
+		 */
+		private void decode(ByteBuffer buffer, boolean last) throws CharacterCodingException {
+			ByteBuffer input = buffer;
+			if (leftover != null) {
+				input = ByteBuffer.allocate(leftover.remaining() + buffer.remaining()).put(leftover).put(buffer).flip();
+				leftover = null;
+			}
+			while (true) {
+				CoderResult result = decoder.decode(input, chars, last);
+				drain();
+				if (result.isUnderflow()) {
+					break;
+				}
+				if (result.isError()) {
+					result.throwException();
+				}
+			}
+			if (input.hasRemaining()) {
+				leftover = ByteBuffer.allocate(input.remaining()).put(input).flip();
+			}
+		}
+
+		/**
+		 * helper method that appends the decoded characters to the text
+		 */
+		private void drain() {
+			chars.flip();
+			text.append(chars);
+			chars.clear();
+		}
+	}
+}
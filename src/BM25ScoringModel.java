@@ -0,0 +1,67 @@
+/**
+ * Okapi BM25 {@link ScoringModel}. Terms that appear in fewer documents weigh
+ * more, repeated matches add less and less to the score, and the score of a
+ * document longer than average is lowered.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class BM25ScoringModel implements ScoringModel {
+
+	/** The default term frequency saturation. */
+	public static final double DEFAULT_K1 = 1.2;
+
+	/** The default strength of the document length normalization. */
+	public static final double DEFAULT_B = 0.75;
+
+	/**
+	 * How quickly repeated matches stop adding to the score
+	 */
+	private final double k1;
+
+	/**
+	 * How strongly the score depends on the document length, between 0 and 1
+	 */
+	private final double b;
+
+	/**
+	 * Initializes the model with the default parameters
+	 */
+	public BM25ScoringModel() {
+		this(DEFAULT_K1, DEFAULT_B);
+	}
+
+	/**
+	 * Initializes the model
+	 *
+	 * @param k1 how quickly repeated matches stop adding to the score
+	 * @param b  how strongly the score depends on the document length, between 0
+	 *           and 1
+	 */
+	public BM25ScoringModel(double k1, double b) {
+		this.k1 = k1;
+		this.b = b;
+	}
+
+	/**
+	 * returns the inverse document frequency of the term, which is never negative
+	 */
+	@Override
+	public double weight(int frequency, int documents) {
+		return Math.log(1 + (documents - frequency + 0.5) / (frequency + 0.5));
+	}
+
+	/**
+	 * returns the length normalization of the document multiplied by k1, so it is
+	 * computed once for each document instead of for every matching term
+	 */
+	@Override
+	public double norm(int length, double average) {
+		return k1 * (1 - b + b * length / (average > 0 ? average : 1));
+	}
+
+	@Override
+	public double score(int frequency, double weight, double norm) {
+		return weight * frequency * (k1 + 1) / (frequency + norm);
+	}
+}
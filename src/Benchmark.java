@@ -0,0 +1,1568 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import com.sun.net.httpserver.HttpServer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Class responsible for running the performance measurements for this project
+ * based on the provided command-line arguments. Each flag selects one
+ * measurement, and the results are printed to the console.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class Benchmark {
+
+	/**
+	 * Runs the measurements selected by the command-line arguments.
+	 *
+	 * @param args flag/value pairs used to select the measurements
+	 * @throws Exception if a measurement fails
+	 */
+	public static void main(String[] args) throws Exception {
+		var map = new ArgumentParser(args);
+		Path inputPath = map.getPath("-path");
+
+		if (map.hasFlag("-footprint")) {
+			footprint(inputPath);
+		}
+		if (map.hasFlag("-scaling")) {
+			scaling(inputPath);
+		}
+		if (map.hasFlag("-latency")) {
+			latency(inputPath);
+		}
+		if (map.hasFlag("-treemerge")) {
+			treeMerge(inputPath, map.threadArgs(map.getString("-threads", "5")));
+		}
+		if (map.hasFlag("-top")) {
+			topResults(inputPath, Integer.parseInt(map.getString("-top", "10")));
+		}
+		if (map.hasFlag("-maxscore")) {
+			ScoringModel model = map.hasFlag("-bm25") ? new BM25ScoringModel() : new ShareScoringModel();
+			maxScore(inputPath, map.getPath("-query"), Integer.parseInt(map.getString("-maxscore", "10")), model);
+		}
+		if (map.hasFlag("-scoring")) {
+			scoring(inputPath, map.getPath("-query"), Integer.parseInt(map.getString("-scoring", "10")));
+		}
+		if (map.hasFlag("-cache")) {
+			cache(inputPath, map.getPath("-query"), Integer.parseInt(map.getString("-cache", "1000")));
+		}
+		if (map.hasFlag("-boolean")) {
+			booleanAnd(inputPath);
+		}
+		if (map.hasFlag("-phrase")) {
+			phrase(inputPath);
+		}
+		if (map.hasFlag("-tokenizer")) {
+			tokenizer(inputPath);
+		}
+		if (map.hasFlag("-ingest")) {
+			ingest(inputPath, map.threadArgs(map.getString("-threads", "5")));
+		}
+		if (map.hasFlag("-html")) {
+			html(inputPath);
+		}
+		if (map.hasFlag("-fetch")) {
+			fetch(inputPath, Integer.parseInt(map.getString("-fetch", "500")));
+		}
+		if (map.hasFlag("-crawl")) {
+			crawl(inputPath, Integer.parseInt(map.getString("-crawl", "200")),
+					Integer.parseInt(map.getString("-delay", "50")), map.threadArgs(map.getString("-threads", "5")),
+					Integer.parseInt(map.getString("-fetches", String.valueOf(WebCrawler.DEFAULT_FETCHES))),
+					Integer.parseInt(map.getString("-hosts", "4")), Integer.parseInt(map.getString("-hostfetches",
+							String.valueOf(CrawlFrontier.DEFAULT_HOST_FETCHES))));
+		}
+		if (map.hasFlag("-seen")) {
+			seen(Integer.parseInt(map.getString("-seen", "200000")), map.threadArgs(map.getString("-threads", "5")));
+		}
+		if (map.hasFlag("-stemming")) {
+			stemming(inputPath);
+		}
+		if (map.hasFlag("-prefix")) {
+			prefix(inputPath);
+		}
+		if (map.hasFlag("-gc")) {
+			gcPauses(inputPath, Integer.parseInt(map.getString("-gc", "10")));
+		}
+	}
+
+	/**
+	 * compares the wall-clock time and the time spent waiting for the shared
+	 * index between merging every local index into the shared index and merging
+	 * local indexes pairwise first
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param threads   the number of threads to use
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void treeMerge(Path inputPath, int threads) throws IOException, InterruptedException {
+		System.out.printf("%-10s %12s %16s %14s%n", "merge", "wall (ms)", "lock wait (ms)", "shared merges");
+		for (int run = 0; run < 2; run++) {
+			TimedIndex direct = new TimedIndex();
+			long start = System.nanoTime();
+			ThreadSafeIndexBuilder.addInputWithThreads(inputPath, direct, threads);
+			long directTime = System.nanoTime() - start;
+
+			TimedIndex tree = new TimedIndex();
+			start = System.nanoTime();
+			ThreadSafeIndexBuilder.addInputWithTreeMerge(inputPath, tree, threads);
+			long treeTime = System.nanoTime() - start;
+
+			if (run > 0) {
+				System.out.printf("%-10s %12.1f %16.1f %14d%n", "direct", directTime / 1e6, direct.waiting.get() / 1e6,
+						direct.merges.get());
+				System.out.printf("%-10s %12.1f %16.1f %14d%n", "tree", treeTime / 1e6, tree.waiting.get() / 1e6,
+						tree.merges.get());
+			}
+		}
+	}
+
+	/**
+	 * Thread safe index that records how long callers of
+	 * {@link #addAll(InvertedIndex)} wait for each other. Merges are funneled
+	 * through a lock of its own first, so the write lock of the index itself is
+	 * never contended and all of the waiting is measured here.
+	 */
+	private static class TimedIndex extends ThreadSafeInvertedIndex {
+
+		/**
+		 * the lock every merge goes through
+		 */
+		private final ReentrantLock gate = new ReentrantLock();
+
+		/**
+		 * the total time spent waiting for the lock in nanoseconds
+		 */
+		private final AtomicLong waiting = new AtomicLong();
+
+		/**
+		 * the number of merges into this index
+		 */
+		private final AtomicLong merges = new AtomicLong();
+
+		@Override
+		public void addAll(InvertedIndex index) {
+			long start = System.nanoTime();
+			gate.lock();
+			try {
+				waiting.addAndGet(System.nanoTime() - start);
+				merges.incrementAndGet();
+				super.addAll(index);
+			} finally {
+				gate.unlock();
+			}
+		}
+	}
+
+	/**
+	 * measures search latency while other threads keep adding to the index, for
+	 * the single lock {@link ThreadSafeInvertedIndex} and the
+	 * {@link SnapshotInvertedIndex}
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void latency(Path inputPath) throws IOException, InterruptedException {
+		var locals = new ArrayList<InvertedIndex>();
+		for (Path textFile : TextFileFinder.list(inputPath)) {
+			InvertedIndex local = new InvertedIndex();
+			IndexBuilder.build(textFile, local);
+			locals.add(local);
+		}
+		var queries = new ArrayList<String>(locals.get(0).getUnmodifiableWords()).subList(0,
+				Math.min(5, locals.get(0).getUnmodifiableWords().size()));
+
+		System.out.printf("%-24s %10s %10s %10s %10s%n", "index", "searches", "p50 (us)", "p99 (us)", "max (us)");
+		for (int run = 0; run < 2; run++) {
+			latency("ThreadSafeInvertedIndex", new ThreadSafeInvertedIndex(), locals, queries, run > 0);
+			latency("SnapshotInvertedIndex", new SnapshotInvertedIndex(), locals, queries, run > 0);
+		}
+	}
+
+	/**
+	 * adds every local index with two writer threads while the current thread
+	 * keeps searching, and prints the search latency percentiles
+	 *
+	 * @param name    the name to print
+	 * @param index   the index to use
+	 * @param locals  the local indexes to add
+	 * @param queries the stems to search for
+	 * @param print   true to print the results, false for a warm up run
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void latency(String name, ThreadSafeInvertedIndex index, List<InvertedIndex> locals,
+			List<String> queries, boolean print) throws InterruptedException {
+		WorkQueue writers = new WorkQueue(2);
+		for (InvertedIndex local : locals) {
+			writers.execute(() -> index.addAll(local));
+		}
+		var latencies = new ArrayList<Long>();
+		Thread finisher = new Thread(() -> {
+			try {
+				writers.finish();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		finisher.start();
+		while (finisher.isAlive()) {
+			long start = System.nanoTime();
+			index.exactSearch(queries);
+			latencies.add(System.nanoTime() - start);
+		}
+		writers.shutdown();
+		index.commit();
+		index.close();
+
+		Collections.sort(latencies);
+		if (print && !latencies.isEmpty()) {
+			System.out.printf("%-24s %10d %10.1f %10.1f %10.1f%n", name, latencies.size(),
+					latencies.get(latencies.size() / 2) / 1e3, latencies.get(latencies.size() * 99 / 100) / 1e3,
+					latencies.get(latencies.size() - 1) / 1e3);
+		}
+	}
+
+	/**
+	 * times building the index with the single lock {@link ThreadSafeInvertedIndex}
+	 * and the {@link ShardedInvertedIndex} using 1 to 32 threads
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void scaling(Path inputPath) throws IOException, InterruptedException {
+		// warm up both implementations before timing
+		ThreadSafeIndexBuilder.addInputWithThreads(inputPath, new ThreadSafeInvertedIndex(), 4);
+		ThreadSafeIndexBuilder.addInputWithThreads(inputPath, new ShardedInvertedIndex(), 4);
+
+		System.out.printf("%8s %14s %14s%n", "threads", "single (ms)", "sharded (ms)");
+		for (int threads = 1; threads <= 32; threads *= 2) {
+			long start = System.nanoTime();
+			ThreadSafeIndexBuilder.addInputWithThreads(inputPath, new ThreadSafeInvertedIndex(), threads);
+			long single = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ThreadSafeIndexBuilder.addInputWithThreads(inputPath, new ShardedInvertedIndex(), threads);
+			long sharded = System.nanoTime() - start;
+
+			System.out.printf("%8d %14.1f %14.1f%n", threads, single / 1e6, sharded / 1e6);
+		}
+	}
+
+	/**
+	 * compares the heap used by the compact {@link PositionList} postings against
+	 * the heap the same positions take in the old
+	 * {@code TreeMap<String, TreeMap<String, TreeSet<Integer>>>} layout
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void footprint(Path inputPath) throws IOException {
+		// warm up so class loading is not counted against the index
+		IndexBuilder.addInput(inputPath, new InvertedIndex());
+		long before = usedMemory();
+		InvertedIndex index = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, index);
+		long compact = usedMemory() - before;
+
+		before = usedMemory();
+		var legacy = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
+		for (String word : index.getUnmodifiableWords()) {
+			var locations = new TreeMap<String, TreeSet<Integer>>();
+			for (String location : index.getUnmodifiableLocations(word)) {
+				locations.put(location, new TreeSet<Integer>(index.getUnmodifiablePositions(word, location)));
+			}
+			legacy.put(word, locations);
+		}
+		long boxed = usedMemory() - before;
+
+		System.out.printf("words: %d, locations: %d%n", legacy.size(), index.getCountsMap().size());
+		System.out.printf("compact index: %,d bytes%n", compact);
+		System.out.printf("TreeSet<Integer> layout: %,d bytes (not counting the shared stems and locations)%n", boxed);
+		System.out.printf("ratio: %.2fx%n", (double) boxed / compact);
+	}
+
+	/**
+	 * compares sorting every result of a search against keeping only the best k
+	 * results in a bounded heap, searching for every one character prefix so the
+	 * searches match most locations
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param k         the number of results to keep
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void topResults(Path inputPath, int k) throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, index);
+		var queries = new ArrayList<List<String>>();
+		for (String word : index.getUnmodifiableWords()) {
+			List<String> query = List.of(word.substring(0, 1));
+			if (!queries.contains(query)) {
+				queries.add(query);
+			}
+		}
+
+		System.out.printf("locations: %d, queries: %d, k: %d%n", index.getCountsMap().size(), queries.size(), k);
+		System.out.printf("%-12s %12s%n", "results", "time (ms)");
+		for (int run = 0; run < 20; run++) {
+			long start = System.nanoTime();
+			for (List<String> query : queries) {
+				var results = index.search(query, false);
+				Collections.sort(results);
+			}
+			long sorted = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (List<String> query : queries) {
+				index.search(query, false, k);
+			}
+			long top = System.nanoTime() - start;
+
+			if (run == 19) {
+				System.out.printf("%-12s %12.1f%n", "full sort", sorted / 1e6);
+				System.out.printf("%-12s %12.1f%n", "top k", top / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * compares scoring every document of a search against scoring one document at
+	 * a time with MaxScore, keeping the best k results of each query and checking
+	 * that both return the same results. The queries are read from a query file if
+	 * one is given, otherwise random queries of two to four indexed stems are
+	 * used, picking each stem as often as it appears in locations.
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param queryPath the query file to use, or null for random queries
+	 * @param k         the number of results to keep
+	 * @param model     the scoring model to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void maxScore(Path inputPath, Path queryPath, int k, ScoringModel model) throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, built);
+		// copy both so their posting lists are laid out on the heap the same way
+		InvertedIndex exhaustive = new InvertedIndex();
+		exhaustive.addAll(built);
+		exhaustive.setScoringModel(model);
+		InvertedIndex pruned = new InvertedIndex();
+		pruned.addAll(built);
+		pruned.setScoringModel(model);
+		pruned.commit();
+
+		var queries = queries(built, queryPath);
+
+		int differences = 0;
+		for (Collection<String> query : queries) {
+			if (!exhaustive.search(query, true, k).toString().equals(pruned.search(query, true, k).toString())) {
+				differences++;
+			}
+		}
+
+		System.out.printf("queries: %d, k: %d, differences: %d%n", queries.size(), k, differences);
+		System.out.printf("%-12s %12s%n", "scoring", "time (ms)");
+		for (int run = 0; run < 10; run++) {
+			long start = System.nanoTime();
+			for (Collection<String> query : queries) {
+				exhaustive.search(query, true, k);
+			}
+			long all = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (Collection<String> query : queries) {
+				pruned.search(query, true, k);
+			}
+			long skipping = System.nanoTime() - start;
+
+			if (run == 9) {
+				System.out.printf("%-12s %12.1f%n", "exhaustive", all / 1e6);
+				System.out.printf("%-12s %12.1f%n", "maxscore", skipping / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * reads the queries of a query file, or makes random queries of two to four
+	 * indexed stems if there is no query file, picking each stem as often as it
+	 * appears in locations
+	 *
+	 * @param built     the index to pick stems from
+	 * @param queryPath the query file to use, or null for random queries
+	 * @return the queries
+	 * @throws IOException if an IO error occurs
+	 */
+	private static ArrayList<Collection<String>> queries(InvertedIndex built, Path queryPath) throws IOException {
+		var queries = new ArrayList<Collection<String>>();
+		if (queryPath != null) {
+			for (String line : Files.readAllLines(queryPath, StandardCharsets.UTF_8)) {
+				var stems = TextFileStemmer.uniqueStems(line);
+				if (!stems.isEmpty()) {
+					queries.add(stems);
+				}
+			}
+		} else {
+			// pick stems as often as they appear in locations, like a query log would
+			var words = new ArrayList<String>(built.getUnmodifiableWords());
+			long[] cumulative = new long[words.size()];
+			long total = 0;
+			for (int i = 0; i < words.size(); i++) {
+				total += built.getUnmodifiableLocations(words.get(i)).size();
+				cumulative[i] = total;
+			}
+			Random random = new Random(212);
+			for (int i = 0; i < 5000; i++) {
+				var query = new TreeSet<String>();
+				int size = 2 + random.nextInt(3);
+				while (query.size() < size && query.size() < words.size()) {
+					int found = Arrays.binarySearch(cumulative, (long) (random.nextDouble() * total));
+					query.add(words.get(Math.min(words.size() - 1, found < 0 ? -(found + 1) : found + 1)));
+				}
+				queries.add(query);
+			}
+		}
+		return queries;
+	}
+
+	/**
+	 * compares the time to search with the {@link ShareScoringModel} and the
+	 * {@link BM25ScoringModel}, for an index scoring while searching, a committed
+	 * index using the precomputed term weights and document norms, and a committed
+	 * index keeping only the best k results. The queries are picked as in
+	 * {@link #maxScore(Path, Path, int, ScoringModel)}.
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param queryPath the query file to use, or null for random queries
+	 * @param k         the number of results to keep
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void scoring(Path inputPath, Path queryPath, int k) throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, built);
+		var queries = queries(built, queryPath);
+		var models = new ScoringModel[] { new ShareScoringModel(), new BM25ScoringModel() };
+
+		System.out.printf("queries: %d, k: %d%n", queries.size(), k);
+		System.out.printf("%-8s %12s %12s %12s%n", "model", "search (ms)", "commit (ms)", "top k (ms)");
+		for (ScoringModel model : models) {
+			// copy both so their posting lists are laid out on the heap the same way
+			InvertedIndex uncommitted = new InvertedIndex();
+			uncommitted.addAll(built);
+			uncommitted.setScoringModel(model);
+			InvertedIndex committed = new InvertedIndex();
+			committed.addAll(built);
+			committed.setScoringModel(model);
+			committed.commit();
+
+			long[] times = new long[3];
+			for (int run = 0; run < 10; run++) {
+				long start = System.nanoTime();
+				for (Collection<String> query : queries) {
+					uncommitted.search(query, true);
+				}
+				times[0] = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (Collection<String> query : queries) {
+					committed.search(query, true);
+				}
+				times[1] = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				for (Collection<String> query : queries) {
+					committed.search(query, true, k);
+				}
+				times[2] = System.nanoTime() - start;
+			}
+			System.out.printf("%-8s %12.1f %12.1f %12.1f%n", model.getClass().getSimpleName().replace("ScoringModel", ""),
+					times[0] / 1e6, times[1] / 1e6, times[2] / 1e6);
+		}
+	}
+
+	/**
+	 * compares running a stream of partial searches straight against the index
+	 * with running them through a {@link QueryCache}, checking that both return
+	 * the same results. The stream repeats a few popular queries often and the
+	 * rest rarely, like a query log would. The queries are picked as in
+	 * {@link #maxScore(Path, Path, int, ScoringModel)}.
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param queryPath the query file to use, or null for random queries
+	 * @param capacity  the number of searches the cache keeps
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void cache(Path inputPath, Path queryPath, int capacity) throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, built);
+		ThreadSafeInvertedIndex index = new ThreadSafeInvertedIndex();
+		index.addAll(built);
+		index.commit();
+
+		var distinct = queries(built, queryPath);
+		Random random = new Random(212);
+		var stream = new ArrayList<Collection<String>>();
+		for (int i = 0; i < 20000; i++) {
+			double skew = random.nextDouble();
+			stream.add(distinct.get((int) (distinct.size() * skew * skew * skew)));
+		}
+
+		QueryCache cache = new QueryCache(index, capacity);
+		int differences = 0;
+		for (Collection<String> query : stream) {
+			var cached = cache.search(QueryCache.key(query, false, MyServer.PAGE_SIZE),
+					() -> index.search(query, false, MyServer.PAGE_SIZE));
+			if (!cached.toString().equals(index.search(query, false, MyServer.PAGE_SIZE).toString())) {
+				differences++;
+			}
+		}
+
+		System.out.printf("queries: %d, distinct: %d, capacity: %d, differences: %d%n", stream.size(),
+				new HashSet<Collection<String>>(stream).size(), capacity, differences);
+		System.out.printf("%-12s %12s%n", "cache", "time (ms)");
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			for (Collection<String> query : stream) {
+				index.search(query, false, MyServer.PAGE_SIZE);
+			}
+			long direct = System.nanoTime() - start;
+
+			// each run starts with an empty cache
+			cache = new QueryCache(index, capacity);
+			start = System.nanoTime();
+			for (Collection<String> query : stream) {
+				cache.search(QueryCache.key(query, false, MyServer.PAGE_SIZE),
+						() -> index.search(query, false, MyServer.PAGE_SIZE));
+			}
+			long cached = System.nanoTime() - start;
+
+			if (run == 4) {
+				System.out.printf("%-12s %12.1f%n", "direct", direct / 1e6);
+				System.out.printf("%-12s %12.1f%n", "cached", cached / 1e6);
+				System.out.println(cache);
+			}
+		}
+	}
+
+	/**
+	 * compares AND queries of a common stem and a random stem run as a
+	 * {@link BooleanQuery} against searching for either stem and then dropping the
+	 * results that miss one of them, checking that both find the same locations
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void booleanAnd(Path inputPath) throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, index);
+		index.commit();
+
+		// the query is parsed and stemmed again, so only use stems stemming keeps
+		var words = new ArrayList<String>();
+		for (String word : index.getUnmodifiableWords()) {
+			if (TextFileStemmer.listStems(word).equals(List.of(word))) {
+				words.add(word);
+			}
+		}
+		var common = new ArrayList<String>(words);
+		common.sort(Comparator.comparingInt(word -> -index.documentFrequency(word)));
+		common = new ArrayList<String>(common.subList(0, Math.min(50, common.size())));
+		Random random = new Random(212);
+		var queries = new ArrayList<List<String>>();
+		for (int i = 0; i < 5000; i++) {
+			queries.add(List.of(common.get(random.nextInt(common.size())), words.get(random.nextInt(words.size()))));
+		}
+
+		int differences = 0;
+		for (List<String> query : queries) {
+			var filtered = new TreeSet<String>();
+			for (InvertedIndex.Result result : filterAnd(index, query)) {
+				filtered.add(result.getWhere());
+			}
+			var found = new TreeSet<String>();
+			for (InvertedIndex.Result result : index.booleanSearch(BooleanQuery.parse(String.join(" AND ", query)), true)) {
+				found.add(result.getWhere());
+			}
+			if (!filtered.equals(found)) {
+				differences++;
+			}
+		}
+
+		System.out.printf("queries: %d, differences: %d%n", queries.size(), differences);
+		System.out.printf("%-12s %12s%n", "and", "time (ms)");
+		for (int run = 0; run < 10; run++) {
+			long start = System.nanoTime();
+			for (List<String> query : queries) {
+				filterAnd(index, query);
+			}
+			long filtering = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (List<String> query : queries) {
+				index.booleanSearch(BooleanQuery.parse(String.join(" AND ", query)), true);
+			}
+			long intersecting = System.nanoTime() - start;
+
+			if (run == 9) {
+				System.out.printf("%-12s %12.1f%n", "filter", filtering / 1e6);
+				System.out.printf("%-12s %12.1f%n", "intersect", intersecting / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * runs an AND query by searching for any of its stems and keeping the results
+	 * that hold every stem
+	 *
+	 * @param index the index to search
+	 * @param query the stems that must all appear
+	 * @return the results holding every stem
+	 */
+	private static ArrayList<InvertedIndex.Result> filterAnd(InvertedIndex index, List<String> query) {
+		var kept = new ArrayList<InvertedIndex.Result>();
+		for (InvertedIndex.Result result : index.exactSearch(query)) {
+			boolean all = true;
+			for (String stem : query) {
+				all = all && index.containsLocation(stem, result.getWhere());
+			}
+			if (all) {
+				kept.add(result);
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * compares three word phrase queries taken from the indexed files against an
+	 * AND query followed by a check of the positions of every result, checking
+	 * that both find the same locations
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void phrase(Path inputPath) throws IOException {
+		InvertedIndex index = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, index);
+		index.commit();
+
+		var locations = new ArrayList<String>(index.getUnmodifiableLocations());
+		Random random = new Random(212);
+		var queries = new ArrayList<List<String>>();
+		for (int tries = 0; queries.size() < 2000 && tries < 100000; tries++) {
+			List<String> stems = TextFileStemmer.listStems(Path.of(locations.get(random.nextInt(locations.size()))));
+			if (stems.size() < 3) {
+				continue;
+			}
+			int start = random.nextInt(stems.size() - 2);
+			List<String> query = List.copyOf(stems.subList(start, start + 3));
+			// the query is parsed and stemmed again, so only use stems stemming keeps
+			if (TextFileStemmer.listStems(String.join(" ", query)).equals(query)) {
+				queries.add(query);
+			}
+		}
+
+		int differences = 0;
+		for (List<String> query : queries) {
+			var filtered = new TreeSet<String>();
+			for (InvertedIndex.Result result : filterPhrase(index, query)) {
+				filtered.add(result.getWhere());
+			}
+			var found = new TreeSet<String>();
+			for (InvertedIndex.Result result : index.booleanSearch(BooleanQuery.parse("\"" + String.join(" ", query) + "\""), true)) {
+				found.add(result.getWhere());
+			}
+			if (!filtered.equals(found)) {
+				differences++;
+			}
+		}
+
+		System.out.printf("queries: %d, differences: %d%n", queries.size(), differences);
+		System.out.printf("%-12s %12s%n", "phrase", "time (ms)");
+		for (int run = 0; run < 10; run++) {
+			long start = System.nanoTime();
+			for (List<String> query : queries) {
+				filterPhrase(index, query);
+			}
+			long filtering = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (List<String> query : queries) {
+				index.booleanSearch(BooleanQuery.parse("\"" + String.join(" ", query) + "\""), true);
+			}
+			long merging = System.nanoTime() - start;
+
+			if (run == 9) {
+				System.out.printf("%-12s %12.1f%n", "filter", filtering / 1e6);
+				System.out.printf("%-12s %12.1f%n", "merge", merging / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * runs a phrase query by running an AND query of its stems and keeping the
+	 * results where every stem follows the one before it
+	 *
+	 * @param index the index to search
+	 * @param query the stems of the phrase, in order
+	 * @return the results holding the phrase
+	 */
+	private static ArrayList<InvertedIndex.Result> filterPhrase(InvertedIndex index, List<String> query) {
+		var kept = new ArrayList<InvertedIndex.Result>();
+		for (InvertedIndex.Result result : index.booleanSearch(BooleanQuery.parse(String.join(" AND ", query)), true)) {
+			boolean found = false;
+			for (int position : index.getUnmodifiablePositions(query.get(0), result.getWhere())) {
+				boolean next = true;
+				for (int i = 1; i < query.size() && next; i++) {
+					next = index.getUnmodifiablePositions(query.get(i), result.getWhere()).contains(position + i);
+				}
+				found = found || next;
+			}
+			if (found) {
+				kept.add(result);
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * compares splitting every line of the input into words with
+	 * {@link TextParser#parse(String)} and with a {@link TextTokenizer}, checking
+	 * that both find exactly the same words. Besides the input, the check also
+	 * covers random lines mixing letters, accents, digits, punctuation and the
+	 * different kinds of Unicode whitespace.
+	 *
+	 * @param inputPath the text file or directory to split
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void tokenizer(Path inputPath) throws IOException {
+		var lines = new ArrayList<String>();
+		for (Path file : TextFileFinder.find(inputPath).collect(Collectors.toList())) {
+			lines.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+		}
+
+		String alphabet = "aZq \t\n\u000b\r.,'-9_\u00a0\u0085\u1680\u2007\u2028\u202f\u3000\u001c"
+				+ "\u00e9\u00c5\u00df\u0130\u03a3\u03c3\u01c5\u0301\u0307\u212a\ufb01\u4e2d\u0663\ud835\udc00";
+		var conformance = new ArrayList<String>(lines);
+		Random random = new Random(212);
+		for (int i = 0; i < 100000; i++) {
+			var line = new StringBuilder();
+			int size = random.nextInt(12);
+			for (int j = 0; j < size; j++) {
+				int c = random.nextInt(alphabet.length());
+				if (Character.isHighSurrogate(alphabet.charAt(c))) {
+					line.append(alphabet, c, c + 2);
+				} else if (!Character.isLowSurrogate(alphabet.charAt(c))) {
+					line.append(alphabet.charAt(c));
+				}
+			}
+			conformance.add(line.toString());
+		}
+
+		var tokenizer = new TextTokenizer();
+		int differences = 0;
+		for (String line : conformance) {
+			if (!Arrays.equals(TextParser.parse(line), tokenizer.parse(line))) {
+				differences++;
+			}
+		}
+
+		System.out.printf("lines: %d, checked: %d, differences: %d%n", lines.size(), conformance.size(), differences);
+		System.out.printf("%-12s %12s%n", "tokenizer", "time (ms)");
+		for (int run = 0; run < 10; run++) {
+			long words = 0;
+			long start = System.nanoTime();
+			for (String line : lines) {
+				words += TextParser.parse(line).length;
+			}
+			long regex = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (String line : lines) {
+				words -= tokenizer.tokenize(line);
+			}
+			long scanning = System.nanoTime() - start;
+
+			if (run == 9) {
+				System.out.printf("%-12s %12.1f%n", "regex", regex / 1e6);
+				System.out.printf("%-12s %12.1f%n", "scan", scanning / 1e6);
+				System.out.printf("word count difference: %d%n", words);
+			}
+		}
+	}
+
+	/**
+	 * compares indexing the input by reading every line into a string, by mapping
+	 * every file into memory, and by mapping every file with large files split
+	 * into parts indexed in parallel, checking that all three build the same
+	 * index. The input is also joined into one large file in the temporary
+	 * directory, which is indexed the same three ways. Files made to hit the edges
+	 * of decoding into a buffer, such as a character outside the basic plane
+	 * decoded when one char of the buffer is left, are checked the same way.
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param threads   the number of threads to use
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void ingest(Path inputPath, int threads) throws IOException, InterruptedException {
+		List<Path> files = TextFileFinder.find(inputPath).collect(Collectors.toList());
+		Path joined = Files.createTempFile("ingest", ".txt");
+		try {
+			for (Path file : files) {
+				Files.write(joined, Files.readAllBytes(file), StandardOpenOption.APPEND);
+			}
+			System.out.printf("files: %d, joined: %d bytes, parts: %d%n", files.size(), Files.size(joined),
+					IndexBuilder.split(joined, IndexBuilder.CHUNK_SIZE).size() - 1);
+			ingest("input", inputPath, threads);
+			ingest("joined", joined, threads);
+			System.out.printf("edge cases: %d, differences: %d%n", EDGE_CASES.length, edgeCases());
+		} finally {
+			Files.delete(joined);
+		}
+	}
+
+	/**
+	 * helper method that times indexing the same files the three ways
+	 *
+	 * @param name      the name of the input
+	 * @param inputPath the text file or directory to index
+	 * @param threads   the number of threads to use
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void ingest(String name, Path inputPath, int threads) throws IOException, InterruptedException {
+		List<Path> files = TextFileFinder.find(inputPath).collect(Collectors.toList());
+		System.out.printf("%-8s %-12s %12s%n", name, "ingestion", "time (ms)");
+		for (int run = 0; run < 5; run++) {
+			long start = System.nanoTime();
+			var read = new InvertedIndex();
+			for (Path file : files) {
+				readLines(file, read);
+			}
+			long reading = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			var mapped = new InvertedIndex();
+			for (Path file : files) {
+				IndexBuilder.build(file, mapped);
+			}
+			long mapping = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			var chunked = new ThreadSafeInvertedIndex();
+			var workQ = new WorkQueue(threads);
+			for (Path file : files) {
+				workQ.execute(() -> {
+					try {
+						var local = new InvertedIndex();
+						IndexBuilder.build(file, local);
+						chunked.addAll(local);
+					} catch (IOException e) {
+						System.err.println("Error occured while building the index with threads");
+					}
+				});
+			}
+			workQ.finish();
+			workQ.shutdown();
+			long whole = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			var parallel = new ThreadSafeInvertedIndex();
+			ThreadSafeIndexBuilder.addInputWithThreads(inputPath, parallel, threads);
+			long splitting = System.nanoTime() - start;
+
+			if (run == 4) {
+				System.out.printf("%-8s %-12s %12.1f%n", "", "read lines", reading / 1e6);
+				System.out.printf("%-8s %-12s %12.1f%n", "", "mapped", mapping / 1e6);
+				System.out.printf("%-8s %-12s %12.1f%n", "", "whole files", whole / 1e6);
+				System.out.printf("%-8s %-12s %12.1f%n", "", "split files", splitting / 1e6);
+				boolean same = read.toString().equals(mapped.toString())
+						&& read.toString().equals(chunked.toString()) && read.toString().equals(parallel.toString());
+				for (Path file : files) {
+					same = same && read.getCount(file.toString()) == mapped.getCount(file.toString())
+							&& read.getCount(file.toString()) == chunked.getCount(file.toString())
+							&& read.getCount(file.toString()) == parallel.getCount(file.toString());
+				}
+				System.out.printf("%-8s same index: %b%n", "", same);
+			}
+		}
+	}
+
+	/**
+	 * helper method that indexes a file by reading every line into a string, the
+	 * way files were read before they were mapped into memory
+	 *
+	 * @param file  the text file to index
+	 * @param index the index to add to
+	 * @throws IOException if an IO error occurs
+	 */
+	private static void readLines(Path file, InvertedIndex index) throws IOException {
+		try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			var tokenizer = TextTokenizer.forThread();
+			String location = file.toString();
+			int position = 1;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int words = tokenizer.tokenize(line);
+				for (int i = 0; i < words; i++) {
+					index.add(CachingStemmer.SHARED.stem(tokenizer.token(i)), location, position++);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Texts that hit the edges of decoding a file into the buffer of
+	 * {@link IndexBuilder#build(Path, long, long, String, InvertedIndex)}, which
+	 * starts with 8192 chars
+	 */
+	private static final String[] EDGE_CASES = { "a".repeat(8191) + "\uD83D\uDE00 tail\n",
+			"a".repeat(8190) + "\uD83D\uDE00 tail\n", "b".repeat(16383) + "\uD83D\uDE00 tail\r\nnext line\r",
+			"\uD83D\uDE00".repeat(5000) + " word\n", "c".repeat(8192) + "\r\n\r\nother words", "\u00e9".repeat(8191) };
+
+	/**
+	 * helper method that indexes every edge case by reading lines into strings and
+	 * by mapping the file into memory
+	 *
+	 * @return the number of edge cases that build a different index
+	 * @throws IOException if an IO error occurs
+	 */
+	private static int edgeCases() throws IOException {
+		int differences = 0;
+		Path file = Files.createTempFile("edge", ".txt");
+		try {
+			for (String text : EDGE_CASES) {
+				Files.writeString(file, text, StandardCharsets.UTF_8);
+				var read = new InvertedIndex();
+				readLines(file, read);
+				var mapped = new InvertedIndex();
+				IndexBuilder.build(file, mapped);
+				if (!read.toString().equals(mapped.toString())
+						|| read.getCount(file.toString()) != mapped.getCount(file.toString())) {
+					differences++;
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+		return differences;
+	}
+
+	/**
+	 * compares cleaning html and finding its links with the regular expressions
+	 * of {@link HtmlCleaner} and {@link LinkParser}, the way pages were cleaned
+	 * before, and with one pass of an {@link HtmlScanner}, checking that both give
+	 * the same text and links. The pages are made from the input, with its words
+	 * mixed with links, entities, comments, scripts and other markup.
+	 *
+	 * @param inputPath the text file or directory to make pages from
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void html(Path inputPath) throws IOException {
+		URL base = new URL("https://www.example.com/docs/index.html");
+		var pages = new ArrayList<String>();
+		Random random = new Random(20);
+		for (Path file : TextFileFinder.find(inputPath).collect(Collectors.toList())) {
+			var page = new StringBuilder("<!DOCTYPE html>\n<html lang=\"en\">\n<HEAD><title>");
+			page.append(file.getFileName()).append("</title>\n<style type=\"text/css\">p { margin: 0; }</style>");
+			page.append("</head>\n<body class=\"page\">\n");
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				page.append("<p>");
+				for (String word : line.split(" ")) {
+					switch (random.nextInt(24)) {
+					case 0 -> page.append("<a href=\"").append(word.replaceAll("\\W", "")).append(".html#top\">")
+							.append(word).append("</a>");
+					case 1 -> page.append("<A class=\"nav\" HREF=\"/").append(random.nextInt(100)).append("?q=")
+							.append(word.replaceAll("\\W", "")).append("&amp;p=2\">").append(word).append("</A>");
+					case 2 -> page.append(word).append("&nbsp;&mdash;");
+					case 3 -> page.append("<!-- ").append(word).append(" <a href=\"hidden.html\"> -->");
+					case 4 -> page.append("<script>var s = \"<a href='x.html'>").append(word).append("</a>\";</script>");
+					case 5 -> page.append("<em>").append(word).append("</em>");
+					case 6 -> page.append("<noscript><img src=\"t.gif\"></noscript>").append(word);
+					default -> page.append(word);
+					}
+					page.append(random.nextInt(8) == 0 ? "\n" : " ");
+				}
+				page.append("</p>\n");
+			}
+			pages.add(page.append("<svg><text>").append(pages.size()).append("</text></svg>\n</body>\n</html>\n")
+					.toString());
+		}
+
+		var scanner = new HtmlScanner();
+		int differences = 0;
+		long links = 0;
+		for (String page : pages) {
+			String html = HtmlCleaner.stripBlockElements(page);
+			var expected = LinkParser.listLinks(base, html);
+			expected.remove(0);
+			String text = HtmlCleaner.stripEntities(HtmlCleaner.stripTags(html));
+			scanner.scan(base, page);
+			if (!text.equals(scanner.toString()) || !expected.toString().equals(scanner.getLinks().toString())) {
+				differences++;
+			}
+			links += expected.size();
+		}
+
+		System.out.printf("pages: %d, links: %d, differences: %d%n", pages.size(), links, differences);
+		System.out.printf("%-12s %12s%n", "html", "time (ms)");
+		var tokenizer = new TextTokenizer();
+		for (int run = 0; run < 10; run++) {
+			long words = 0;
+			long start = System.nanoTime();
+			for (String page : pages) {
+				String html = HtmlCleaner.stripBlockElements(page);
+				links -= LinkParser.listLinks(base, html).size() - 1;
+				words += tokenizer.tokenize(HtmlCleaner.stripEntities(HtmlCleaner.stripTags(html)));
+			}
+			long regex = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (String page : pages) {
+				scanner.scan(base, page);
+				links += scanner.getLinks().size();
+				words -= tokenizer.tokenize(scanner.getText(), 0, scanner.length());
+			}
+			long scanning = System.nanoTime() - start;
+
+			if (run == 9) {
+				System.out.printf("%-12s %12.1f%n", "regex", regex / 1e6);
+				System.out.printf("%-12s %12.1f%n", "scan", scanning / 1e6);
+				System.out.printf("word count difference: %d%n", words);
+			}
+		}
+	}
+
+	/**
+	 * compares fetching pages with a new socket for every request and with an
+	 * {@link AsyncFetcher}, one page at a time and with every page requested at
+	 * once, checking that all of them get the same html. The pages are served by
+	 * a local http server standing in for the web server, which serves the input
+	 * files as html pages, and every other page redirects to the next one.
+	 *
+	 * @param inputPath the text file or directory to serve
+	 * @param count     the number of pages to fetch
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void fetch(Path inputPath, int count) throws IOException, InterruptedException {
+		var pages = new ArrayList<byte[]>();
+		for (Path file : TextFileFinder.find(inputPath).collect(Collectors.toList())) {
+			String text = Files.readString(file, StandardCharsets.UTF_8);
+			pages.add(("<html>\n<body>\n" + text + "</body>\n</html>\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		// the stand-in server delays small writes on open connections unless told not
+		// to, and stops keeping connections open once 200 are idle
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		System.setProperty("sun.net.httpserver.maxIdleConnections", "100000");
+		var connections = ConcurrentHashMap.<InetSocketAddress>newKeySet();
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		server.setExecutor(executor);
+		server.createContext("/", exchange -> {
+			connections.add(exchange.getRemoteAddress());
+			int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+			if (page % 2 == 1) {
+				byte[] body = ("<a href=\"/" + (page + 1) + "\">moved</a>\n").getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Location", "/" + (page + 1));
+				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+				exchange.sendResponseHeaders(302, body.length);
+				exchange.getResponseBody().write(body);
+			} else {
+				byte[] body = pages.get(page / 2 % pages.size());
+				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		server.start();
+
+		try {
+			String root = "http://localhost:" + server.getAddress().getPort() + "/";
+			var urls = new ArrayList<URL>();
+			for (int i = 0; i < count; i++) {
+				urls.add(new URL(root + i));
+			}
+
+			System.out.printf("%-12s %12s %12s%n", "fetch", "time (ms)", "connections");
+			for (int run = 0; run < 3; run++) {
+				var sockets = new ArrayList<String>();
+				connections.clear();
+				long start = System.nanoTime();
+				for (URL url : urls) {
+					sockets.add(HtmlFetcher.fetchWithSockets(url, 1));
+				}
+				long socket = System.nanoTime() - start;
+				int socketConnections = connections.size();
+
+				// new fetchers, so every connection of a run is opened by that run
+				var fetcher = new AsyncFetcher(AsyncFetcher.DEFAULT_TIMEOUT);
+				var reused = new ArrayList<String>();
+				connections.clear();
+				start = System.nanoTime();
+				for (URL url : urls) {
+					reused.add(fetcher.get(url, 1));
+				}
+				long pooled = System.nanoTime() - start;
+				int pooledConnections = connections.size();
+
+				fetcher = new AsyncFetcher(AsyncFetcher.DEFAULT_TIMEOUT);
+				connections.clear();
+				start = System.nanoTime();
+				var futures = new ArrayList<CompletableFuture<String>>();
+				for (URL url : urls) {
+					futures.add(fetcher.fetch(url, 1));
+				}
+				var concurrent = new ArrayList<String>();
+				for (var future : futures) {
+					concurrent.add(future.join());
+				}
+				long async = System.nanoTime() - start;
+				int asyncConnections = connections.size();
+
+				if (run == 2) {
+					int differences = 0;
+					for (int i = 0; i < count; i++) {
+						String html = String.join("\n", reused.get(i).lines().collect(Collectors.toList()));
+						if (!sockets.get(i).equals(html) || !reused.get(i).equals(concurrent.get(i))) {
+							differences++;
+						}
+					}
+					System.out.printf("%-12s %12.1f %12d%n", "socket", socket / 1e6, socketConnections);
+					System.out.printf("%-12s %12.1f %12d%n", "pooled", pooled / 1e6, pooledConnections);
+					System.out.printf("%-12s %12.1f %12d%n", "async", async / 1e6, asyncConnections);
+					System.out.printf("pages: %d, differences: %d%n", count, differences);
+				}
+			}
+		} finally {
+			server.stop(0);
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * compares crawling on the work queue with crawling on fetcher threads, for a
+	 * site spread over more and more hosts, checking that both build the same
+	 * index. The hosts are local http servers standing in for slow web servers,
+	 * which wait before answering every request. Each page holds one of the input
+	 * files and links to the two pages after it, which are on the next hosts, so
+	 * the whole site is found from the first page. Every host is fetched from by
+	 * a limited number of threads at a time, so the pages per second grow with the
+	 * number of hosts.
+	 *
+	 * @param inputPath   the text file or directory to serve
+	 * @param count       the number of pages of the site
+	 * @param delay       the milliseconds the servers wait before answering
+	 * @param threads     the number of threads of the work queue
+	 * @param fetches     the number of pages fetched at the same time
+	 * @param hosts       the most hosts to spread the site over
+	 * @param hostFetches the number of pages fetched from one host at the same
+	 *                    time
+	 * @throws IOException          if an IO error occurs
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void crawl(Path inputPath, int count, int delay, int threads, int fetches, int hosts,
+			int hostFetches) throws IOException, InterruptedException {
+		var texts = new ArrayList<String>();
+		for (Path file : TextFileFinder.find(inputPath).collect(Collectors.toList())) {
+			texts.add(Files.readString(file, StandardCharsets.UTF_8));
+		}
+
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		ExecutorService executor = Executors.newCachedThreadPool();
+		var servers = new ArrayList<HttpServer>();
+		var roots = new ArrayList<String>();
+		for (int i = 0; i < hosts; i++) {
+			HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+			server.setExecutor(executor);
+			servers.add(server);
+			roots.add("http://localhost:" + server.getAddress().getPort() + "/");
+		}
+
+		// every page links to the next pages on the first hosts the site is spread over
+		var spread = new AtomicInteger(1);
+		for (HttpServer server : servers) {
+			server.createContext("/", exchange -> {
+				int page = Integer.parseInt(exchange.getRequestURI().getPath().substring(1));
+				var html = new StringBuilder("<html>\n<body>\n");
+				for (int next = 2 * page + 1; next <= 2 * page + 2 && next < count; next++) {
+					html.append("<a href=\"").append(roots.get(next % spread.get())).append(next).append("\">next</a>\n");
+				}
+				html.append(texts.get(page % texts.size())).append("</body>\n</html>\n");
+				byte[] body = html.toString().getBytes(StandardCharsets.UTF_8);
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+				exchange.close();
+			});
+			server.start();
+		}
+
+		try {
+			System.out.printf("%-6s %-12s %12s %12s%n", "hosts", "crawl", "time (ms)", "pages/sec");
+			for (int used = 1; used <= hosts; used = used == hosts ? hosts + 1 : Math.min(used * 2, hosts)) {
+				spread.set(used);
+				URL seed = new URL(roots.get(0) + "0");
+				long working = 0;
+				long fetching = 0;
+				boolean same = true;
+				for (int run = 0; run < 2; run++) {
+					var queued = new ThreadSafeInvertedIndex();
+					long start = System.nanoTime();
+					new WebCrawler(null, count, threads, queued, 0, new CrawlFrontier(hostFetches, 0))
+							.buildFromSeed(seed, queued);
+					working = System.nanoTime() - start;
+
+					var fetched = new ThreadSafeInvertedIndex();
+					start = System.nanoTime();
+					new WebCrawler(null, count, threads, fetched, fetches, new CrawlFrontier(hostFetches, 0))
+							.buildFromSeed(seed, fetched);
+					fetching = System.nanoTime() - start;
+					same = queued.getCountsMap().size() == count && queued.toString().equals(fetched.toString());
+				}
+				System.out.printf("%-6d %-12s %12.1f %12.1f%n", used, "work queue", working / 1e6, count / (working / 1e9));
+				System.out.printf("%-6d %-12s %12.1f %12.1f%n", used, "fetchers", fetching / 1e6, count / (fetching / 1e9));
+				System.out.printf("%-6d same index: %b%n", used, same);
+			}
+			System.out.printf("pages: %d, threads: %d, fetches: %d, fetches per host: %d%n", count, threads, fetches,
+					hostFetches);
+		} finally {
+			servers.forEach(server -> server.stop(0));
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * compares remembering the links a crawl has seen in a locked set of urls,
+	 * the way the crawler used to, with a {@link SeenUrlSet}, checking that both
+	 * admit the same number of links. Every link is offered three times, in a
+	 * random order, as a new url parsed from its string like links found on
+	 * pages are. The links are spread over 100 hosts given as addresses, so the
+	 * lookups the locked set does to compare and hash urls are cheap here,
+	 * unlike for host names.
+	 *
+	 * @param count   the number of different links
+	 * @param threads the number of threads offering links
+	 * @throws InterruptedException if interrupted
+	 */
+	public static void seen(int count, int threads) throws InterruptedException {
+		var offers = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			String link = "http://127.0.0." + (i % 100 + 1) + "/page/" + i + "?id=" + i;
+			offers.add(link);
+			offers.add(link);
+			offers.add(link.replace("http://", "HTTP://"));
+		}
+		Collections.shuffle(offers, new Random(0));
+
+		System.out.printf("%-12s %12s %12s %12s%n", "seen", "time (ms)", "admitted", "bytes/url");
+		for (int run = 0; run < 3; run++) {
+			long before = usedMemory();
+			var locked = new HashSet<URL>();
+			var lockedAdmitted = new AtomicInteger();
+			long start = System.nanoTime();
+			offerAll(offers, threads, link -> {
+				synchronized (locked) {
+					if (!locked.contains(link)) {
+						locked.add(link);
+						lockedAdmitted.incrementAndGet();
+					}
+				}
+			});
+			long locking = System.nanoTime() - start;
+			long lockedBytes = usedMemory() - before;
+
+			before = usedMemory();
+			var seen = new SeenUrlSet(count);
+			var seenAdmitted = new AtomicInteger();
+			start = System.nanoTime();
+			offerAll(offers, threads, link -> {
+				if (seen.add(link)) {
+					seenAdmitted.incrementAndGet();
+				}
+			});
+			long fingerprinting = System.nanoTime() - start;
+			long seenBytes = usedMemory() - before;
+
+			if (run == 2) {
+				System.out.printf("%-12s %12.1f %12d %12.1f%n", "locked set", locking / 1e6, lockedAdmitted.get(),
+						(double) lockedBytes / locked.size());
+				System.out.printf("%-12s %12.1f %12d %12.1f%n", "seen set", fingerprinting / 1e6, seenAdmitted.get(),
+						(double) seenBytes / seen.size());
+				System.out.printf("links: %d, offers: %d, threads: %d, %s%n", count, offers.size(), threads, seen);
+			}
+		}
+	}
+
+	/**
+	 * helper method that offers links to a set from several threads, each taking
+	 * an equal share of the links
+	 *
+	 * @param offers  the links to offer
+	 * @param threads the number of threads
+	 * @param offer   offers one link, parsed from its string
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void offerAll(List<String> offers, int threads, Consumer<URL> offer) throws InterruptedException {
+		var workQ = new WorkQueue(threads);
+		int share = (offers.size() + threads - 1) / threads;
+		for (int i = 0; i < offers.size(); i += share) {
+			List<String> part = offers.subList(i, Math.min(i + share, offers.size()));
+			workQ.execute(() -> {
+				for (String link : part) {
+					try {
+						offer.accept(new URL(link));
+					} catch (MalformedURLException e) {
+						System.err.println("Error occured while parsing a link: " + link);
+					}
+				}
+			});
+		}
+		workQ.finish();
+		workQ.shutdown();
+	}
+
+	/**
+	 * compares the stems per second of stemming every line of the input with a new
+	 * {@link SnowballStemmer}, stemming every file with a new one, and stemming
+	 * everything with a {@link CachingStemmer}, checking that all three find the
+	 * same stems
+	 *
+	 * @param inputPath the text file or directory to stem
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void stemming(Path inputPath) throws IOException {
+		var files = new ArrayList<List<String>>();
+		long words = 0;
+		for (Path file : TextFileFinder.find(inputPath).collect(Collectors.toList())) {
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			for (String line : lines) {
+				words += TextParser.parse(line).length;
+			}
+			files.add(lines);
+		}
+
+		int differences = 0;
+		var cached = new CachingStemmer(TextFileStemmer.DEFAULT, CachingStemmer.DEFAULT_CAPACITY);
+		for (List<String> lines : files) {
+			for (String line : lines) {
+				if (!TextFileStemmer.listStems(line, new SnowballStemmer(TextFileStemmer.DEFAULT))
+						.equals(TextFileStemmer.listStems(line, cached))) {
+					differences++;
+				}
+			}
+		}
+
+		System.out.printf("files: %d, words: %d, differences: %d%n", files.size(), words, differences);
+		System.out.printf("%-12s %12s %14s%n", "stemmer", "time (ms)", "stems/sec");
+		for (int run = 0; run < 5; run++) {
+			long[] times = new long[3];
+			long start = System.nanoTime();
+			for (List<String> lines : files) {
+				for (String line : lines) {
+					TextFileStemmer.listStems(line, new SnowballStemmer(TextFileStemmer.DEFAULT));
+				}
+			}
+			times[0] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (List<String> lines : files) {
+				var stemmer = new SnowballStemmer(TextFileStemmer.DEFAULT);
+				for (String line : lines) {
+					TextFileStemmer.listStems(line, stemmer);
+				}
+			}
+			times[1] = System.nanoTime() - start;
+
+			cached = new CachingStemmer(TextFileStemmer.DEFAULT, CachingStemmer.DEFAULT_CAPACITY);
+			start = System.nanoTime();
+			for (List<String> lines : files) {
+				for (String line : lines) {
+					TextFileStemmer.listStems(line, cached);
+				}
+			}
+			times[2] = System.nanoTime() - start;
+
+			if (run == 4) {
+				String[] names = { "per line", "per file", "cached" };
+				for (int i = 0; i < times.length; i++) {
+					System.out.printf("%-12s %12.1f %14.0f%n", names[i], times[i] / 1e6, words / (times[i] / 1e9));
+				}
+				System.out.println(cached);
+			}
+		}
+	}
+
+	/**
+	 * times partial searches for every one, two and three character prefix of the
+	 * indexed stems, expanding the prefixes with the {@link TermTrie} of a
+	 * committed index and with the sorted term dictionary of an uncommitted copy
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void prefix(Path inputPath) throws IOException {
+		InvertedIndex built = new InvertedIndex();
+		IndexBuilder.addInput(inputPath, built);
+		// copy both so their posting lists are laid out on the heap the same way
+		InvertedIndex uncommitted = new InvertedIndex();
+		uncommitted.addAll(built);
+		InvertedIndex committed = new InvertedIndex();
+		committed.addAll(built);
+		committed.commit();
+
+		var prefixes = new TreeSet<String>();
+		for (String word : built.getUnmodifiableWords()) {
+			for (int length = 1; length <= Math.min(3, word.length()); length++) {
+				prefixes.add(word.substring(0, length));
+			}
+		}
+		var queries = new ArrayList<List<String>>();
+		for (String prefix : prefixes) {
+			queries.add(List.of(prefix));
+		}
+
+		System.out.printf("stems: %d, prefixes: %d%n", committed.getUnmodifiableWords().size(), queries.size());
+		System.out.printf("%-12s %12s%n", "expansion", "time (ms)");
+		for (int run = 0; run < 20; run++) {
+			long start = System.nanoTime();
+			for (List<String> query : queries) {
+				uncommitted.partialSearch(query);
+			}
+			long sorted = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (List<String> query : queries) {
+				committed.partialSearch(query);
+			}
+			long trie = System.nanoTime() - start;
+
+			if (run == 19) {
+				System.out.printf("%-12s %12.1f%n", "tailMap", sorted / 1e6);
+				System.out.printf("%-12s %12.1f%n", "trie", trie / 1e6);
+			}
+		}
+	}
+
+	/**
+	 * compares garbage collection between posting lists kept on the heap and
+	 * posting lists kept off-heap by {@link InvertedIndex#useOffHeap()}: the heap
+	 * each index leaves live, the pause of a full collection, and the collections
+	 * and search latency seen while searching the index nonstop
+	 *
+	 * @param inputPath the text file or directory to index
+	 * @param seconds   the number of seconds to search each index for
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void gcPauses(Path inputPath, int seconds) throws IOException {
+		System.out.printf("%-9s %14s %14s %10s %12s %10s %10s %10s%n", "postings", "live heap", "full gc (ms)",
+				"gc count", "gc time (ms)", "searches", "p99 (us)", "max (us)");
+		for (boolean offHeap : new boolean[] { false, true }) {
+			long before = usedMemory();
+			InvertedIndex index = new InvertedIndex();
+			if (offHeap) {
+				index.useOffHeap();
+			}
+			IndexBuilder.addInput(inputPath, index);
+			long live = usedMemory() - before;
+
+			long start = System.nanoTime();
+			System.gc();
+			long fullGc = System.nanoTime() - start;
+
+			var words = new ArrayList<String>(index.getUnmodifiableWords());
+			var latencies = new ArrayList<Long>();
+			long collections = gcCount();
+			long collectionTime = gcTime();
+			long end = System.nanoTime() + seconds * 1_000_000_000L;
+			for (int i = 0; System.nanoTime() < end; i++) {
+				var queries = List.of(words.get(i % words.size()), words.get((i * 31 + 7) % words.size()));
+				long searchStart = System.nanoTime();
+				index.search(queries, i % 2 == 0);
+				latencies.add(System.nanoTime() - searchStart);
+			}
+			collections = gcCount() - collections;
+			collectionTime = gcTime() - collectionTime;
+
+			Collections.sort(latencies);
+			System.out.printf("%-9s %,14d %14.1f %10d %12d %10d %10.1f %10.1f%n", offHeap ? "off-heap" : "heap", live,
+					fullGc / 1e6, collections, collectionTime, latencies.size(),
+					latencies.get(latencies.size() * 99 / 100) / 1e3, latencies.get(latencies.size() - 1) / 1e3);
+		}
+	}
+
+	/**
+	 * returns the total number of garbage collections so far
+	 *
+	 * @return the number of collections
+	 */
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, bean.getCollectionCount());
+		}
+		return count;
+	}
+
+	/**
+	 * returns the total time spent in garbage collections so far
+	 *
+	 * @return the collection time in milliseconds
+	 */
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, bean.getCollectionTime());
+		}
+		return time;
+	}
+
+	/**
+	 * returns the heap currently in use after asking the garbage collector to run
+	 *
+	 * @return the used heap in bytes
+	 */
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,590 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import opennlp.tools.stemmer.Stemmer;
+
+/**
+ * Parsed boolean query. Words are cleaned and stemmed like any other query, and
+ * can be combined with the upper case operators AND, OR and NOT and grouped with
+ * parentheses. NOT binds tighter than AND, which binds tighter than OR. Words
+ * next to each other without an operator are joined by OR, so a query without
+ * operators matches the same locations as a normal search.
+ *
+ * Words in double quotes form a phrase, matching the words next to each other
+ * in the same order. Two words joined by NEAR/k match when they appear at most k
+ * words apart, in either order. Phrases and NEAR always match whole stems, and
+ * NEAR between anything other than two words acts like AND.
+ *
+ * The parser never fails: an operator without a word to work on and unmatched
+ * parentheses are ignored.
+ *
+ * @see InvertedIndex#booleanSearch(BooleanQuery, boolean)
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class BooleanQuery {
+
+	/**
+	 * The kinds of nodes of a query
+	 */
+	public enum Type {
+		/** Matches the locations holding a stem. */
+		TERM,
+		/** Matches the locations every child matches. */
+		AND,
+		/** Matches the locations any child matches. */
+		OR,
+		/** Matches the locations its only child does not match. */
+		NOT,
+		/** Matches the locations holding its term children next to each other. */
+		PHRASE,
+		/** Matches the locations holding its two term children near each other. */
+		NEAR
+	}
+
+	/**
+	 * The pattern of the NEAR operator, holding the largest distance allowed
+	 */
+	private static final Pattern NEAR_REGEX = Pattern.compile("NEAR/(\\d{1,9})");
+
+	/**
+	 * A node of a parsed query
+	 */
+	public static class Node {
+
+		/**
+		 * The kind of node
+		 */
+		private final Type type;
+
+		/**
+		 * The stem of a term, or null for the other kinds of nodes
+		 */
+		private final String stem;
+
+		/**
+		 * The children of the node, empty for a term
+		 */
+		private final List<Node> children;
+
+		/**
+		 * The largest number of words between the children of a NEAR node, 0 for
+		 * the other kinds of nodes
+		 */
+		private final int distance;
+
+		/**
+		 * Initializes a node
+		 *
+		 * @param type     the kind of node
+		 * @param stem     the stem of a term, or null
+		 * @param children the children of the node
+		 */
+		private Node(Type type, String stem, List<Node> children) {
+			this(type, stem, children, 0);
+		}
+
+		/**
+		 * Initializes a node
+		 *
+		 * @param type     the kind of node
+		 * @param stem     the stem of a term, or null
+		 * @param children the children of the node
+		 * @param distance the largest distance of a NEAR node
+		 */
+		private Node(Type type, String stem, List<Node> children, int distance) {
+			this.type = type;
+			this.stem = stem;
+			this.children = Collections.unmodifiableList(children);
+			this.distance = distance;
+		}
+
+		/**
+		 * returns the kind of node
+		 *
+		 * @return the type
+		 */
+		public Type getType() {
+			return type;
+		}
+
+		/**
+		 * returns the stem of a term
+		 *
+		 * @return the stem, or null if the node is not a term
+		 */
+		public String getStem() {
+			return stem;
+		}
+
+		/**
+		 * returns the children of the node
+		 *
+		 * @return an unmodifiable list of the children
+		 */
+		public List<Node> getChildren() {
+			return children;
+		}
+
+		/**
+		 * returns the largest distance between the children of a NEAR node
+		 *
+		 * @return the distance, or 0 if the node is not a NEAR node
+		 */
+		public int getDistance() {
+			return distance;
+		}
+
+		/**
+		 * writes the node with the fewest parentheses needed to parse it back the
+		 * same way
+		 */
+		@Override
+		public String toString() {
+			switch (type) {
+			case TERM:
+				return stem;
+			case PHRASE:
+				var words = new ArrayList<String>();
+				for (Node child : children) {
+					words.add(child.stem);
+				}
+				return "\"" + String.join(" ", words) + "\"";
+			case NEAR:
+				return children.get(0) + " NEAR/" + distance + " " + children.get(1);
+			case NOT:
+				return "NOT " + group(children.get(0), Type.NOT);
+			default:
+				var joined = new ArrayList<String>();
+				for (Node child : children) {
+					joined.add(group(child, type));
+				}
+				return String.join(" " + type + " ", joined);
+			}
+		}
+
+		/**
+		 * writes a child node, in parentheses if it binds looser than its parent
+		 *
+		 * @param child  the child to write
+		 * @param parent the type of the parent
+		 * @return the child as text
+		 */
+		private static String group(Node child, Type parent) {
+			boolean looser = child.type == Type.OR && parent != Type.OR
+					|| child.type == Type.AND && parent == Type.NOT;
+			return looser ? "(" + child + ")" : child.toString();
+		}
+	}
+
+	/**
+	 * The root of the query, or null if the query holds no words
+	 */
+	private final Node root;
+
+	/**
+	 * Initializes a query
+	 *
+	 * @param root the root of the query, or null if the query holds no words
+	 */
+	private BooleanQuery(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * determines if a query line uses boolean operators or parentheses. Other
+	 * lines are searched as usual.
+	 *
+	 * @param line the query line
+	 * @return true if the line should be parsed as a boolean query
+	 */
+	public static boolean isBoolean(String line) {
+		for (String token : tokenize(line)) {
+			if (isOperator(token) || token.equals("(") || token.equals(")") || token.equals("\"")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * parses a query line, stemming its words with the shared stemmer
+	 *
+	 * @param line the query line
+	 * @return the parsed query
+	 *
+	 * @see CachingStemmer#SHARED
+	 */
+	public static BooleanQuery parse(String line) {
+		return parse(line, CachingStemmer.SHARED);
+	}
+
+	/**
+	 * parses a query line
+	 *
+	 * @param line    the query line
+	 * @param stemmer the stemmer to use
+	 * @return the parsed query
+	 */
+	public static BooleanQuery parse(String line, Stemmer stemmer) {
+		var parser = new Parser(tokenize(line), stemmer);
+		var alternatives = new ArrayList<Node>();
+		while (!parser.done()) {
+			Node node = parser.or();
+			if (node != null) {
+				alternatives.add(node);
+			}
+			// a stray closing parenthesis ends the expression early
+			parser.next();
+		}
+		return new BooleanQuery(combine(Type.OR, alternatives));
+	}
+
+	/**
+	 * returns the root of the query
+	 *
+	 * @return the root, or null if the query holds no words
+	 */
+	public Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * determines if the query holds no words
+	 *
+	 * @return true if there is nothing to search
+	 */
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/**
+	 * returns every stem of the query, including the negated ones
+	 *
+	 * @return a sorted set of the stems
+	 */
+	public TreeSet<String> getStems() {
+		var stems = new TreeSet<String>();
+		if (root != null) {
+			addStems(root, stems);
+		}
+		return stems;
+	}
+
+	/**
+	 * helper method that adds the stems of a node and its children to a set
+	 *
+	 * @param node  the node to use
+	 * @param stems the set to add to
+	 */
+	private static void addStems(Node node, TreeSet<String> stems) {
+		if (node.stem != null) {
+			stems.add(node.stem);
+		}
+		for (Node child : node.children) {
+			addStems(child, stems);
+		}
+	}
+
+	/**
+	 * writes the query in a canonical form, used to tell queries apart
+	 */
+	@Override
+	public String toString() {
+		return root == null ? "" : root.toString();
+	}
+
+	/**
+	 * splits a query line into words, operators, parentheses and quotes
+	 *
+	 * @param line the query line
+	 * @return the tokens in order
+	 */
+	private static ArrayList<String> tokenize(String line) {
+		var tokens = new ArrayList<String>();
+		var token = new StringBuilder();
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+				if (token.length() > 0) {
+					tokens.add(token.toString());
+					token.setLength(0);
+				}
+				if (c == '(' || c == ')' || c == '"') {
+					tokens.add(String.valueOf(c));
+				}
+			} else {
+				token.append(c);
+			}
+		}
+		if (token.length() > 0) {
+			tokens.add(token.toString());
+		}
+		return tokens;
+	}
+
+	/**
+	 * determines if a token is an operator
+	 *
+	 * @param token the token to check
+	 * @return true for AND, OR, NOT and NEAR/k
+	 */
+	private static boolean isOperator(String token) {
+		return token.equals("AND") || token.equals("OR") || token.equals("NOT") || distance(token) >= 0;
+	}
+
+	/**
+	 * reads the distance of a NEAR operator
+	 *
+	 * @param token the token to read
+	 * @return the largest distance allowed, at least 1, or -1 if the token is not
+	 *         a NEAR operator
+	 */
+	private static int distance(String token) {
+		if (token == null) {
+			return -1;
+		}
+		Matcher matcher = NEAR_REGEX.matcher(token);
+		return matcher.matches() ? Math.max(1, Integer.parseInt(matcher.group(1))) : -1;
+	}
+
+	/**
+	 * joins nodes with an operator, merging children of the same operator and
+	 * leaving a single node as it is
+	 *
+	 * @param type  AND or OR
+	 * @param nodes the nodes to join
+	 * @return the joined node, or null if there are no nodes
+	 */
+	private static Node combine(Type type, List<Node> nodes) {
+		if (nodes.isEmpty()) {
+			return null;
+		}
+		if (nodes.size() == 1) {
+			return nodes.get(0);
+		}
+		var children = new ArrayList<Node>();
+		for (Node node : nodes) {
+			if (node.type == type) {
+				children.addAll(node.children);
+			} else {
+				children.add(node);
+			}
+		}
+		return new Node(type, null, children);
+	}
+
+	/**
+	 * Recursive descent parser over the tokens of a query line
+	 */
+	private static class Parser {
+
+		/**
+		 * The tokens of the query line
+		 */
+		private final List<String> tokens;
+
+		/**
+		 * The stemmer used for words
+		 */
+		private final Stemmer stemmer;
+
+		/**
+		 * The index of the next token
+		 */
+		private int index;
+
+		/**
+		 * Initializes the parser
+		 *
+		 * @param tokens  the tokens of the query line
+		 * @param stemmer the stemmer used for words
+		 */
+		private Parser(List<String> tokens, Stemmer stemmer) {
+			this.tokens = tokens;
+			this.stemmer = stemmer;
+			this.index = 0;
+		}
+
+		/**
+		 * determines if every token was used
+		 *
+		 * @return true if there are no tokens left
+		 */
+		private boolean done() {
+			return index >= tokens.size();
+		}
+
+		/**
+		 * returns the next token without using it
+		 *
+		 * @return the next token, or null if there are none left
+		 */
+		private String peek() {
+			return done() ? null : tokens.get(index);
+		}
+
+		/**
+		 * uses the next token
+		 */
+		private void next() {
+			index++;
+		}
+
+		/**
+		 * parses alternatives joined by OR or by nothing, up to a closing parenthesis
+		 *
+		 * @return the parsed node, or null if there are no words
+		 */
+		private Node or() {
+			var alternatives = new ArrayList<Node>();
+			while (!done() && !peek().equals(")")) {
+				if (peek().equals("OR")) {
+					next();
+					continue;
+				}
+				Node node = and();
+				if (node != null) {
+					alternatives.add(node);
+				}
+			}
+			return combine(Type.OR, alternatives);
+		}
+
+		/**
+		 * parses operands joined by AND
+		 *
+		 * @return the parsed node, or null if there are no words
+		 */
+		private Node and() {
+			var operands = new ArrayList<Node>();
+			Node node = not();
+			if (node != null) {
+				operands.add(node);
+			}
+			while ("AND".equals(peek())) {
+				next();
+				node = not();
+				if (node != null) {
+					operands.add(node);
+				}
+			}
+			return combine(Type.AND, operands);
+		}
+
+		/**
+		 * parses an operand that may be negated
+		 *
+		 * @return the parsed node, or null if there are no words
+		 */
+		private Node not() {
+			if ("NOT".equals(peek())) {
+				next();
+				Node child = not();
+				if (child == null) {
+					return null;
+				}
+				if (child.type == Type.NOT) {
+					return child.children.get(0);
+				}
+				return new Node(Type.NOT, null, List.of(child));
+			}
+			return near();
+		}
+
+		/**
+		 * parses operands joined by NEAR/k. A chain of words joined by NEAR matches
+		 * when each word is near the next one.
+		 *
+		 * @return the parsed node, or null if there are no words
+		 */
+		private Node near() {
+			Node left = primary();
+			var joined = new ArrayList<Node>();
+			while (distance(peek()) >= 0) {
+				int distance = distance(peek());
+				next();
+				Node right = primary();
+				if (right == null) {
+					continue;
+				}
+				if (left == null) {
+					left = right;
+					continue;
+				}
+				if (left.type == Type.TERM && right.type == Type.TERM) {
+					joined.add(new Node(Type.NEAR, null, List.of(left, right), distance));
+				} else {
+					joined.add(left);
+					joined.add(right);
+				}
+				left = right;
+			}
+			return joined.isEmpty() ? left : combine(Type.AND, joined);
+		}
+
+		/**
+		 * parses a word or an expression in parentheses
+		 *
+		 * @return the parsed node, or null if there are no words
+		 */
+		private Node primary() {
+			String token = peek();
+			if (token == null || token.equals(")")) {
+				return null;
+			}
+			next();
+			if (token.equals("\"")) {
+				return phrase();
+			}
+			if (token.equals("(")) {
+				Node node = or();
+				if (")".equals(peek())) {
+					next();
+				}
+				return node;
+			}
+			if (isOperator(token)) {
+				// an operator where a word belongs has nothing to work on
+				return null;
+			}
+			var stems = TextFileStemmer.listStems(token, stemmer);
+			if (stems.isEmpty()) {
+				return null;
+			}
+			var terms = new ArrayList<Node>();
+			for (String stem : stems) {
+				terms.add(new Node(Type.TERM, stem, List.of()));
+			}
+			return combine(Type.OR, terms);
+		}
+
+		/**
+		 * parses the words of a phrase up to the closing quote, treating operators
+		 * and parentheses inside the quotes as words
+		 *
+		 * @return the parsed node, a term if the phrase holds a single word, or null
+		 *         if it holds none
+		 */
+		private Node phrase() {
+			var words = new StringBuilder();
+			while (!done() && !peek().equals("\"")) {
+				words.append(peek()).append(' ');
+				next();
+			}
+			next();
+			var terms = new ArrayList<Node>();
+			for (String stem : TextFileStemmer.listStems(words.toString(), stemmer)) {
+				terms.add(new Node(Type.TERM, stem, List.of()));
+			}
+			if (terms.size() < 2) {
+				return terms.isEmpty() ? null : terms.get(0);
+			}
+			return new Node(Type.PHRASE, null, terms);
+		}
+	}
+}
@@ -0,0 +1,219 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import opennlp.tools.stemmer.Stemmer;
+import opennlp.tools.stemmer.snowball.SnowballStemmer;
+
+/**
+ * Thread safe stemmer shared by everything that stems text. Each thread stems
+ * with its own {@link SnowballStemmer}, created the first time the thread
+ * stems a word, and the stem of every word is remembered in a bounded map. Text
+ * uses a few words most of the time, so most words are found in the map without
+ * stemming them again. Once the map is full, a new word replaces an old one
+ * picked by a second-chance clock: the clock hand passes over the words found
+ * since it last came by, clearing their mark, and replaces the first word that
+ * was not. The words used most stay in the map, finding a word only sets a
+ * mark, and the map never holds more words than its capacity.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class CachingStemmer implements Stemmer {
+
+	/**
+	 * The default number of words to remember
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * The stemmer shared by default, using the default algorithm
+	 *
+	 * @see TextFileStemmer#DEFAULT
+	 */
+	public static final CachingStemmer SHARED = new CachingStemmer(TextFileStemmer.DEFAULT, DEFAULT_CAPACITY);
+
+	/**
+	 * The stemmer of each thread
+	 */
+	private final ThreadLocal<SnowballStemmer> stemmers;
+
+	/**
+	 * The stem of every word remembered so far
+	 */
+	private final ConcurrentHashMap<String, Entry> stems;
+
+	/**
+	 * The remembered words in the order the clock hand visits them, guarded by
+	 * itself
+	 */
+	private final String[] clock;
+
+	/**
+	 * The position of the clock hand, guarded by {@link #clock}
+	 */
+	private int hand;
+
+	/**
+	 * The number of words put in the clock so far, guarded by {@link #clock}
+	 */
+	private int filled;
+
+	/**
+	 * The number of words to remember
+	 */
+	private final int capacity;
+
+	/**
+	 * The number of words found in the map
+	 */
+	private final LongAdder hits;
+
+	/**
+	 * The number of words stemmed
+	 */
+	private final LongAdder misses;
+
+	/**
+	 * The number of words replaced by a new word
+	 */
+	private final LongAdder evictions;
+
+	/**
+	 * The stem of a remembered word, marked whenever the word is found
+	 *
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class Entry {
+
+		/**
+		 * The stem of the word
+		 */
+		private final String stem;
+
+		/**
+		 * Whether the word was found since the clock hand last passed it
+		 */
+		private volatile boolean referenced;
+
+		/**
+		 * Initializes an entry
+		 *
+		 * @param stem the stem of the word
+		 */
+		private Entry(String stem) {
+			this.stem = stem;
+		}
+	}
+
+	/**
+	 * Initializes a stemmer
+	 *
+	 * @param algorithm the stemming algorithm to use
+	 * @param capacity  the number of words to remember, or 0 to stem every word
+	 */
+	public CachingStemmer(SnowballStemmer.ALGORITHM algorithm, int capacity) {
+		this.stemmers = ThreadLocal.withInitial(() -> new SnowballStemmer(algorithm));
+		this.stems = new ConcurrentHashMap<String, Entry>();
+		this.clock = new String[Math.max(capacity, 0)];
+		this.capacity = capacity;
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	/**
+	 * stems a word, using the remembered stem if there is one
+	 *
+	 * @param word the word to stem
+	 * @return the stem of the word
+	 */
+	@Override
+	public String stem(CharSequence word) {
+		String key = word.toString();
+		Entry entry = stems.get(key);
+		if (entry != null) {
+			hits.increment();
+			if (!entry.referenced) {
+				entry.referenced = true;
+			}
+			return entry.stem;
+		}
+		misses.increment();
+		String stem = stemmers.get().stem(key).toString();
+		if (capacity > 0) {
+			remember(key, stem);
+		}
+		return stem;
+	}
+
+	/**
+	 * helper method that remembers the stem of a word, replacing the first word
+	 * the clock hand finds unmarked once the map is full
+	 *
+	 * @param word the word to remember
+	 * @param stem the stem of the word
+	 */
+	private void remember(String word, String stem) {
+		synchronized (clock) {
+			if (stems.containsKey(word)) {
+				return;
+			}
+			if (filled < capacity) {
+				clock[filled++] = word;
+			} else {
+				Entry oldest;
+				while ((oldest = stems.get(clock[hand])).referenced) {
+					oldest.referenced = false;
+					hand = (hand + 1) % capacity;
+				}
+				stems.remove(clock[hand]);
+				evictions.increment();
+				clock[hand] = word;
+				hand = (hand + 1) % capacity;
+			}
+			stems.put(word, new Entry(stem));
+		}
+	}
+
+	/**
+	 * returns the number of words remembered
+	 *
+	 * @return the number of words
+	 */
+	public int size() {
+		return stems.size();
+	}
+
+	/**
+	 * returns the number of words found without stemming them
+	 *
+	 * @return the number of hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * returns the number of words stemmed
+	 *
+	 * @return the number of misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * returns the number of words replaced by a new word
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits: %d, misses: %d, evictions: %d, size: %d", getHits(), getMisses(),
+				getEvictions(), size());
+	}
+}
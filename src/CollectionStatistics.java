@@ -0,0 +1,69 @@
+import java.util.function.ToIntFunction;
+
+/**
+ * Statistics of an index used by a {@link ScoringModel}: the number of
+ * documents, the average number of words in a document and the number of
+ * documents each stem appears in. An index split into several parts scores
+ * every part with the statistics of the whole index.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class CollectionStatistics {
+
+	/**
+	 * The number of documents
+	 */
+	private final int documents;
+
+	/**
+	 * The average number of words in a document
+	 */
+	private final double averageLength;
+
+	/**
+	 * Returns the number of documents a stem appears in
+	 */
+	private final ToIntFunction<String> frequencies;
+
+	/**
+	 * Initializes the statistics
+	 *
+	 * @param documents     the number of documents
+	 * @param averageLength the average number of words in a document
+	 * @param frequencies   returns the number of documents a stem appears in
+	 */
+	public CollectionStatistics(int documents, double averageLength, ToIntFunction<String> frequencies) {
+		this.documents = documents;
+		this.averageLength = averageLength;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * returns the number of documents
+	 *
+	 * @return the number of documents
+	 */
+	public int getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * returns the average number of words in a document
+	 *
+	 * @return the average number of words
+	 */
+	public double getAverageLength() {
+		return averageLength;
+	}
+
+	/**
+	 * returns the number of documents a stem appears in
+	 *
+	 * @param stem the stem to use
+	 * @return the number of documents
+	 */
+	public int getFrequency(String stem) {
+		return frequencies.applyAsInt(stem);
+	}
+}
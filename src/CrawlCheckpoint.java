@@ -0,0 +1,416 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the state of a web crawl in a directory, so a crawl that dies can go on
+ * from its last checkpoint instead of fetching every page again from the seed.
+ * Every url the crawl finds is appended to a log of seen urls, and every page
+ * to a log of done pages once it is indexed. Every so many pages the pages
+ * indexed since the last checkpoint are saved in the binary index file format
+ * as a delta, along with the number of lines of both logs the deltas hold.
+ * Together they make a checkpoint. Each checkpoint only writes the pages done
+ * since the one before it, so the cost of a checkpoint does not grow with the
+ * index, and the delta is written while the crawl goes on.
+ *
+ * Resuming loads the deltas of every checkpoint so far and queues every url
+ * seen but not done by then. The logs are read one line at a time and the done
+ * urls are kept as fingerprints, so resuming a crawl larger than the heap
+ * leaves the pages to fetch in the spill file of the frontier. Pages done after
+ * the checkpoint are fetched again, and the urls they found are found again.
+ *
+ * The directory holds the logs "seen.log" and "done.log", the delta of every
+ * checkpoint, the file "checkpoint" naming the last one, and the spill file of
+ * the frontier.
+ *
+ * @see WebCrawler#buildFromSeed(URL, ThreadSafeInvertedIndex, CrawlCheckpoint)
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class CrawlCheckpoint {
+
+	/**
+	 * The default number of pages done between checkpoints
+	 */
+	public static final int DEFAULT_INTERVAL = 100;
+
+	/**
+	 * The directory holding the state of the crawl
+	 */
+	private final Path directory;
+
+	/**
+	 * The number of pages done between checkpoints
+	 */
+	private final int interval;
+
+	/**
+	 * Whether to go on from the last checkpoint in the directory
+	 */
+	private final boolean resume;
+
+	/**
+	 * Held while a page is added to the index and the done log, and excluded
+	 * while a checkpoint takes the pages done since the last one
+	 */
+	private final SimpleReadWriteLock lock;
+
+	/**
+	 * The lock object held while a checkpoint is saved, so checkpoints are written
+	 * one at a time and in order
+	 */
+	private final Object saving;
+
+	/**
+	 * The pages done since the last checkpoint, guarded by this object
+	 */
+	private InvertedIndex delta;
+
+	/**
+	 * Appends to the log of seen urls
+	 */
+	private BufferedWriter seenLog;
+
+	/**
+	 * Appends to the log of done pages
+	 */
+	private BufferedWriter doneLog;
+
+	/**
+	 * The number of lines of the log of seen urls
+	 */
+	private int seen;
+
+	/**
+	 * The number of lines of the log of done pages
+	 */
+	private int done;
+
+	/**
+	 * The number of pages done at the last checkpoint
+	 */
+	private int saved;
+
+	/**
+	 * The number of the last checkpoint, naming its index file
+	 */
+	private int generation;
+
+	/**
+	 * The first error writing the state, after which no checkpoint is saved
+	 */
+	private IOException failure;
+
+	/**
+	 * Initializes the state of a crawl, creating the directory if needed
+	 *
+	 * @param directory the directory holding the state
+	 * @param interval  the number of pages done between checkpoints
+	 * @param resume    whether to go on from the last checkpoint in the directory
+	 *                  instead of starting over
+	 * @throws IOException if the directory cannot be created
+	 */
+	public CrawlCheckpoint(Path directory, int interval, boolean resume) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.interval = Math.max(1, interval);
+		this.resume = resume;
+		this.lock = new SimpleReadWriteLock();
+		this.saving = new Object();
+		this.delta = new InvertedIndex();
+	}
+
+	/**
+	 * returns the file the frontier of the crawl writes the pages that do not fit
+	 * in memory to
+	 *
+	 * @return the spill file
+	 *
+	 * @see CrawlFrontier#CrawlFrontier(int, long, Path, int)
+	 */
+	public Path getSpill() {
+		return directory.resolve("frontier.spill");
+	}
+
+	/**
+	 * starts the crawl, either from the last checkpoint or from nothing. Resuming
+	 * loads the deltas of every checkpoint into the index, adds every url seen by
+	 * then to the seen urls and queues the ones not done. Starting over deletes
+	 * the state of any earlier crawl in the directory.
+	 *
+	 * @param index    the empty index of the crawl
+	 * @param seenUrls the urls the crawl has seen
+	 * @param frontier the frontier of the crawl
+	 * @return true if the crawl goes on from a checkpoint, false if it starts over
+	 *         and must be seeded
+	 * @throws IOException if the state cannot be read or written
+	 */
+	public boolean restore(ThreadSafeInvertedIndex index, SeenUrlSet seenUrls, CrawlFrontier frontier)
+			throws IOException {
+		Path checkpoint = directory.resolve("checkpoint");
+		if (!resume || !Files.exists(checkpoint)) {
+			clear();
+			return false;
+		}
+		String[] counts = Files.readString(checkpoint, StandardCharsets.UTF_8).strip().split(" ");
+		generation = Integer.parseInt(counts[0]);
+		seen = Integer.parseInt(counts[1]);
+		done = Integer.parseInt(counts[2]);
+		saved = done;
+		for (int i = 1; i <= generation; i++) {
+			index.load(deltaFile(i));
+		}
+		deleteDeltas(generation);
+
+		SeenUrlSet doneUrls = new SeenUrlSet(done);
+		// drops the lines written after the checkpoint, so new lines follow the ones it holds
+		readLines(directory.resolve("done.log"), done, doneUrls::add);
+		readLines(directory.resolve("seen.log"), seen, url -> {
+			seenUrls.add(url);
+			if (!doneUrls.contains(url)) {
+				frontier.add(url);
+			}
+		});
+		openLogs();
+		return true;
+	}
+
+	/**
+	 * appends a url the crawl found to the log of seen urls
+	 *
+	 * @param url the url
+	 */
+	public synchronized void seen(URL url) {
+		try {
+			seenLog.write(url.toString());
+			seenLog.write('\n');
+			seen++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * starts adding a page to the index, keeping checkpoints from being taken
+	 * until {@link #endPage()} is called
+	 */
+	public void startPage() {
+		lock.readLock().lock();
+	}
+
+	/**
+	 * appends a page to the log of done pages and its words to the delta of the
+	 * next checkpoint, once it is indexed and the urls found on it are seen
+	 *
+	 * @param url   the url of the page
+	 * @param local the index of the page
+	 */
+	public synchronized void done(URL url, InvertedIndex local) {
+		try {
+			doneLog.write(url.toString());
+			doneLog.write('\n');
+			delta.addAll(local);
+			done++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * ends adding a page to the index, saving a checkpoint if enough pages were
+	 * done since the last one
+	 */
+	public void endPage() {
+		lock.readLock().unlock();
+		boolean due;
+		synchronized (this) {
+			due = done - saved >= interval;
+			if (due) {
+				saved = done;
+			}
+		}
+		if (due) {
+			save();
+		}
+	}
+
+	/**
+	 * saves a checkpoint. The pages done since the last checkpoint are taken as a
+	 * delta while no page is being added, which only pauses the crawl for as long
+	 * as it takes to flush the logs. The delta is then written to a new file
+	 * while the crawl goes on, and the file naming the checkpoint is replaced in
+	 * one step, so a crawl dying at any point leaves either the old or the new
+	 * checkpoint.
+	 */
+	public void save() {
+		synchronized (saving) {
+			InvertedIndex pages;
+			int next;
+			String counts;
+			lock.writeLock().lock();
+			try {
+				synchronized (this) {
+					if (failure != null) {
+						return;
+					}
+					seenLog.flush();
+					doneLog.flush();
+					pages = delta;
+					delta = new InvertedIndex();
+					next = generation + 1;
+					counts = next + " " + seen + " " + done + "\n";
+					saved = done;
+				}
+			} catch (IOException e) {
+				fail(e);
+				return;
+			} finally {
+				lock.writeLock().unlock();
+			}
+
+			try {
+				pages.toBinary(deltaFile(next));
+				Path temp = directory.resolve("checkpoint.tmp");
+				Files.writeString(temp, counts, StandardCharsets.UTF_8);
+				Files.move(temp, directory.resolve("checkpoint"), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				synchronized (this) {
+					generation = next;
+				}
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+
+	/**
+	 * saves a last checkpoint once the crawl is done and closes the logs
+	 */
+	public void finish() {
+		save();
+		try {
+			seenLog.close();
+			doneLog.close();
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("checkpoint: %d, seen: %d, done: %d", generation, seen, done);
+	}
+
+	/**
+	 * helper method that deletes the state of an earlier crawl and opens new logs
+	 *
+	 * @throws IOException if the state cannot be deleted or the logs opened
+	 */
+	private void clear() throws IOException {
+		Files.deleteIfExists(directory.resolve("checkpoint"));
+		deleteDeltas(0);
+		Files.deleteIfExists(directory.resolve("seen.log"));
+		Files.deleteIfExists(directory.resolve("done.log"));
+		generation = 0;
+		seen = 0;
+		done = 0;
+		saved = 0;
+		openLogs();
+	}
+
+	/**
+	 * helper method that deletes the deltas written after the last checkpoint,
+	 * and the index files of checkpoints saved before deltas were used
+	 *
+	 * @param keep the number of the last checkpoint, whose deltas are kept, or 0
+	 *             to delete every delta
+	 * @throws IOException if the directory cannot be read
+	 */
+	private void deleteDeltas(int keep) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{delta,index}-*.bin")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String number = name.substring(name.indexOf('-') + 1, name.length() - ".bin".length());
+				if (name.startsWith("index-") || !number.matches("[0-9]+") || Integer.parseInt(number) > keep) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * helper method that opens the logs for appending
+	 *
+	 * @throws IOException if the logs cannot be opened
+	 */
+	private void openLogs() throws IOException {
+		seenLog = Files.newBufferedWriter(directory.resolve("seen.log"), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		doneLog = Files.newBufferedWriter(directory.resolve("done.log"), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * helper method that reads the first lines of a log one at a time, and cuts
+	 * off the lines after them
+	 *
+	 * @param log      the log to read
+	 * @param count    the number of lines to read
+	 * @param consumer takes the url on every line
+	 * @throws IOException if the log cannot be read or is shorter than the count
+	 */
+	private static void readLines(Path log, int count, Consumer<URL> consumer) throws IOException {
+		long bytes = 0;
+		try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < count; i++) {
+				String line = reader.readLine();
+				if (line == null) {
+					throw new IOException("the crawl log " + log + " is shorter than its checkpoint");
+				}
+				// every line ends with a single newline
+				bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+				try {
+					consumer.accept(new URL(line));
+				} catch (MalformedURLException e) {
+					System.out.println("skipping malformed url in the crawl log: " + line);
+				}
+			}
+		}
+		try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+			channel.truncate(bytes);
+		}
+	}
+
+	/**
+	 * helper method that finds the delta file of a checkpoint
+	 *
+	 * @param generation the number of the checkpoint
+	 * @return the delta file
+	 */
+	private Path deltaFile(int generation) {
+		return directory.resolve("delta-" + generation + ".bin");
+	}
+
+	/**
+	 * helper method that stops saving checkpoints after an error writing the
+	 * state, so the last checkpoint saved stays usable
+	 *
+	 * @param e the error
+	 */
+	private synchronized void fail(IOException e) {
+		if (failure == null) {
+			failure = e;
+			System.out.println("unable to write the crawl checkpoint in " + directory + ": " + e.getMessage());
+		}
+	}
+}
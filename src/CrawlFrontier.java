@@ -0,0 +1,365 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which page a web crawl fetches next. The pages to fetch are queued
+ * per host, and the hosts take turns, so a page full of links to one host does
+ * not keep the crawl from fetching the other hosts it found. A host is only
+ * fetched from by a limited number of threads at a time, and only after a
+ * minimum delay since its last fetch started, so no server is hammered and a
+ * slow host cannot tie up every thread while other hosts wait. The more hosts
+ * a crawl finds, the more pages it can fetch at the same time.
+ *
+ * A host is the host name and port of a url, ignoring case.
+ *
+ * A frontier given a spill file keeps a limited number of pages in memory.
+ * Once that many are queued, the pages added next are written to the end of
+ * the file instead, and read back in the order they were written once the
+ * pages in memory run low, so a crawl can find more pages than fit in the
+ * heap.
+ *
+ * @see WebCrawler
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class CrawlFrontier {
+
+	/**
+	 * The default number of pages fetched from one host at the same time
+	 */
+	public static final int DEFAULT_HOST_FETCHES = 8;
+
+	/**
+	 * The default milliseconds between starting two fetches from one host
+	 */
+	public static final long DEFAULT_HOST_DELAY = 0;
+
+	/**
+	 * The default number of pages kept in memory by a frontier with a spill file
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * The number of pages fetched from one host at the same time
+	 */
+	private final int hostFetches;
+
+	/**
+	 * The nanoseconds between starting two fetches from one host
+	 */
+	private final long hostDelay;
+
+	/**
+	 * The queue of every host found so far
+	 */
+	private final HashMap<String, Host> hosts;
+
+	/**
+	 * The hosts with pages to fetch, in the order they take turns
+	 */
+	private final ArrayDeque<Host> turns;
+
+	/**
+	 * The number of pages added that are not done yet
+	 */
+	private int pending;
+
+	/**
+	 * The file holding the pages that do not fit in memory, or null to keep every
+	 * page in memory
+	 */
+	private final Path spill;
+
+	/**
+	 * The number of pages kept in memory before pages are written to the spill
+	 * file
+	 */
+	private final int capacity;
+
+	/**
+	 * The number of pages queued in memory
+	 */
+	private int queued;
+
+	/**
+	 * The number of pages written to the spill file and not read back yet
+	 */
+	private int spilled;
+
+	/**
+	 * Writes pages to the end of the spill file, or null if it is not open
+	 */
+	private BufferedWriter spillWriter;
+
+	/**
+	 * Reads pages back from the spill file, or null if it is not open
+	 */
+	private BufferedReader spillReader;
+
+	/**
+	 * Initializes a frontier with the default limits
+	 */
+	public CrawlFrontier() {
+		this(DEFAULT_HOST_FETCHES, DEFAULT_HOST_DELAY);
+	}
+
+	/**
+	 * Initializes a frontier
+	 *
+	 * @param hostFetches the number of pages fetched from one host at the same
+	 *                    time
+	 * @param hostDelay   the milliseconds between starting two fetches from one
+	 *                    host
+	 */
+	public CrawlFrontier(int hostFetches, long hostDelay) {
+		this(hostFetches, hostDelay, null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Initializes a frontier that writes the pages that do not fit in memory to a
+	 * file. The file is replaced if it exists, and deleted whenever every page
+	 * written to it is read back.
+	 *
+	 * @param hostFetches the number of pages fetched from one host at the same
+	 *                    time
+	 * @param hostDelay   the milliseconds between starting two fetches from one
+	 *                    host
+	 * @param spill       the file to write pages to, or null to keep every page in
+	 *                    memory
+	 * @param capacity    the number of pages kept in memory
+	 */
+	public CrawlFrontier(int hostFetches, long hostDelay, Path spill, int capacity) {
+		this.spill = spill;
+		this.capacity = Math.max(1, capacity);
+		this.queued = 0;
+		this.spilled = 0;
+		this.hostFetches = Math.max(1, hostFetches);
+		this.hostDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, hostDelay));
+		this.hosts = new HashMap<String, Host>();
+		this.turns = new ArrayDeque<Host>();
+		this.pending = 0;
+	}
+
+	/**
+	 * adds a page to fetch after the pages already queued for its host, or to the
+	 * end of the spill file if the pages in memory are full or pages are still
+	 * waiting in the file
+	 *
+	 * @param url the url of the page
+	 * @throws UncheckedIOException if the page cannot be written to the spill file
+	 */
+	public synchronized void add(URL url) {
+		pending++;
+		if (spill != null && (spilled > 0 || queued >= capacity)) {
+			try {
+				if (spillWriter == null) {
+					spillWriter = Files.newBufferedWriter(spill, StandardCharsets.UTF_8);
+				}
+				spillWriter.write(url.toString());
+				spillWriter.newLine();
+				spilled++;
+			} catch (IOException e) {
+				pending--;
+				throw new UncheckedIOException(e);
+			}
+			return;
+		}
+		enqueue(url);
+		notifyAll();
+	}
+
+	/**
+	 * waits for the next page to fetch. The hosts with pages to fetch take turns,
+	 * skipping the hosts fetched from by as many threads as allowed and the hosts
+	 * still waiting for their delay to pass. Every page returned must be
+	 * {@link #release(URL) released} once it is fetched and marked
+	 * {@link #done()} once the links found on it are added.
+	 *
+	 * @return the url of the page, or null once every page added is done
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized URL take() throws InterruptedException {
+		while (pending > 0) {
+			if (spilled > 0 && queued <= capacity / 2) {
+				refill();
+			}
+			long now = System.nanoTime();
+			long wait = Long.MAX_VALUE;
+			for (int i = turns.size(); i > 0; i--) {
+				Host host = turns.removeFirst();
+				if (host.active < hostFetches && host.next - now <= 0) {
+					URL url = host.queue.removeFirst();
+					queued--;
+					host.active++;
+					host.next = now + hostDelay;
+					if (!host.queue.isEmpty()) {
+						turns.addLast(host);
+					}
+					return url;
+				}
+				turns.addLast(host);
+				if (host.active < hostFetches) {
+					wait = Math.min(wait, host.next - now);
+				}
+			}
+			if (wait == Long.MAX_VALUE) {
+				wait();
+			} else {
+				TimeUnit.NANOSECONDS.timedWait(this, wait);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * marks a page as fetched, letting another thread fetch from its host
+	 *
+	 * @param url the url returned by {@link #take()}
+	 */
+	public synchronized void release(URL url) {
+		Host host = hosts.get(key(url));
+		if (host != null && host.active > 0) {
+			host.active--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * marks a page returned by {@link #take()} as done, once the links found on it
+	 * are added
+	 */
+	public synchronized void done() {
+		pending--;
+		if (pending <= 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * returns the number of pages added that are not done yet
+	 *
+	 * @return the number of pages
+	 */
+	public synchronized int size() {
+		return pending;
+	}
+
+	/**
+	 * returns the number of hosts found so far
+	 *
+	 * @return the number of hosts
+	 */
+	public synchronized int hosts() {
+		return hosts.size();
+	}
+
+	/**
+	 * returns the number of pages written to the spill file and not read back yet
+	 *
+	 * @return the number of pages
+	 */
+	public synchronized int spilled() {
+		return spilled;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("pages: %d, hosts: %d, spilled: %d", pending, hosts.size(), spilled);
+	}
+
+	/**
+	 * helper method that queues a page in memory
+	 *
+	 * @param url the url of the page
+	 */
+	private void enqueue(URL url) {
+		Host host = hosts.computeIfAbsent(key(url), key -> new Host());
+		if (host.queue.isEmpty()) {
+			turns.addLast(host);
+		}
+		host.queue.addLast(url);
+		queued++;
+	}
+
+	/**
+	 * helper method that reads pages back from the spill file until the pages in
+	 * memory are full, deleting the file once every page is read back
+	 *
+	 * @throws UncheckedIOException if the spill file cannot be read
+	 */
+	private void refill() {
+		try {
+			spillWriter.flush();
+			if (spillReader == null) {
+				spillReader = Files.newBufferedReader(spill, StandardCharsets.UTF_8);
+			}
+			while (spilled > 0 && queued < capacity) {
+				String line = spillReader.readLine();
+				spilled--;
+				try {
+					enqueue(new URL(line));
+				} catch (MalformedURLException e) {
+					// cannot happen for a line written by add, but the page is then done
+					pending--;
+				}
+			}
+			if (spilled == 0) {
+				spillReader.close();
+				spillWriter.close();
+				spillReader = null;
+				spillWriter = null;
+				Files.deleteIfExists(spill);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * helper method that finds the host of a url
+	 *
+	 * @param url the url
+	 * @return the lower case host name and port
+	 */
+	private static String key(URL url) {
+		int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+		return url.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+	}
+
+	/**
+	 * The pages to fetch from one host
+	 *
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class Host {
+
+		/**
+		 * The pages to fetch, in the order they were added
+		 */
+		private final ArrayDeque<URL> queue = new ArrayDeque<URL>();
+
+		/**
+		 * The number of pages being fetched from the host
+		 */
+		private int active;
+
+		/**
+		 * The time the next fetch from the host may start, as given by
+		 * {@link System#nanoTime()}
+		 */
+		private long next = System.nanoTime();
+	}
+}
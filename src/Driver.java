@@ -33,6 +33,83 @@ public class Driver {
 	 */
 	public static final Path DEFAULT_INDEX = Path.of("index.json");
 
+	/**
+	 * Stores the default value for the save and load flags if a value has not been
+	 * provided
+	 */
+	public static final Path DEFAULT_BINARY = Path.of("index.bin");
+
+	/**
+	 * Stores the default directory for the checkpoint and resume flags if a value
+	 * has not been provided
+	 */
+	public static final Path DEFAULT_CRAWL = Path.of("crawl");
+
+	/**
+	 * Stores the default number of results kept for each query by the top flag if
+	 * a value has not been provided
+	 */
+	public static final int DEFAULT_TOP = 10;
+
+	/**
+	 * Creates the thread safe inverted index implementation selected by the
+	 * command-line arguments. The "-segments" flag selects a
+	 * {@link SegmentedInvertedIndex}, optionally followed by its merge factor, and
+	 * the "-shards" flag selects a {@link ShardedInvertedIndex}, optionally
+	 * followed by its number of shards. The "-snapshot" flag selects a
+	 * {@link SnapshotInvertedIndex}, optionally followed by the number of
+	 * locations to batch, with the "-interval" flag setting how many milliseconds
+	 * to wait before publishing a batch.
+	 *
+	 * @param map the parsed command-line arguments
+	 * @return the thread safe inverted index to use
+	 */
+	private static ThreadSafeInvertedIndex createThreadSafeIndex(ArgumentParser map) {
+		if (map.hasFlag("-snapshot")) {
+			int batch = SnapshotInvertedIndex.DEFAULT_BATCH;
+			long interval = SnapshotInvertedIndex.DEFAULT_INTERVAL;
+			if (map.hasValue("-snapshot")) {
+				batch = Integer.parseInt(map.getString("-snapshot"));
+			}
+			if (map.hasValue("-interval")) {
+				interval = Long.parseLong(map.getString("-interval"));
+			}
+			return new SnapshotInvertedIndex(batch, interval);
+		}
+		if (map.hasFlag("-shards")) {
+			int shards = ShardedInvertedIndex.DEFAULT_SHARDS;
+			if (map.hasValue("-shards")) {
+				shards = Integer.parseInt(map.getString("-shards"));
+			}
+			return new ShardedInvertedIndex(shards);
+		}
+		if (map.hasFlag("-segments")) {
+			int mergeFactor = SegmentedInvertedIndex.DEFAULT_MERGE_FACTOR;
+			if (map.hasValue("-segments")) {
+				mergeFactor = Integer.parseInt(map.getString("-segments"));
+			}
+			return new SegmentedInvertedIndex(mergeFactor);
+		}
+		return new ThreadSafeInvertedIndex();
+	}
+
+	/**
+	 * Creates the cache of search results shared by the search builder and the
+	 * server. The "-cache" flag sets the number of searches to keep, and 0 turns
+	 * the cache off.
+	 *
+	 * @param map   the parsed command-line arguments
+	 * @param index the index the results come from
+	 * @return the cache to use
+	 */
+	private static QueryCache createCache(ArgumentParser map, ThreadSafeInvertedIndex index) {
+		int capacity = QueryCache.DEFAULT_CAPACITY;
+		if (map.hasValue("-cache")) {
+			capacity = Integer.parseInt(map.getString("-cache"));
+		}
+		return new QueryCache(index, capacity);
+	}
+
 	/**
 	 * 
 	 * Initializes the classes necessary based on the provided command-line
@@ -63,41 +140,96 @@ public class Driver {
 		 * Thread safe version of the inverted index
 		 */
 		ThreadSafeInvertedIndex threadSafeIndex = null;
+		/*
+		 * cache of search results shared by the search builder and the server
+		 */
+		QueryCache cache = null;
 		/*
 		 * number of threads to use
 		 */
 		int threads = 5;
 		int limit = 50;
 		int port = 8080;
+		int top = 0;
+
+		if (map.hasFlag("-top")) {
+			top = Integer.parseInt(map.getString("-top", String.valueOf(DEFAULT_TOP)));
+		}
 
 		if (map.hasFlag("-threads")) {
-			threadSafeIndex = new ThreadSafeInvertedIndex();
+			threadSafeIndex = createThreadSafeIndex(map);
 			threads = map.threadArgs(map.getString("-threads"));
-			searchBuilder = new ThreadSafeSearchBuilder(threadSafeIndex, threads);
+			cache = createCache(map, threadSafeIndex);
+			searchBuilder = new ThreadSafeSearchBuilder(threadSafeIndex, threads, top, cache);
 			invertedIndex = threadSafeIndex;
 		} 
 		else if(map.hasFlag("-url") && !map.hasFlag("-threads")) {
-			threadSafeIndex = new ThreadSafeInvertedIndex();
-			searchBuilder = new ThreadSafeSearchBuilder(threadSafeIndex, threads);
+			threadSafeIndex = createThreadSafeIndex(map);
+			cache = createCache(map, threadSafeIndex);
+			searchBuilder = new ThreadSafeSearchBuilder(threadSafeIndex, threads, top, cache);
 			invertedIndex = threadSafeIndex;
 		}
 		else {
 			invertedIndex = new InvertedIndex();
-			searchBuilder = new SearchBuilder(invertedIndex);
+			searchBuilder = new SearchBuilder(invertedIndex, top);
 		}
 		
+		if (map.hasFlag("-offheap")) {
+			invertedIndex.useOffHeap();
+		}
+		if (map.hasFlag("-bm25")) {
+			invertedIndex.setScoringModel(new BM25ScoringModel());
+		}
+		if (map.hasFlag("-load")) {
+			Path loadPath = map.getPath("-load", DEFAULT_BINARY);
+			try {
+				invertedIndex.load(loadPath);
+			} catch (IOException e) {
+				System.out.println("unable to load inverted index from path: " + loadPath.toString());
+			}
+		}
 		if (map.hasFlag("-url")) {
 
 			if (map.hasFlag("-limit")) {
 				limit = Integer.parseInt(map.getString("-limit"));
 			}
+			// fetches pages on their own threads, cleaning and indexing them on a thread per processor
+			int fetches = 0;
+			if (map.hasFlag("-fetches")) {
+				fetches = WebCrawler.DEFAULT_FETCHES;
+				if (map.hasValue("-fetches")) {
+					fetches = Integer.parseInt(map.getString("-fetches"));
+				}
+			}
+			// takes turns between hosts, limiting the fetches from each host at a time
+			int hostFetches = CrawlFrontier.DEFAULT_HOST_FETCHES;
+			long hostDelay = CrawlFrontier.DEFAULT_HOST_DELAY;
+			if (map.hasValue("-hostfetches")) {
+				hostFetches = Integer.parseInt(map.getString("-hostfetches"));
+			}
+			if (map.hasValue("-hostdelay")) {
+				hostDelay = Long.parseLong(map.getString("-hostdelay"));
+			}
 			String urlSeedString = map.getString("-url");
 			try {
 				URL url = new URL(urlSeedString);
 				WorkQueue workQ = null;
-				WebCrawler crawler = new WebCrawler(workQ,limit,threads, threadSafeIndex);
+				// keeps the crawl on disk, checkpointing every so many pages so it can be resumed
+				CrawlCheckpoint checkpoint = null;
+				CrawlFrontier frontier = new CrawlFrontier(hostFetches, hostDelay);
+				if (map.hasFlag("-checkpoint") || map.hasFlag("-resume")) {
+					Path crawlPath = map.getPath("-checkpoint", map.getPath("-resume", DEFAULT_CRAWL));
+					int interval = CrawlCheckpoint.DEFAULT_INTERVAL;
+					if (map.hasValue("-every")) {
+						interval = Integer.parseInt(map.getString("-every"));
+					}
+					checkpoint = new CrawlCheckpoint(crawlPath, interval, map.hasFlag("-resume"));
+					frontier = new CrawlFrontier(hostFetches, hostDelay, checkpoint.getSpill(),
+							CrawlFrontier.DEFAULT_CAPACITY);
+				}
+				WebCrawler crawler = new WebCrawler(workQ,limit,threads, threadSafeIndex, fetches, frontier);
 				try {
-					crawler.buildFromSeed(url, threadSafeIndex);
+					crawler.buildFromSeed(url, threadSafeIndex, checkpoint);
 				} catch (InterruptedException e) {
 					System.out.println("interrupt error occured while crawling");
 				}	
@@ -111,7 +243,7 @@ public class Driver {
 		if (map.hasFlag("-port")) {
 			port = Integer.parseInt(map.getString("-port"));
 			// Create the Jetty server
-			MyServer server = new MyServer(threadSafeIndex);
+			MyServer server = new MyServer(threadSafeIndex, cache);
 		    Server jettyServer = new Server();
 
 		    // Setup the connector component
@@ -151,7 +283,9 @@ public class Driver {
 		if (map.hasFlag("-path")) {
 			Path inputPath = map.getPath("-path");
 			try {
-				if (threadSafeIndex != null) {
+				if (threadSafeIndex != null && map.hasFlag("-treemerge")) {
+					ThreadSafeIndexBuilder.addInputWithTreeMerge(inputPath, threadSafeIndex, threads);
+				} else if (threadSafeIndex != null) {
 					ThreadSafeIndexBuilder.addInputWithThreads(inputPath, threadSafeIndex, threads);
 				} else {
 					IndexBuilder.addInput(inputPath, invertedIndex);
@@ -172,6 +306,14 @@ public class Driver {
 				System.out.println("unable to write inverted index to path: " + outputPath.toString());
 			}
 		}
+		if (map.hasFlag("-save")) {
+			Path savePath = map.getPath("-save", DEFAULT_BINARY);
+			try {
+				invertedIndex.toBinary(savePath);
+			} catch (IOException e) {
+				System.out.println("unable to save inverted index to path: " + savePath.toString());
+			}
+		}
 		if (map.hasFlag("-query")) {
 			try {
 				Path queryPath = map.getPath("-query");
@@ -200,5 +342,9 @@ public class Driver {
 				System.out.println("unable to write Count Map to path: " + countPath);
 			}
 		}
+		// the server keeps searching the index after this method returns
+		if (threadSafeIndex != null && !map.hasFlag("-port")) {
+			threadSafeIndex.close();
+		}
 	}
 }
@@ -60,10 +60,11 @@ public class HtmlFetcher {
 	}
 
 	/**
-	 * Fetches the resource at the URL using HTTP/1.1 and sockets. If the status
-	 * code is 200 and the content type is HTML, returns the HTML as a single
-	 * string. If the status code is a valid redirect, will follow that redirect if
-	 * the number of redirects is greater than 0. Otherwise, returns {@code null}.
+	 * Fetches the resource at the URL using the shared {@link AsyncFetcher}, which
+	 * keeps connections open between requests. If the status code is 200 and the
+	 * content type is HTML, returns the HTML as a single string. If the status
+	 * code is a valid redirect, will follow that redirect if the number of
+	 * redirects is greater than 0. Otherwise, returns an empty string.
 	 *
 	 * @param url       the url to fetch
 	 * @param redirects the number of times to follow redirects
@@ -71,17 +72,39 @@ public class HtmlFetcher {
 	 *         resource is not html
 	 * @throws IOException if IO error occurs
 	 *
+	 * @see AsyncFetcher#get(URL, int)
+	 *
+	 * @see #isHtml(Map)
+	 * @see #isRedirect(Map)
+	 */
+	public static String fetch(URL url, int redirects) throws IOException {
+
+		if (redirects < 0 || redirects > 3) {
+			return "";
+		}
+		return AsyncFetcher.SHARED.get(url, redirects);
+
+	}
+
+	/**
+	 * Fetches the resource at the URL using HTTP/1.1 and a new socket for every
+	 * request, the way {@link #fetch(URL, int)} did before connections were
+	 * reused. Kept to compare against.
+	 *
+	 * @param url       the url to fetch
+	 * @param redirects the number of times to follow redirects
+	 * @return the html, or an empty string if unable to fetch the resource or the
+	 *         resource is not html
+	 * @throws IOException if IO error occurs
+	 *
 	 * @see HttpsFetcher#openConnection(URL)
 	 * @see HttpsFetcher#printGetRequest(PrintWriter, URL)
 	 * @see HttpsFetcher#getHeaderFields(BufferedReader)
 	 * @see HttpsFetcher#getContent(BufferedReader)
 	 *
 	 * @see String#join(CharSequence, CharSequence...)
-	 *
-	 * @see #isHtml(Map)
-	 * @see #isRedirect(Map)
 	 */
-	public static String fetch(URL url, int redirects) throws IOException {
+	public static String fetchWithSockets(URL url, int redirects) throws IOException {
 
 		if (redirects < 0 || redirects > 3) {
 			return "";
@@ -93,7 +116,7 @@ public class HtmlFetcher {
 				return String.join("\n", headers.get("Content"));
 			}
 		} else if (isRedirect(headers)) {
-			return fetch(new URL(url, headers.get("Location").get(0)), --redirects);
+			return fetchWithSockets(new URL(url, headers.get("Location").get(0)), --redirects);
 		}
 		return "";
 
@@ -0,0 +1,335 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Cleans html into plain text and finds the links of its anchor tags in a
+ * single pass, instead of running {@link HtmlCleaner} and {@link LinkParser}
+ * one after another over the whole page. Comments and the head, style, script,
+ * noscript and svg elements are replaced by a space, other tags are dropped,
+ * and entities are dropped. For well-formed html this gives the same text as
+ * {@link HtmlCleaner#stripBlockElements(String)} followed by
+ * {@link HtmlCleaner#stripTags(String)} and
+ * {@link HtmlCleaner#stripEntities(String)}. Misnested removed elements, such
+ * as a head element opened inside a noscript element, can give different text,
+ * since the scanner reads the tags in order instead of matching each element
+ * with a pattern.
+ *
+ * The href of every anchor tag outside the removed elements is made absolute
+ * and cleaned like {@link LinkParser#clean(URL)} does. Unlike
+ * {@link LinkParser#listLinks(URL, String)}, which only finds double-quoted
+ * hrefs, the scanner also follows single-quoted and unquoted hrefs, so a crawl
+ * finds more links on some pages, and a crawl with a limit may visit different
+ * pages than it did with {@link LinkParser}.
+ *
+ * The text is written into an array that is reused by the next page, so a
+ * scanner must only be used by one thread at a time.
+ *
+ * @see #forThread()
+ * @see IndexBuilder#build(URL, InvertedIndex, HtmlScanner)
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class HtmlScanner {
+
+	/**
+	 * The elements removed along with everything inside them
+	 */
+	private static final String[] BLOCK_ELEMENTS = { "head", "style", "script", "noscript", "svg" };
+
+	/**
+	 * The scanner of each thread
+	 */
+	private static final ThreadLocal<HtmlScanner> SCANNERS = ThreadLocal.withInitial(HtmlScanner::new);
+
+	/**
+	 * The text of the last page, reused for every page
+	 */
+	private char[] text;
+
+	/**
+	 * The number of characters of text of the last page
+	 */
+	private int length;
+
+	/**
+	 * The index of the text the entity being written starts at, or -1 if there is
+	 * none
+	 */
+	private int entity;
+
+	/**
+	 * The links of the last page
+	 */
+	private ArrayList<URL> links;
+
+	/**
+	 * Initializes a scanner
+	 */
+	public HtmlScanner() {
+		this.text = new char[4096];
+		this.links = new ArrayList<URL>();
+	}
+
+	/**
+	 * returns the scanner of the current thread
+	 *
+	 * @return the scanner
+	 */
+	public static HtmlScanner forThread() {
+		return SCANNERS.get();
+	}
+
+	/**
+	 * cleans a page and finds its links, replacing the text and links of the last
+	 * call
+	 *
+	 * @param base the url of the page, used to make links absolute
+	 * @param html the html of the page
+	 * @return the number of characters of text
+	 *
+	 * @see #getText()
+	 * @see #getLinks()
+	 */
+	public int scan(URL base, String html) {
+		length = 0;
+		entity = -1;
+		links = new ArrayList<URL>();
+		int size = html.length();
+		int last = html.lastIndexOf('>');
+		int i = 0;
+		while (i < size) {
+			char c = html.charAt(i);
+			if (c != '<') {
+				append(c);
+				i++;
+				continue;
+			}
+			int end = skipComment(html, i);
+			if (end < 0) {
+				end = skipBlockElement(html, i);
+			}
+			if (end >= 0) {
+				append(' ');
+				i = end;
+				continue;
+			}
+			end = i < last ? tagEnd(html, i) : -1;
+			if (end < 0) {
+				append(c);
+				i++;
+				continue;
+			}
+			if (isTag(html, i, "a")) {
+				addLink(base, html, i + 2, end);
+			}
+			i = end + 1;
+		}
+		return length;
+	}
+
+	/**
+	 * returns the text of the last page. Only the first {@link #length()}
+	 * characters belong to the page.
+	 *
+	 * @return the array holding the text
+	 */
+	public char[] getText() {
+		return text;
+	}
+
+	/**
+	 * returns the number of characters of text of the last page
+	 *
+	 * @return the number of characters
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * returns the links of the last page, in the order they were found
+	 *
+	 * @return the links
+	 */
+	public ArrayList<URL> getLinks() {
+		return links;
+	}
+
+	@Override
+	public String toString() {
+		return new String(text, 0, length);
+	}
+
+	/**
+	 * adds a character to the text, dropping the entity it ends if it is a
+	 * semicolon. An entity starts at an ampersand and ends at the next semicolon,
+	 * unless whitespace comes first.
+	 *
+	 * @param c the character to add
+	 */
+	private void append(char c) {
+		if (c == ';' && entity >= 0) {
+			length = entity;
+			entity = -1;
+			return;
+		}
+		if (c == '&' && entity < 0) {
+			entity = length;
+		} else if (c == ' ' || c >= '\t' && c <= '\r') {
+			entity = -1;
+		}
+		if (length == text.length) {
+			text = Arrays.copyOf(text, length * 2);
+		}
+		text[length++] = c;
+	}
+
+	/**
+	 * finds the end of a comment
+	 *
+	 * @param html  the html to scan
+	 * @param start the index of the less than sign that may start a comment
+	 * @return the index after the comment, or -1 if there is no comment at the
+	 *         index or it does not end
+	 */
+	private static int skipComment(String html, int start) {
+		if (!html.startsWith("<!--", start)) {
+			return -1;
+		}
+		int end = html.indexOf("-->", start + 4);
+		return end < 0 ? -1 : end + 3;
+	}
+
+	/**
+	 * finds the end of an element removed along with everything inside it. The
+	 * element ends at the first closing tag of the same name that is not inside a
+	 * comment.
+	 *
+	 * @param html  the html to scan
+	 * @param start the index of the less than sign that may start the element
+	 * @return the index after the element, or -1 if there is no such element at
+	 *         the index or it does not end
+	 */
+	private static int skipBlockElement(String html, int start) {
+		for (String name : BLOCK_ELEMENTS) {
+			if (!isTag(html, start, name)) {
+				continue;
+			}
+			int i = html.indexOf('>', start + 1 + name.length());
+			if (i < 0) {
+				return -1;
+			}
+			while ((i = html.indexOf('<', i + 1)) >= 0) {
+				int comment = skipComment(html, i);
+				if (comment >= 0) {
+					i = comment - 1;
+				} else if (html.startsWith("/", i + 1) && html.regionMatches(true, i + 2, name, 0, name.length())) {
+					int end = html.indexOf('>', i + 2 + name.length());
+					return end < 0 ? -1 : end + 1;
+				}
+			}
+			return -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * finds the end of a tag. Comments and removed elements inside the tag are
+	 * part of it, so a greater than sign inside them does not end the tag.
+	 *
+	 * @param html  the html to scan
+	 * @param start the index of the less than sign starting the tag
+	 * @return the index of the greater than sign ending the tag, or -1 if the tag
+	 *         does not end
+	 */
+	private static int tagEnd(String html, int start) {
+		int i = start + 1;
+		while (i < html.length()) {
+			char c = html.charAt(i);
+			if (c == '>') {
+				return i;
+			}
+			int end = c == '<' ? skipComment(html, i) : -1;
+			if (c == '<' && end < 0) {
+				end = skipBlockElement(html, i);
+			}
+			i = end < 0 ? i + 1 : end;
+		}
+		return -1;
+	}
+
+	/**
+	 * determines if a tag of the given name starts at an index, ignoring case
+	 *
+	 * @param html  the html to scan
+	 * @param start the index of the less than sign
+	 * @param name  the lower case name of the tag
+	 * @return true if the tag starts at the index
+	 */
+	private static boolean isTag(String html, int start, String name) {
+		int after = start + 1 + name.length();
+		if (!html.regionMatches(true, start + 1, name, 0, name.length())) {
+			return false;
+		}
+		return after == html.length() || !Character.isLetterOrDigit(html.charAt(after)) && html.charAt(after) != '_';
+	}
+
+	/**
+	 * adds the link of the href attribute of an anchor tag, if it has one
+	 *
+	 * @param base  the url of the page
+	 * @param html  the html to scan
+	 * @param start the index after the name of the tag
+	 * @param end   the index of the greater than sign ending the tag
+	 */
+	private void addLink(URL base, String html, int start, int end) {
+		int i = start;
+		while (i < end) {
+			while (i < end && (Character.isWhitespace(html.charAt(i)) || html.charAt(i) == '/')) {
+				i++;
+			}
+			int name = i;
+			while (i < end && html.charAt(i) != '=' && html.charAt(i) != '/'
+					&& !Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+			boolean href = i - name == 4 && html.regionMatches(true, name, "href", 0, 4);
+			while (i < end && Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+			if (i == end || html.charAt(i) != '=') {
+				continue;
+			}
+			i++;
+			while (i < end && Character.isWhitespace(html.charAt(i))) {
+				i++;
+			}
+			int value = i;
+			int valueEnd;
+			if (i < end && (html.charAt(i) == '"' || html.charAt(i) == '\'')) {
+				valueEnd = html.indexOf(html.charAt(i), i + 1);
+				if (valueEnd < 0 || valueEnd > end) {
+					valueEnd = end;
+				}
+				value++;
+				i = valueEnd + 1;
+			} else {
+				while (i < end && !Character.isWhitespace(html.charAt(i))) {
+					i++;
+				}
+				valueEnd = i;
+			}
+			if (href) {
+				try {
+					links.add(LinkParser.clean(new URL(base, html.substring(value, valueEnd).strip())));
+				} catch (MalformedURLException e) {
+					// links that are not urls are not followed
+				}
+				return;
+			}
+		}
+	}
+}
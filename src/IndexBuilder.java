@@ -1,14 +1,21 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import opennlp.tools.stemmer.Stemmer;
-import opennlp.tools.stemmer.snowball.SnowballStemmer;
 
 /**
  * Class responsible for building the inverted index
@@ -18,6 +25,21 @@ import opennlp.tools.stemmer.snowball.SnowballStemmer;
  */
 public class IndexBuilder {
 
+	/**
+	 * The size of the parts large files are split into to index them in parallel
+	 */
+	public static final long CHUNK_SIZE = 8 << 20;
+
+	/**
+	 * The fewest bytes of a file mapped into memory, smaller files are read instead
+	 */
+	private static final long MIN_MAPPING = 1 << 16;
+
+	/**
+	 * The most bytes of a file mapped into memory at once
+	 */
+	private static final long MAX_MAPPING = 1 << 30;
+
 	/**
 	 * Adds all input from the file inputPath into the inverted index
 	 * 
@@ -31,6 +53,7 @@ public class IndexBuilder {
 		for (Path textFile : stream) {
 			build(textFile, index);
 		}
+		index.commit();
 	}
 
 	/**
@@ -41,21 +64,202 @@ public class IndexBuilder {
 	 * @throws IOException if an IO error occurs
 	 */
 	public static void build(Path textFile, InvertedIndex index) throws IOException {
-		try (BufferedReader reader = Files.newBufferedReader(textFile, StandardCharsets.UTF_8)) {
-			String line;
-			Stemmer stemmer = new SnowballStemmer(TextFileStemmer.DEFAULT);
-			int position = 1;
-			String location = textFile.toString();
-			while ((line = reader.readLine()) != null) {
-				String wordList[] = TextParser.parse(line);
-				for (int i = 0; i < wordList.length; i++) {
-					String stem = stemmer.stem(wordList[i]).toString();
-					index.add(stem, location, position++);
+		build(textFile, 0, Files.size(textFile), textFile.toString(), index);
+	}
+
+	/**
+	 * adds the words of part of a text file into the inverted index. The file is
+	 * mapped into memory, or read at once if it is small, and decoded straight
+	 * into the tokenizer, one line at a time, without making a string of every
+	 * line. Lines end where
+	 * {@link BufferedReader#readLine()} would end them, so the words and positions
+	 * are the same as reading the file line by line.
+	 * 
+	 * @param textFile the text file to read
+	 * @param start    the byte the part starts at, as found by
+	 *                 {@link #split(Path, long)}
+	 * @param end      the byte after the part, as found by
+	 *                 {@link #split(Path, long)}
+	 * @param location the location to add the words at
+	 * @param index    inverted index to use, with positions starting at 1
+	 * @return the number of words added
+	 * @throws IOException if an IO error occurs or the part is not valid UTF-8
+	 * 
+	 * @see #split(Path, long)
+	 */
+	public static int build(Path textFile, long start, long end, String location, InvertedIndex index)
+			throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		TextTokenizer tokenizer = TextTokenizer.forThread();
+		char[] text = new char[8192];
+		CharBuffer chars = CharBuffer.wrap(text);
+		int position = 1;
+		try (FileChannel channel = FileChannel.open(textFile, StandardOpenOption.READ)) {
+			long offset = start;
+			boolean last = false;
+			while (!last) {
+				long size = Math.min(end - offset, MAX_MAPPING);
+				last = offset + size == end;
+				ByteBuffer bytes = size < MIN_MAPPING ? read(channel, offset, size)
+						: channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+				CoderResult result;
+				do {
+					result = decoder.decode(bytes, chars, last);
+					if (result.isError()) {
+						result.throwException();
+					}
+					position = addLines(tokenizer, text, chars, location, position, index);
+					// a character outside the basic plane needs two chars, so a single free one is not enough
+					if (chars.remaining() < 2) {
+						text = Arrays.copyOf(text, text.length * 2);
+						chars = CharBuffer.wrap(text).position(chars.position());
+					}
+				} while (result.isOverflow());
+				// a character cut off by the end of the mapping is decoded from the next one
+				offset += bytes.position();
+			}
+			decoder.flush(chars);
+			position = addLines(tokenizer, text, chars, location, position, index);
+			position = addWords(tokenizer, text, 0, chars.position(), location, position, index);
+		}
+		return position - 1;
+	}
+
+	/**
+	 * helper method that reads part of a small file, which is faster than mapping
+	 * it into memory
+	 * 
+	 * @param channel the channel to read from
+	 * @param offset  the byte to start at
+	 * @param size    the number of bytes to read
+	 * @return the bytes read
+	 * @throws IOException if an IO error occurs
+	 */
+	private static ByteBuffer read(FileChannel channel, long offset, long size) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate((int) size);
+		while (bytes.hasRemaining() && channel.read(bytes, offset + bytes.position()) >= 0) {
+			continue;
+		}
+		return bytes.flip();
+	}
+
+	/**
+	 * helper method that adds every whole line decoded so far into the inverted
+	 * index, and moves the start of the unfinished line to the start of the buffer
+	 * 
+	 * @param tokenizer the tokenizer to use
+	 * @param text      the array holding the decoded characters
+	 * @param chars     the buffer over the array, positioned after the decoded
+	 *                  characters
+	 * @param location  the location to add the words at
+	 * @param position  the position of the next word
+	 * @param index     inverted index to use
+	 * @return the position of the word after the added lines
+	 */
+	private static int addLines(TextTokenizer tokenizer, char[] text, CharBuffer chars, String location,
+			int position, InvertedIndex index) {
+		int decoded = chars.position();
+		int line = 0;
+		for (int i = 0; i < decoded; i++) {
+			if (text[i] == '\n' || text[i] == '\r') {
+				position = addWords(tokenizer, text, line, i, location, position, index);
+				line = i + 1;
+			}
+		}
+		System.arraycopy(text, line, text, 0, decoded - line);
+		chars.position(decoded - line);
+		return position;
+	}
+
+	/**
+	 * helper method that adds the words of one line into the inverted index
+	 * 
+	 * @param tokenizer the tokenizer to use
+	 * @param text      the array holding the line
+	 * @param start     the index of the first character of the line
+	 * @param end       the index after the last character of the line
+	 * @param location  the location to add the words at
+	 * @param position  the position of the first word
+	 * @param index     inverted index to use
+	 * @return the position of the word after the line
+	 */
+	private static int addWords(TextTokenizer tokenizer, char[] text, int start, int end, String location,
+			int position, InvertedIndex index) {
+		Stemmer stemmer = CachingStemmer.SHARED;
+		int words = tokenizer.tokenize(text, start, end);
+		for (int i = 0; i < words; i++) {
+			String stem = stemmer.stem(tokenizer.token(i)).toString();
+			index.add(stem, location, position++);
+		}
+		return position;
+	}
+
+	/**
+	 * splits a text file into parts of about the given size, so the parts can be
+	 * indexed on their own. Parts start at an ASCII letter right after ASCII
+	 * whitespace, in a line that already had an ASCII letter, so no word is cut in
+	 * two, no character is cut off from its accents, and the words of every part
+	 * are the ones found reading the whole file. Text without such a place is not
+	 * split.
+	 * 
+	 * @param textFile  the text file to split
+	 * @param chunkSize the number of bytes to aim for in each part
+	 * @return the byte every part starts at, followed by the size of the file
+	 * @throws IOException if an IO error occurs
+	 * 
+	 * @see #build(Path, long, long, String, InvertedIndex)
+	 */
+	public static List<Long> split(Path textFile, long chunkSize) throws IOException {
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		try (FileChannel channel = FileChannel.open(textFile, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer bytes = ByteBuffer.allocate(8192);
+			long offset = chunkSize;
+			while (offset < size) {
+				long bound = -1;
+				long read = offset - 1;
+				byte previous = 'a';
+				boolean letter = false;
+				while (bound < 0 && read < size) {
+					bytes.clear();
+					int count = channel.read(bytes, read);
+					if (count <= 0) {
+						break;
+					}
+					for (int i = 0; i < count && bound < 0; i++) {
+						byte next = bytes.get(i);
+						boolean ascii = (next | 0x20) >= 'a' && (next | 0x20) <= 'z';
+						if (letter && ascii && isSpace(previous)) {
+							bound = read + i;
+						}
+						letter = ascii || letter && next != '\n' && next != '\r';
+						previous = next;
+					}
+					read += count;
 				}
+				if (bound < 0) {
+					break;
+				}
+				bounds.add(bound);
+				offset = bound + chunkSize;
 			}
+			bounds.add(size);
 		}
+		return bounds;
 	}
-	
+
+	/**
+	 * helper method that determines if a byte is ASCII whitespace
+	 * 
+	 * @param b the byte to check
+	 * @return true if the byte is a space, tab or line break
+	 */
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b >= '\t' && b <= '\r';
+	}
+
 	/**
 	 * helper method that actually adds the input into the inverted index
 	 * @param url link to build from
@@ -67,7 +271,7 @@ public class IndexBuilder {
 	 */
 	public static void build(URL url, InvertedIndex index, String html) throws IOException {
 
-		Stemmer stemmer = new SnowballStemmer(TextFileStemmer.DEFAULT);
+		Stemmer stemmer = CachingStemmer.SHARED;
 		int position = 1;
 		String location = url.toString();
 		//synchronized(url) {
@@ -75,16 +279,38 @@ public class IndexBuilder {
 		//	var cleanedHtml = new HtmlCleaner(url, html);
 		//	html = cleanedHtml.getHtml();
 		//	System.out.println("location: "+location);
-		String wordList[] = TextParser.parse(html);
+		TextTokenizer tokenizer = TextTokenizer.forThread();
+		int words = tokenizer.tokenize(html);
 			//LinkParser.listLinks(url, html);
-		for (int i = 0; i < wordList.length; i++) {
+		for (int i = 0; i < words; i++) {
 				//System.out.println("wordList["+i+"]: "+wordList[i]);
-			String stem = stemmer.stem(wordList[i]).toString();
+			String stem = stemmer.stem(tokenizer.token(i)).toString();
 			index.add(stem, location, position++);
 		}
 	//	}
 		
 		
 
+	}
+
+	/**
+	 * adds the text of a page cleaned by a scanner into the inverted index
+	 * 
+	 * @param url   link the page was fetched from
+	 * @param index inverted index to use
+	 * @param page  the scanner holding the text of the page
+	 * 
+	 * @see HtmlScanner#scan(URL, String)
+	 */
+	public static void build(URL url, InvertedIndex index, HtmlScanner page) {
+		Stemmer stemmer = CachingStemmer.SHARED;
+		int position = 1;
+		String location = url.toString();
+		TextTokenizer tokenizer = TextTokenizer.forThread();
+		int words = tokenizer.tokenize(page.getText(), 0, page.length());
+		for (int i = 0; i < words; i++) {
+			String stem = stemmer.stem(tokenizer.token(i)).toString();
+			index.add(stem, location, position++);
+		}
 	}
 }
@@ -0,0 +1,242 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the binary inverted index file. Every number is a
+ * big-endian 4-byte integer unless noted, and every string is its UTF-8 byte
+ * count followed by its bytes. The file holds:
+ *
+ * <ol>
+ * <li>the magic number and format version</li>
+ * <li>the document table: the number of documents, then the word count and
+ * location of each document in document id order</li>
+ * <li>the term dictionary: the number of terms, then each term in sorted
+ * order with the byte offset of its posting list as an 8-byte integer</li>
+ * <li>the posting lists, laid out as read by {@link MappedPostingList}</li>
+ * </ol>
+ *
+ * Loading only reads the document table and the term dictionary onto the
+ * heap. The posting lists are memory-mapped and read in place.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class IndexFile {
+
+	/** The magic number that starts every index file ("SEIX"). */
+	public static final int MAGIC = 0x53454958;
+
+	/** The version of the file format. */
+	public static final int VERSION = 1;
+
+	/**
+	 * Term dictionary mapping word stems to their term id
+	 */
+	private final TreeMap<String, Integer> terms;
+
+	/**
+	 * The posting list of every term, indexed by term id
+	 */
+	private final ArrayList<PostingList> postings;
+
+	/**
+	 * The location of every document, indexed by document id
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * The word count of every document, indexed by document id
+	 */
+	private final int[] lengths;
+
+	/**
+	 * Initializes a loaded index file
+	 *
+	 * @param terms     the term dictionary
+	 * @param postings  the posting lists
+	 * @param locations the document locations
+	 * @param lengths   the document word counts
+	 */
+	private IndexFile(TreeMap<String, Integer> terms, ArrayList<PostingList> postings, ArrayList<String> locations,
+			int[] lengths) {
+		this.terms = terms;
+		this.postings = postings;
+		this.locations = locations;
+		this.lengths = lengths;
+	}
+
+	/**
+	 * gets the term dictionary
+	 *
+	 * @return the term dictionary
+	 */
+	public TreeMap<String, Integer> getTerms() {
+		return terms;
+	}
+
+	/**
+	 * gets the posting lists indexed by term id
+	 *
+	 * @return the posting lists
+	 */
+	public ArrayList<PostingList> getPostings() {
+		return postings;
+	}
+
+	/**
+	 * gets the document locations indexed by document id
+	 *
+	 * @return the document locations
+	 */
+	public ArrayList<String> getLocations() {
+		return locations;
+	}
+
+	/**
+	 * gets the document word counts indexed by document id
+	 *
+	 * @return the document word counts
+	 */
+	public int[] getLengths() {
+		return lengths;
+	}
+
+	/**
+	 * writes an inverted index to a binary index file
+	 *
+	 * @param path      the path to write to
+	 * @param terms     the term dictionary
+	 * @param postings  the posting lists indexed by term id
+	 * @param locations the document locations indexed by document id
+	 * @param lengths   the document word counts indexed by document id
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void write(Path path, Map<String, Integer> terms, List<PostingList> postings,
+			List<String> locations, int[] lengths) throws IOException {
+		var locationBytes = new ArrayList<byte[]>(locations.size());
+		long offset = 4 + 4 + 4;
+		for (String location : locations) {
+			byte[] bytes = location.getBytes(StandardCharsets.UTF_8);
+			locationBytes.add(bytes);
+			offset += 4 + 4 + bytes.length;
+		}
+		var termBytes = new ArrayList<byte[]>(terms.size());
+		offset += 4;
+		for (String term : terms.keySet()) {
+			byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+			termBytes.add(bytes);
+			offset += 4 + bytes.length + 8;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			out.writeInt(locations.size());
+			for (int i = 0; i < locations.size(); i++) {
+				out.writeInt(lengths[i]);
+				out.writeInt(locationBytes.get(i).length);
+				out.write(locationBytes.get(i));
+			}
+
+			out.writeInt(terms.size());
+			int i = 0;
+			for (int term : terms.values()) {
+				out.writeInt(termBytes.get(i).length);
+				out.write(termBytes.get(i++));
+				out.writeLong(offset);
+				offset += MappedPostingList.blockSize(postings.get(term));
+			}
+
+			for (int term : terms.values()) {
+				PostingList list = postings.get(term);
+				out.writeInt(list.size());
+				for (int j = 0; j < list.size(); j++) {
+					out.writeInt(list.document(j));
+				}
+				int start = 0;
+				out.writeInt(start);
+				for (int j = 0; j < list.size(); j++) {
+					start += list.frequency(j);
+					out.writeInt(start);
+				}
+				for (int j = 0; j < list.size(); j++) {
+					PositionList positions = list.positions(j);
+					for (int k = 0; k < positions.size(); k++) {
+						out.writeInt(positions.get(k));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * memory-maps a binary index file and reads its document table and term
+	 * dictionary
+	 *
+	 * @param path the path to read
+	 * @return the loaded index file
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 *                     file
+	 */
+	public static IndexFile read(Path path) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("index file is larger than 2GB: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			if (buffer.getInt() != MAGIC) {
+				throw new IOException("not an index file: " + path);
+			}
+			if (buffer.getInt() != VERSION) {
+				throw new IOException("unsupported index file version: " + path);
+			}
+
+			int documentCount = buffer.getInt();
+			var locations = new ArrayList<String>(documentCount);
+			int[] lengths = new int[Math.max(16, documentCount)];
+			for (int i = 0; i < documentCount; i++) {
+				lengths[i] = buffer.getInt();
+				locations.add(readString(buffer));
+			}
+
+			int termCount = buffer.getInt();
+			var terms = new TreeMap<String, Integer>();
+			var postings = new ArrayList<PostingList>(termCount);
+			for (int i = 0; i < termCount; i++) {
+				terms.put(readString(buffer), i);
+				postings.add(new MappedPostingList(buffer, (int) buffer.getLong()));
+			}
+			return new IndexFile(terms, postings, locations, lengths);
+		} catch (RuntimeException e) {
+			throw new IOException("corrupt index file: " + path, e);
+		}
+	}
+
+	/**
+	 * reads a string stored as its UTF-8 byte count followed by its bytes
+	 *
+	 * @param buffer the buffer to read from
+	 * @return the string
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -4,13 +4,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
 
 /**
  * Class used for adding and saving data into an Inverted Index
@@ -21,23 +27,190 @@ import java.util.TreeSet;
 public class InvertedIndex {
 
 	/**
-	 * Data structure used for storing word stems from a text file mapped to text
-	 * files mapped to the locations of the word in the text file
+	 * Makes score bounds slightly larger, so rounding never skips a document that
+	 * belongs in the best results
 	 */
-	private final TreeMap<String, TreeMap<String, TreeSet<Integer>>> index;
+	private static final double BOUND_SLACK = 1 + 1e-9;
 
 	/**
-	 * Data structure used for storing text files from a directory as the keys and
-	 * the word count associated as the value
+	 * The number of documents scored one at a time before giving up on skipping
+	 * when no term can be skipped
 	 */
-	private final TreeMap<String, Integer> countsMap;
+	private static final int MAX_SCORE_PROBE = 64;
+
+	/**
+	 * Term dictionary used for mapping word stems to their term id
+	 */
+	private final TreeMap<String, Integer> terms;
+
+	/**
+	 * The posting list of every term, indexed by term id
+	 */
+	private final ArrayList<PostingList> postings;
+
+	/**
+	 * Document table used for mapping locations to their document id
+	 */
+	private final HashMap<String, Integer> documents;
+
+	/**
+	 * The location of every document, indexed by document id
+	 */
+	private final ArrayList<String> locations;
+
+	/**
+	 * The word count of every document, indexed by document id
+	 */
+	private int[] lengths;
+
+	/**
+	 * The direct memory posting lists are moved into on commit, or null to keep
+	 * them on the heap
+	 */
+	private PostingArena arena;
+
+	/**
+	 * Prefix trie over the term dictionary, built on commit and cleared when a new
+	 * stem is added
+	 */
+	private TermTrie trie;
+
+	/**
+	 * The stem of every term, indexed by term id
+	 */
+	private final ArrayList<String> stems;
+
+	/**
+	 * The model used to score search results
+	 */
+	private ScoringModel model;
+
+	/**
+	 * The statistics the scores were computed with, or null if they were not
+	 * computed yet. The scores are computed on commit and cleared whenever a
+	 * posting list or word count changes.
+	 */
+	private CollectionStatistics statistics;
+
+	/**
+	 * The weight of each term, indexed by term id
+	 */
+	private double[] weights;
+
+	/**
+	 * The norm of each document, indexed by document id
+	 */
+	private double[] norms;
+
+	/**
+	 * The largest score each term adds to any document, indexed by term id
+	 */
+	private double[] bounds;
+
+	/**
+	 * Counts the commits of this index and the other changes to how it scores, so
+	 * results cached before a change are never used after it
+	 */
+	private final AtomicLong generation;
 
 	/**
 	 * Initializes inverted index
 	 */
 	public InvertedIndex() {
-		this.index = new TreeMap<String, TreeMap<String, TreeSet<Integer>>>();
-		this.countsMap = new TreeMap<String, Integer>();
+		this.terms = new TreeMap<String, Integer>();
+		this.postings = new ArrayList<PostingList>();
+		this.documents = new HashMap<String, Integer>();
+		this.locations = new ArrayList<String>();
+		this.lengths = new int[16];
+		this.arena = null;
+		this.trie = null;
+		this.stems = new ArrayList<String>();
+		this.model = new ShareScoringModel();
+		this.generation = new AtomicLong();
+		clearScores();
+	}
+
+	/**
+	 * gets the term id of a stem, adding the stem to the term dictionary if needed
+	 * 
+	 * @param stem the stem to use
+	 * @return the term id of the stem
+	 */
+	private int termId(String stem) {
+		Integer term = terms.get(stem);
+		if (term == null) {
+			term = postings.size();
+			terms.put(stem, term);
+			stems.add(stem);
+			postings.add(new PostingList());
+			trie = null;
+		}
+		return term;
+	}
+
+	/**
+	 * gets the document id of a location, adding the location to the document
+	 * table if needed
+	 * 
+	 * @param location the location to use
+	 * @return the document id of the location
+	 */
+	private int documentId(String location) {
+		Integer document = documents.get(location);
+		if (document == null) {
+			document = locations.size();
+			documents.put(location, document);
+			locations.add(location);
+			if (document == lengths.length) {
+				lengths = Arrays.copyOf(lengths, lengths.length * 2);
+			}
+			clearScores();
+		}
+		return document;
+	}
+
+	/**
+	 * gets the posting list of a word
+	 * 
+	 * @param word the word to use
+	 * @return the posting list, or null if the word is not in the index
+	 */
+	private PostingList postings(String word) {
+		Integer term = terms.get(word);
+		return term == null ? null : postings.get(term);
+	}
+
+	/**
+	 * gets the posting list of a term so it can be changed, replacing a read-only
+	 * posting list with a copy on the heap first
+	 * 
+	 * @param term the term id to use
+	 * @return the posting list of the term
+	 */
+	private PostingList mutablePostings(int term) {
+		clearScores();
+		PostingList list = postings.get(term);
+		PostingList mutable = list.toMutable();
+		if (mutable != list) {
+			postings.set(term, mutable);
+			if (arena != null) {
+				arena.release(list);
+			}
+		}
+		return mutable;
+	}
+
+	/**
+	 * gets the positions of a word in a location
+	 * 
+	 * @param word     the word to use
+	 * @param location the location to use
+	 * @return the positions, or null if the word is not in that location
+	 */
+	private PositionList positions(String word, String location) {
+		PostingList list = postings(word);
+		Integer document = documents.get(location);
+		return list == null || document == null ? null : list.get(document);
 	}
 
 	/**
@@ -50,11 +223,9 @@ public class InvertedIndex {
 	 *         otherwise true
 	 */
 	public boolean add(String stem, String inputFile, int position) {
-		index.putIfAbsent(stem, new TreeMap<String, TreeSet<Integer>>());
-		index.get(stem).putIfAbsent(inputFile, new TreeSet<Integer>());
-		countsMap.putIfAbsent(inputFile, 0);
-		if (index.get(stem).get(inputFile).add(position)) {
-			countsMap.replace(inputFile, countsMap.get(inputFile) + 1);
+		int document = documentId(inputFile);
+		if (mutablePostings(termId(stem)).getOrCreate(document).add(position)) {
+			lengths[document]++;
 			return true;
 		}
 		return false;
@@ -82,48 +253,308 @@ public class InvertedIndex {
 	}
 
 	/**
-	 * fills a local inverted index with contents from the global inverted index
+	 * fills a local inverted index with contents from the global inverted index.
+	 * Positions are copied, so the two indexes never share mutable state.
 	 * 
 	 * @param invertedIndex index to use
 	 */
 	public void addAll(InvertedIndex invertedIndex) {
-		for (String word : invertedIndex.index.keySet()) {
-			if (!this.index.containsKey(word)) {
-				this.index.put(word, invertedIndex.index.get(word));
-			} else {
-				for (String local : invertedIndex.index.get(word).keySet()) {
-					if (!this.index.get(word).containsKey(local)) {
-						this.index.get(word).put(local, invertedIndex.index.get(word).get(local));
-					} else {
-						var locations = invertedIndex.index.get(word).get(local);
-						this.index.get(word).get(local).addAll(locations);
-					}
+		int[] remap = new int[invertedIndex.locations.size()];
+		for (int i = 0; i < remap.length; i++) {
+			remap[i] = documentId(invertedIndex.locations.get(i));
+		}
+
+		for (var entry : invertedIndex.terms.entrySet()) {
+			PostingList source = invertedIndex.postings.get(entry.getValue());
+			PostingList target = mutablePostings(termId(entry.getKey()));
+			for (int i = 0; i < source.size(); i++) {
+				int document = remap[source.document(i)];
+				PositionList existing = target.get(document);
+				if (existing == null) {
+					target.put(document, new PositionList(source.positions(i)));
+				} else {
+					existing.addAll(source.positions(i));
+				}
+			}
+		}
+
+		for (int i = 0; i < remap.length; i++) {
+			if (this.lengths[remap[i]] < invertedIndex.lengths[i]) {
+				this.lengths[remap[i]] = invertedIndex.lengths[i];
+				clearScores();
+			}
+		}
+	}
+
+	/**
+	 * adds an index built from a later part of the same files, moving its
+	 * positions past the words already read. Used to join the parts of a large
+	 * file indexed in parallel, so the positions and word counts match indexing
+	 * the file in one pass.
+	 * 
+	 * @param part   the index of the later part, with positions starting at 1
+	 * @param offset the number of words before the part
+	 */
+	void append(InvertedIndex part, int offset) {
+		int[] remap = new int[part.locations.size()];
+		for (int i = 0; i < remap.length; i++) {
+			remap[i] = documentId(part.locations.get(i));
+		}
+
+		for (var entry : part.terms.entrySet()) {
+			PostingList source = part.postings.get(entry.getValue());
+			PostingList target = mutablePostings(termId(entry.getKey()));
+			for (int i = 0; i < source.size(); i++) {
+				PositionList positions = target.getOrCreate(remap[source.document(i)]);
+				for (int j = 0; j < source.frequency(i); j++) {
+					positions.add(source.position(i, j) + offset);
+				}
+			}
+		}
+
+		for (int i = 0; i < remap.length; i++) {
+			this.lengths[remap[i]] += part.lengths[i];
+		}
+		clearScores();
+	}
+
+	/**
+	 * makes every change to this index visible to searches. Changes to this index
+	 * are visible right away, but indexes that batch their changes publish them
+	 * when this is called. Committing also rebuilds the prefix trie used by
+	 * {@link #partialSearch(Collection)} and the term weights, document norms and
+	 * score bounds of the {@link ScoringModel}, and an index using off-heap
+	 * storage moves the posting lists changed since the last commit into direct
+	 * memory.
+	 * 
+	 * @see #useOffHeap()
+	 */
+	public void commit() {
+		commit(statistics == null ? localStatistics() : null);
+	}
+
+	/**
+	 * commits this index, computing the scores with the given statistics. Used
+	 * for an index that is one part of a larger index, so the scores match the
+	 * whole index.
+	 * 
+	 * @param statistics the statistics to compute the scores with, or null to keep
+	 *                   the current scores
+	 */
+	void commit(CollectionStatistics statistics) {
+		if (trie == null) {
+			trie = new TermTrie(terms);
+		}
+		if (statistics != null) {
+			computeScores(statistics);
+		}
+		if (arena != null) {
+			moveOffHeap();
+		}
+		nextGeneration();
+	}
+
+	/**
+	 * returns the generation of this index, which changes on every commit, load
+	 * and change of scoring model. Results found at one generation can be reused
+	 * until the generation changes.
+	 * 
+	 * @return the current generation
+	 * 
+	 * @see QueryCache
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * moves this index to a new generation, so cached results are no longer used
+	 */
+	void nextGeneration() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * computes the weight of every term, the norm of every document and the
+	 * largest score each term adds to any document
+	 * 
+	 * @param statistics the statistics to compute the scores with
+	 */
+	private void computeScores(CollectionStatistics statistics) {
+		double[] termWeights = new double[postings.size()];
+		for (int term = 0; term < termWeights.length; term++) {
+			termWeights[term] = model.weight(statistics.getFrequency(stems.get(term)), statistics.getDocuments());
+		}
+		double[] documentNorms = new double[locations.size()];
+		for (int document = 0; document < documentNorms.length; document++) {
+			documentNorms[document] = model.norm(lengths[document], statistics.getAverageLength());
+		}
+		double[] termBounds = new double[postings.size()];
+		for (int term = 0; term < termBounds.length; term++) {
+			PostingList list = postings.get(term);
+			for (int i = 0; i < list.size(); i++) {
+				double score = model.score(list.frequency(i), termWeights[term], documentNorms[list.document(i)]);
+				if (score > termBounds[term]) {
+					termBounds[term] = score;
 				}
 			}
 		}
+		this.weights = termWeights;
+		this.norms = documentNorms;
+		this.bounds = termBounds;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * clears the scores after a change, so they are computed again on the next
+	 * commit
+	 */
+	private void clearScores() {
+		statistics = null;
+		weights = null;
+		norms = null;
+		bounds = null;
+	}
+
+	/**
+	 * replaces the model used to score search results. Searches are scored with
+	 * the new model right away, but only use the precomputed scores once the index
+	 * is committed.
+	 * 
+	 * @param model the scoring model to use
+	 */
+	public void setScoringModel(ScoringModel model) {
+		this.model = model;
+		clearScores();
+		nextGeneration();
+	}
+
+	/**
+	 * gets the model used to score search results
+	 * 
+	 * @return the scoring model
+	 */
+	public ScoringModel getScoringModel() {
+		return model;
+	}
+
+	/**
+	 * gets the statistics of this index used for scoring
+	 * 
+	 * @return the number of documents, the average word count and the number of
+	 *         documents each stem appears in
+	 */
+	public CollectionStatistics getStatistics() {
+		return localStatistics();
+	}
+
+	/**
+	 * helper method that gets the statistics of this index, used by this index so
+	 * they never go through a subclass
+	 * 
+	 * @return the statistics of this index
+	 */
+	private CollectionStatistics localStatistics() {
+		if (statistics != null) {
+			return statistics;
+		}
+		long total = 0;
+		for (int document = 0; document < locations.size(); document++) {
+			total += lengths[document];
+		}
+		double average = locations.isEmpty() ? 0 : (double) total / locations.size();
+		return new CollectionStatistics(locations.size(), average, this::countLocations);
+	}
+
+	/**
+	 * returns the number of locations a stem appears in
+	 * 
+	 * @param stem the stem to use
+	 * @return the number of locations
+	 */
+	public int documentFrequency(String stem) {
+		return countLocations(stem);
+	}
 
-		for (String key : invertedIndex.countsMap.keySet()) {
-			if (this.countsMap.getOrDefault(key, 0) < invertedIndex.countsMap.get(key)) {
-				this.countsMap.put(key, invertedIndex.countsMap.get(key));
+	/**
+	 * helper method that counts the locations a stem appears in, used by the
+	 * statistics of this index so they never go through a subclass
+	 * 
+	 * @param stem the stem to use
+	 * @return the number of locations
+	 */
+	private int countLocations(String stem) {
+		PostingList list = postings(stem);
+		return list == null ? 0 : list.size();
+	}
+
+	/**
+	 * keeps the posting lists of this index in direct memory outside of the
+	 * garbage collected heap. Only the term dictionary and document table stay on
+	 * the heap. Posting lists are moved on every {@link #commit()}, and a posting
+	 * list that is changed afterwards is copied back onto the heap until the next
+	 * commit.
+	 * 
+	 * @see PostingArena
+	 */
+	public void useOffHeap() {
+		if (arena == null) {
+			arena = new PostingArena();
+		}
+	}
+
+	/**
+	 * moves every posting list on the heap into the arena. If more than half of
+	 * the arena is wasted by posting lists copied back onto the heap, every
+	 * posting list is moved into a new arena instead so the old one can be freed.
+	 */
+	private void moveOffHeap() {
+		PostingArena old = arena;
+		boolean compact = old.wasted() > old.used() / 2;
+		if (compact) {
+			arena = new PostingArena();
+		}
+
+		var moving = new ArrayList<Integer>();
+		var lists = new ArrayList<PostingList>();
+		for (int term = 0; term < postings.size(); term++) {
+			PostingList list = postings.get(term);
+			if (!(list instanceof MappedPostingList) || (compact && old.owns(list))) {
+				moving.add(term);
+				lists.add(list);
 			}
 		}
+		if (lists.isEmpty()) {
+			return;
+		}
+
+		MappedPostingList[] stored = arena.store(lists);
+		for (int i = 0; i < stored.length; i++) {
+			postings.set(moving.get(i), stored[i]);
+		}
 	}
 
 	/**
 	 * helper method that adds search results into the results data structure
 	 * 
-	 * @param stem    the word to search
-	 * @param lookup  map used to store locations of search results
+	 * @param term    the term id of the word to search
+	 * @param scorer  the term weights and document norms to use
+	 * @param lookup  search results indexed by document id
 	 * @param results the data structure that stores the search results
 	 */
-	private void addResults(String stem, Map<String, Result> lookup, ArrayList<Result> results) {
-		for (String txtFile : index.get(stem).keySet()) {
-			if (!lookup.containsKey(txtFile)) {
-				Result searchResult = new Result(txtFile);
+	private void addResults(int term, Scorer scorer, Result[] lookup, ArrayList<Result> results) {
+		PostingList list = postings.get(term);
+		double weight = scorer.weight(term);
+		for (int i = 0; i < list.size(); i++) {
+			int document = list.document(i);
+			if (lookup[document] == null) {
+				Result searchResult = new Result(document, scorer.norm(document));
 				results.add(searchResult);
-				lookup.put(txtFile, searchResult);
+				lookup[document] = searchResult;
 			}
-			lookup.get(txtFile).updateResult(stem);
+			Result found = lookup[document];
+			int frequency = list.frequency(i);
+			found.updateResult(frequency, model.score(frequency, weight, found.norm));
 		}
 	}
 
@@ -135,7 +566,7 @@ public class InvertedIndex {
 	 */
 	public void countsToJson(Path path) throws IOException {
 		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			SimpleJsonWriter.asObject(this.countsMap, writer, 1);
+			SimpleJsonWriter.asObject(getCountsMap(), writer, 1);
 		}
 	}
 
@@ -146,7 +577,7 @@ public class InvertedIndex {
 	 * @return true if found false if not
 	 */
 	public boolean containsWord(String word) {
-		return index.containsKey(word);
+		return terms.containsKey(word);
 	}
 
 	/**
@@ -159,10 +590,8 @@ public class InvertedIndex {
 	 * @return returns true if the position is correct, false if is not
 	 */
 	public boolean containsPosition(String word, String location, int position) {
-		if (containsLocation(word, location)) {
-			return this.index.get(word).get(location).contains(position);
-		}
-		return false;
+		PositionList positions = positions(word, location);
+		return positions != null && positions.contains(position);
 	}
 
 	/**
@@ -173,10 +602,131 @@ public class InvertedIndex {
 	 * @return returns true if the location exists, false if it does not
 	 */
 	public boolean containsLocation(String word, String location) {
-		if (containsWord(word)) {
-			return this.index.get(word).containsKey(location);
+		return positions(word, location) != null;
+	}
+
+	/**
+	 * gets the word count of a location
+	 * 
+	 * @param location the location to use
+	 * @return the word count, or 0 if the location is not in the index
+	 */
+	public int getCount(String location) {
+		Integer document = documents.get(location);
+		return document == null ? 0 : lengths[document];
+	}
+
+	/**
+	 * replaces the word count of a location that is already in the index, used
+	 * when the count is tracked across several indexes
+	 * 
+	 * @param location the location to use
+	 * @param count    the word count to store
+	 */
+	void setCount(String location, int count) {
+		Integer document = documents.get(location);
+		if (document != null) {
+			lengths[document] = count;
+			clearScores();
 		}
-		return false;
+	}
+
+	/**
+	 * splits this index by term into several smaller indexes. Every part keeps the
+	 * full word count of the locations it holds. The parts share positions with
+	 * this index, so they are meant to be merged into other indexes with
+	 * {@link #addAll(InvertedIndex)} and then discarded.
+	 * 
+	 * @param count       the number of parts
+	 * @param partitioner gives the part each word stem belongs in
+	 * @return the parts, some of which may be empty
+	 */
+	public InvertedIndex[] partition(int count, ToIntFunction<String> partitioner) {
+		InvertedIndex[] parts = new InvertedIndex[count];
+		for (int i = 0; i < count; i++) {
+			parts[i] = new InvertedIndex();
+		}
+		for (var entry : terms.entrySet()) {
+			InvertedIndex part = parts[partitioner.applyAsInt(entry.getKey())];
+			PostingList source = postings.get(entry.getValue());
+			PostingList target = part.postings.get(part.termId(entry.getKey()));
+			for (int i = 0; i < source.size(); i++) {
+				int document = part.documentId(locations.get(source.document(i)));
+				part.lengths[document] = lengths[source.document(i)];
+				target.put(document, source.positions(i));
+			}
+		}
+		return parts;
+	}
+
+	/**
+	 * copies the part of this index a query needs: the posting lists of the stems
+	 * the query words match, and the word count of every location. The copy
+	 * shares positions with this index, so it is meant to be merged into other
+	 * indexes with {@link #addAll(InvertedIndex)} and then discarded.
+	 * 
+	 * @param words the query words
+	 * @param exact true to match whole stems, false to match prefixes
+	 * @return the copy
+	 */
+	InvertedIndex select(Collection<String> words, boolean exact) {
+		InvertedIndex part = new InvertedIndex();
+		for (int document = 0; document < locations.size(); document++) {
+			// documents are added in the same order, so they keep their ids
+			part.documentId(locations.get(document));
+			part.lengths[document] = lengths[document];
+		}
+		for (int term : new LinkedHashSet<Integer>(queryTerms(words, exact))) {
+			PostingList source = postings.get(term);
+			PostingList target = part.postings.get(part.termId(stems.get(term)));
+			for (int i = 0; i < source.size(); i++) {
+				target.put(source.document(i), source.positions(i));
+			}
+		}
+		return part;
+	}
+
+	/**
+	 * finds the stems starting with a query word, in the order a partial search
+	 * visits them
+	 *
+	 * @param word the query word
+	 * @return the stems in sorted order
+	 */
+	ArrayList<String> matchingStems(String word) {
+		var found = new ArrayList<String>();
+		for (int term : queryTerms(List.of(word), false)) {
+			found.add(stems.get(term));
+		}
+		return found;
+	}
+
+	/**
+	 * scores every location a single stem appears in, used for an index that is
+	 * one part of a larger index so the term scores of a location can be added up
+	 * one stem at a time, in the order a single index would add them
+	 *
+	 * @param stem       the stem to search
+	 * @param statistics the statistics of the whole index, or null to use the
+	 *                   scores of this index
+	 * @return one result for every location holding the stem
+	 */
+	ArrayList<Result> stemSearch(String stem, CollectionStatistics statistics) {
+		var results = new ArrayList<Result>();
+		Integer term = terms.get(stem);
+		if (term == null) {
+			return results;
+		}
+		Scorer scorer = new Scorer(statistics);
+		PostingList list = postings.get(term);
+		double weight = scorer.weight(term);
+		for (int i = 0; i < list.size(); i++) {
+			Result result = new Result(list.document(i), scorer.norm(list.document(i)));
+			int frequency = list.frequency(i);
+			result.updateResult(frequency, model.score(frequency, weight, result.norm));
+			results.add(result);
+		}
+		return results;
 	}
 
 	/**
@@ -185,7 +735,11 @@ public class InvertedIndex {
 	 * @return the count map
 	 */
 	public Map<String, Integer> getCountsMap() {
-		return Collections.unmodifiableMap(countsMap);
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+		for (int i = 0; i < locations.size(); i++) {
+			counts.put(locations.get(i), lengths[i]);
+		}
+		return Collections.unmodifiableMap(counts);
 	}
 
 	/**
@@ -194,7 +748,16 @@ public class InvertedIndex {
 	 * @return unmodifiable view of the prefixes
 	 */
 	public Set<String> getUnmodifiableWords() {
-		return Collections.unmodifiableSet(index.keySet());
+		return Collections.unmodifiableSet(terms.keySet());
+	}
+
+	/**
+	 * Returns an unmodifiable view of every location stored in this inverted index.
+	 *
+	 * @return unmodifiable view of the locations
+	 */
+	public Set<String> getUnmodifiableLocations() {
+		return Collections.unmodifiableSet(documents.keySet());
 	}
 
 	/**
@@ -204,8 +767,9 @@ public class InvertedIndex {
 	 * @return unmodifiable view of the words for that prefix
 	 */
 	public Set<String> getUnmodifiableLocations(String word) {
-		if (index.containsKey(word)) {
-			return Collections.unmodifiableSet(index.get(word).keySet());
+		PostingList list = postings(word);
+		if (list != null) {
+			return Collections.unmodifiableSet(locationMap(list).keySet());
 		}
 		return Collections.emptySet();
 	}
@@ -218,8 +782,9 @@ public class InvertedIndex {
 	 * @return unmodifiable view of the words for that prefix
 	 */
 	public Set<Integer> getUnmodifiablePositions(String word, String location) {
-		if (index.containsKey(word) && index.get(word).containsKey(location)) {
-			return Collections.unmodifiableSet(index.get(word).get(location));
+		PositionList positions = positions(word, location);
+		if (positions != null) {
+			return Collections.unmodifiableSet(positions);
 		}
 		return Collections.emptySet();
 	}
@@ -231,53 +796,175 @@ public class InvertedIndex {
 	 * @return an array list of the results from the search
 	 */
 	public ArrayList<Result> exactSearch(Collection<String> queries) {
+		return exactSearch(queries, null);
+	}
+
+	/**
+	 * performs an exact search scored with the given statistics, used for an index
+	 * that is one part of a larger index
+	 * 
+	 * @param queries    the line of a query file stored in a collection of strings
+	 * @param statistics the statistics of the whole index, or null to use the
+	 *                   scores of this index
+	 * @return an array list of the results from the search
+	 */
+	ArrayList<Result> exactSearch(Collection<String> queries, CollectionStatistics statistics) {
 		var results = new ArrayList<Result>();
-		Map<String, Result> lookup = new HashMap<String, Result>();
-		for (String word : queries) {
-			if (index.containsKey(word)) {
-				addResults(word, lookup, results);
-			}
+		Result[] lookup = new Result[locations.size()];
+		Scorer scorer = new Scorer(statistics);
+		for (int term : queryTerms(queries, true)) {
+			addResults(term, scorer, lookup, results);
 		}
 		return results;
 	}
 
 	/**
-	 * method that performs an partial search on a line from a query file
+	 * method that performs an partial search on a line from a query file. Once the
+	 * index is committed, the stems starting with each query are found as a range
+	 * of the prefix trie instead of by comparing stems.
+	 * 
+	 * @see TermTrie
 	 * 
 	 * @param queries the line of a query file stored in a collection of strings
 	 * @return an array list of the results from the search
 	 */
 	public ArrayList<Result> partialSearch(Collection<String> queries) {
-		var results = new ArrayList<Result>();
-		Map<String, Result> lookup = new HashMap<String, Result>();
-		for (String word : queries) {
-			for (String stem : index.tailMap(word).keySet()) {
-				if (stem.startsWith(word)) {
-					addResults(stem, lookup, results);
-				} else {
-					break;
-				}
-			}
-		}
-		return results;
+		return partialSearch(queries, null);
 	}
 
 	/**
-	 * writes inverted index in JSON format to the path provided
+	 * performs a partial search scored with the given statistics, used for an
+	 * index that is one part of a larger index
 	 * 
-	 * @param path path to use
-	 * @throws IOException if an IO error occurs
+	 * @param queries    the line of a query file stored in a collection of strings
+	 * @param statistics the statistics of the whole index, or null to use the
+	 *                   scores of this index
+	 * @return an array list of the results from the search
 	 */
-	public void toJson(Path path) throws IOException {
-		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-			SimpleJsonWriter.asInvertedIndex(this.index, writer, 0);
+	ArrayList<Result> partialSearch(Collection<String> queries, CollectionStatistics statistics) {
+		var results = new ArrayList<Result>();
+		Result[] lookup = new Result[locations.size()];
+		Scorer scorer = new Scorer(statistics);
+		for (int term : queryTerms(queries, false)) {
+			addResults(term, scorer, lookup, results);
 		}
+		return results;
 	}
 
 	/**
-	 * helper method that decides which search to perform
+	 * finds the term ids a search visits, in the order they are visited. A term
+	 * matched by more than one query word of a partial search is listed once for
+	 * each of them.
 	 * 
-	 * @param queries the query line to search
+	 * @param queries the query words to search
+	 * @param exact   true to match whole stems, false to match prefixes
+	 * @return the term ids to visit
+	 */
+	private ArrayList<Integer> queryTerms(Collection<String> queries, boolean exact) {
+		var found = new ArrayList<Integer>();
+		for (String word : queries) {
+			if (exact) {
+				Integer term = terms.get(word);
+				if (term != null) {
+					found.add(term);
+				}
+			} else if (trie != null) {
+				int node = trie.find(word);
+				for (int rank = trie.start(node); rank < trie.end(node); rank++) {
+					found.add(trie.termId(rank));
+				}
+			} else {
+				for (var entry : terms.tailMap(word).entrySet()) {
+					if (!entry.getKey().startsWith(word)) {
+						break;
+					}
+					found.add(entry.getValue());
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * writes inverted index in JSON format to the path provided
+	 * 
+	 * @param path path to use
+	 * @throws IOException if an IO error occurs
+	 */
+	public void toJson(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			var iterator = terms.entrySet().stream()
+					.map(entry -> Map.entry(entry.getKey(), locationMap(postings.get(entry.getValue())))).iterator();
+			SimpleJsonWriter.asInvertedIndex(iterator, writer, 0);
+		}
+	}
+
+	/**
+	 * builds a view of a posting list with the locations in sorted order, as used
+	 * for output
+	 * 
+	 * @param list the posting list to use
+	 * @return the positions of the posting list mapped by location
+	 */
+	private TreeMap<String, PositionList> locationMap(PostingList list) {
+		TreeMap<String, PositionList> map = new TreeMap<String, PositionList>();
+		for (int i = 0; i < list.size(); i++) {
+			map.put(locations.get(list.document(i)), list.positions(i));
+		}
+		return map;
+	}
+
+	/**
+	 * writes inverted index in the binary index file format to the path provided
+	 * 
+	 * @param path path to use
+	 * @throws IOException if an IO error occurs
+	 * 
+	 * @see IndexFile
+	 */
+	public void toBinary(Path path) throws IOException {
+		IndexFile.write(path, terms, postings, locations, lengths);
+	}
+
+	/**
+	 * loads a binary index file written by {@link #toBinary(Path)}. The posting
+	 * lists are memory-mapped instead of read onto the heap. If this index is not
+	 * empty, the contents of the file are added to it instead.
+	 * 
+	 * @param path path to use
+	 * @throws IOException if an IO error occurs or the file is not a valid index
+	 *                     file
+	 * 
+	 * @see IndexFile
+	 */
+	public void load(Path path) throws IOException {
+		if (!locations.isEmpty()) {
+			InvertedIndex loaded = new InvertedIndex();
+			loaded.load(path);
+			addAll(loaded);
+			return;
+		}
+		IndexFile file = IndexFile.read(path);
+		terms.putAll(file.getTerms());
+		postings.addAll(file.getPostings());
+		locations.addAll(file.getLocations());
+		for (int i = 0; i < locations.size(); i++) {
+			documents.put(locations.get(i), i);
+		}
+		lengths = file.getLengths();
+		stems.addAll(Collections.nCopies(terms.size(), null));
+		for (var entry : terms.entrySet()) {
+			stems.set(entry.getValue(), entry.getKey());
+		}
+		trie = new TermTrie(terms);
+		clearScores();
+		nextGeneration();
+	}
+
+	/**
+	 * helper method that decides which search to perform
+	 * 
+	 * @param queries the query line to search
 	 * @param exact   boolean value that determines the search
 	 * @return an array list of search results
 	 */
@@ -285,12 +972,838 @@ public class InvertedIndex {
 		return exact ? exactSearch(queries) : partialSearch(queries);
 	}
 
+	/**
+	 * performs a search and returns only the best results, in the same order as
+	 * sorting every result. A result is only created for a document that makes it
+	 * into a bounded heap of the best results found so far, so common stems do
+	 * not create a result for every matching document. Once the index is
+	 * committed, documents are scored one at a time and documents that cannot
+	 * reach the best results are skipped.
+	 * 
+	 * @param queries the query line to search
+	 * @param exact   boolean value that determines the search
+	 * @param k       the number of results to return
+	 * @return the best k results, best first
+	 * 
+	 * @see #maxScore(PostingCursor[], Scorer, PriorityQueue, int)
+	 */
+	public ArrayList<Result> search(Collection<String> queries, boolean exact, int k) {
+		return search(queries, exact, k, null);
+	}
+
+	/**
+	 * performs a search scored with the given statistics and returns only the
+	 * best results, used for an index that is one part of a larger index
+	 * 
+	 * @param queries    the query line to search
+	 * @param exact      boolean value that determines the search
+	 * @param k          the number of results to return
+	 * @param statistics the statistics of the whole index, or null to use the
+	 *                   scores of this index
+	 * @return the best k results, best first
+	 */
+	ArrayList<Result> search(Collection<String> queries, boolean exact, int k, CollectionStatistics statistics) {
+		var best = new PriorityQueue<Result>(Math.max(k, 0) + 1, Collections.reverseOrder());
+		if (k < 1) {
+			return drain(best);
+		}
+		Scorer scorer = new Scorer(statistics);
+		ArrayList<Integer> found = queryTerms(queries, exact);
+		var cursors = new PostingCursor[found.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			int term = found.get(i);
+			cursors[i] = new PostingCursor(postings.get(term), scorer.weight(term), scorer.bound(term));
+		}
+		if (!scorer.isBounded() || !maxScore(cursors, scorer, best, k)) {
+			accumulate(cursors, scorer, best, k);
+		}
+		return drain(best);
+	}
+
+	/**
+	 * scores the rest of every cursor term at a time. Matches are added up in
+	 * arrays indexed by document id before any document is offered to the heap.
+	 * 
+	 * @param cursors the cursors of the search, all past every scored document
+	 * @param scorer  the term weights and document norms to use
+	 * @param best    the heap of the best results, worst at the head
+	 * @param k       the number of results to keep
+	 */
+	private void accumulate(PostingCursor[] cursors, Scorer scorer, PriorityQueue<Result> best, int k) {
+		int[] counts = new int[locations.size()];
+		double[] sums = new double[locations.size()];
+		int[] matched = new int[locations.size()];
+		int found = 0;
+		for (PostingCursor cursor : cursors) {
+			for (; cursor.document() != Integer.MAX_VALUE; cursor.next()) {
+				int document = cursor.document();
+				if (counts[document] == 0) {
+					matched[found++] = document;
+				}
+				int frequency = cursor.frequency();
+				counts[document] += frequency;
+				sums[document] += model.score(frequency, cursor.weight(), scorer.norm(document));
+			}
+		}
+		for (int i = 0; i < found; i++) {
+			int document = matched[i];
+			offer(best, document, counts[document], sums[document], scorer.norm(document), k);
+		}
+	}
+
+	/**
+	 * scores a search one document at a time using MaxScore. The cursors are
+	 * sorted by the largest score their term can add, and once the heap of best
+	 * results is full, the terms whose bounds add up to less than the worst kept
+	 * score are not used to find documents, since a document matching only them
+	 * cannot make it into the heap. They are only looked up for documents found
+	 * through the other terms, and only while the document can still make it.
+	 * 
+	 * Scoring one document at a time costs more for each posting than counting
+	 * matches term at a time. After the first {@link #MAX_SCORE_PROBE} documents,
+	 * if the terms that cannot be skipped still hold more than half of the
+	 * postings left, the rest is left to {@link #accumulate(PostingCursor[],
+	 * Scorer, PriorityQueue, int)}.
+	 * 
+	 * @param cursors the cursors of the search, in query order
+	 * @param scorer  the term weights and document norms to use
+	 * @param best    the heap of the best results, worst at the head
+	 * @param k       the number of results to keep
+	 * @return true if every document was scored, false if the rest is left
+	 */
+	private boolean maxScore(PostingCursor[] cursors, Scorer scorer, PriorityQueue<Result> best, int k) {
+		int size = cursors.length;
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingDouble(i -> cursors[i].bound()));
+		var sorted = new PostingCursor[size];
+		double[] below = new double[size + 1];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = cursors[order[i]];
+			below[i + 1] = below[i] + sorted[i].bound();
+		}
+		// the score of each term in query order, so the scores add up in the same
+		// order as when searching term at a time
+		double[] parts = new double[size];
+
+		double threshold = 0;
+		int essential = 0;
+		int scored = 0;
+		int document = -1;
+		while (true) {
+			if (scored++ == MAX_SCORE_PROBE && !worthSkipping(sorted, essential)) {
+				for (int i = 0; i < essential; i++) {
+					sorted[i].seek(document + 1);
+				}
+				return false;
+			}
+			document = Integer.MAX_VALUE;
+			for (int i = essential; i < size; i++) {
+				document = Math.min(document, sorted[i].document());
+			}
+			if (document == Integer.MAX_VALUE) {
+				return true;
+			}
+
+			double norm = scorer.norm(document);
+			int count = 0;
+			double partial = 0;
+			Arrays.fill(parts, 0);
+			for (int i = essential; i < size; i++) {
+				if (sorted[i].document() == document) {
+					int frequency = sorted[i].frequency();
+					double score = model.score(frequency, sorted[i].weight(), norm);
+					count += frequency;
+					partial += score;
+					parts[order[i]] = score;
+					sorted[i].next();
+				}
+			}
+			boolean possible = true;
+			for (int i = essential - 1; i >= 0 && possible; i--) {
+				if ((partial + below[i + 1]) * BOUND_SLACK < threshold) {
+					possible = false;
+				} else {
+					sorted[i].seek(document);
+					if (sorted[i].document() == document) {
+						int frequency = sorted[i].frequency();
+						double score = model.score(frequency, sorted[i].weight(), norm);
+						count += frequency;
+						partial += score;
+						parts[order[i]] = score;
+						sorted[i].next();
+					}
+				}
+			}
+			if (!possible) {
+				continue;
+			}
+
+			double sum = 0;
+			for (double part : parts) {
+				sum += part;
+			}
+			if (offer(best, document, count, sum, norm, k) && best.size() == k) {
+				threshold = best.peek().score;
+				while (essential < size && below[essential + 1] * BOUND_SLACK < threshold) {
+					essential++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * determines if scoring one document at a time saves enough postings to pay
+	 * for itself
+	 * 
+	 * @param cursors   the cursors of the search, sorted by bound
+	 * @param essential the index of the first cursor that cannot be skipped
+	 * @return true if the cursors that cannot be skipped hold at most half of the
+	 *         postings left
+	 */
+	private static boolean worthSkipping(PostingCursor[] cursors, int essential) {
+		long left = 0;
+		long visited = 0;
+		for (int i = 0; i < cursors.length; i++) {
+			left += cursors[i].remaining();
+			if (i >= essential) {
+				visited += cursors[i].remaining();
+			}
+		}
+		return visited * 2 <= left;
+	}
+
+	/**
+	 * adds the result for a document to a heap of the best results if it belongs
+	 * there, only creating the result if it does
+	 * 
+	 * @param best     the heap of the best results, worst at the head
+	 * @param document the document id
+	 * @param count    the number of matches in the document
+	 * @param sum      the sum of the term scores of the document
+	 * @param norm     the norm of the document
+	 * @param k        the number of results to keep
+	 * @return true if the result was added
+	 */
+	private boolean offer(PriorityQueue<Result> best, int document, int count, double sum, double norm, int k) {
+		if (best.size() == k) {
+			Result worst = best.peek();
+			double score = model.total(sum, count, norm);
+			if (score < worst.score || (score == worst.score && count < worst.count)) {
+				return false;
+			}
+		}
+		Result result = new Result(document, norm);
+		result.updateResult(count, sum);
+		return offer(best, result, k);
+	}
+
+	/**
+	 * performs a boolean search. Only the locations matching the query are
+	 * returned, and they are scored by the stems of the query that are not
+	 * negated, like a normal search for those stems.
+	 * 
+	 * @param query the parsed query
+	 * @param exact true to match whole stems, false to match every stem starting
+	 *              with a query word
+	 * @return the results of the search, not sorted
+	 * 
+	 * @see BooleanQuery
+	 */
+	public ArrayList<Result> booleanSearch(BooleanQuery query, boolean exact) {
+		return booleanSearch(query, exact, null);
+	}
+
+	/**
+	 * performs a boolean search scored with the given statistics, used for an index
+	 * that is one part of a larger index
+	 * 
+	 * @param query      the parsed query
+	 * @param exact      true to match whole stems, false to match prefixes
+	 * @param statistics the statistics of the whole index, or null to use the
+	 *                   scores of this index
+	 * @return the results of the search, not sorted
+	 */
+	ArrayList<Result> booleanSearch(BooleanQuery query, boolean exact, CollectionStatistics statistics) {
+		var results = new ArrayList<Result>();
+		if (query.isEmpty()) {
+			return results;
+		}
+		int[] matched = matches(query.getRoot(), exact);
+		Scorer scorer = new Scorer(statistics);
+		for (int document : matched) {
+			results.add(new Result(document, scorer.norm(document)));
+		}
+		var scored = new LinkedHashSet<Integer>();
+		addScoredTerms(query.getRoot(), exact, scored);
+		for (int term : scored) {
+			var cursor = new PostingCursor(postings.get(term), scorer.weight(term), 0);
+			for (int i = 0; i < matched.length && cursor.document() != Integer.MAX_VALUE; i++) {
+				cursor.seek(matched[i]);
+				if (cursor.document() == matched[i]) {
+					Result result = results.get(i);
+					int frequency = cursor.frequency();
+					result.updateResult(frequency, model.score(frequency, cursor.weight(), result.norm));
+				}
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * helper method that finds the term ids of the stems a boolean query scores
+	 * with, skipping negated stems
+	 * 
+	 * @param node  the node of the query to use
+	 * @param exact true to match whole stems, false to match prefixes
+	 * @param found the term ids found so far, in query order
+	 */
+	private void addScoredTerms(BooleanQuery.Node node, boolean exact, LinkedHashSet<Integer> found) {
+		if (node.getType() == BooleanQuery.Type.NOT) {
+			return;
+		}
+		if (node.getType() == BooleanQuery.Type.TERM) {
+			found.addAll(queryTerms(List.of(node.getStem()), exact));
+		}
+		if (node.getType() == BooleanQuery.Type.PHRASE || node.getType() == BooleanQuery.Type.NEAR) {
+			// the words of a phrase always match whole stems
+			for (BooleanQuery.Node child : node.getChildren()) {
+				Integer term = terms.get(child.getStem());
+				if (term != null) {
+					found.add(term);
+				}
+			}
+			return;
+		}
+		for (BooleanQuery.Node child : node.getChildren()) {
+			addScoredTerms(child, exact, found);
+		}
+	}
+
+	/**
+	 * finds the documents a node of a boolean query matches
+	 * 
+	 * @param node  the node of the query to use
+	 * @param exact true to match whole stems, false to match prefixes
+	 * @return the sorted document ids
+	 */
+	private int[] matches(BooleanQuery.Node node, boolean exact) {
+		switch (node.getType()) {
+		case TERM:
+			return union(termLists(node.getStem(), exact));
+		case NOT:
+			return complement(matches(node.getChildren().get(0), exact));
+		case OR:
+			var lists = new ArrayList<int[]>();
+			for (BooleanQuery.Node child : node.getChildren()) {
+				lists.add(matches(child, exact));
+			}
+			return unionOf(lists);
+		case PHRASE:
+		case NEAR:
+			int[] candidates = intersect(node.getChildren(), true);
+			return Arrays.copyOf(candidates, retainPositional(candidates, candidates.length, node, true));
+		default:
+			return intersect(node.getChildren(), exact);
+		}
+	}
+
+	/**
+	 * intersects the children of an AND node, starting from the child expected to
+	 * match the fewest documents. Every other child only checks the documents left
+	 * so far, galloping through its posting list or matches to each of them, so a
+	 * common stem next to a rare one costs about as much as the rare one. Negated
+	 * children remove the documents they match the same way.
+	 * 
+	 * @param children the children of the AND node
+	 * @param exact    true to match whole stems, false to match prefixes
+	 * @return the sorted document ids every child matches
+	 */
+	private int[] intersect(List<BooleanQuery.Node> children, boolean exact) {
+		var required = new ArrayList<BooleanQuery.Node>();
+		var excluded = new ArrayList<BooleanQuery.Node>();
+		for (BooleanQuery.Node child : children) {
+			if (child.getType() == BooleanQuery.Type.NOT) {
+				excluded.add(child.getChildren().get(0));
+			} else {
+				required.add(child);
+			}
+		}
+		required.sort(Comparator.comparingLong(child -> estimate(child, exact)));
+
+		int[] candidates = required.isEmpty() ? complement(new int[0]) : matches(required.get(0), exact);
+		int size = candidates.length;
+		for (int i = 1; i < required.size() && size > 0; i++) {
+			size = retain(candidates, size, required.get(i), exact, true);
+		}
+		for (int i = 0; i < excluded.size() && size > 0; i++) {
+			size = retain(candidates, size, excluded.get(i), exact, false);
+		}
+		return Arrays.copyOf(candidates, size);
+	}
+
+	/**
+	 * keeps the candidates a node matches, or the ones it does not match, moving
+	 * them to the front of the array
+	 * 
+	 * @param candidates the sorted candidate document ids
+	 * @param size       the number of candidates
+	 * @param node       the node to check the candidates against
+	 * @param exact      true to match whole stems, false to match prefixes
+	 * @param keep       true to keep the matched candidates, false to keep the
+	 *                   others
+	 * @return the number of candidates kept
+	 */
+	private int retain(int[] candidates, int size, BooleanQuery.Node node, boolean exact, boolean keep) {
+		if (node.getType() == BooleanQuery.Type.PHRASE || node.getType() == BooleanQuery.Type.NEAR) {
+			return retainPositional(candidates, size, node, keep);
+		}
+		int kept = 0;
+		if (node.getType() == BooleanQuery.Type.TERM && exact) {
+			PostingList list = postings(node.getStem());
+			var cursor = new PostingCursor(list != null ? list : new PostingList(), 0, 0);
+			for (int i = 0; i < size; i++) {
+				cursor.seek(candidates[i]);
+				if ((cursor.document() == candidates[i]) == keep) {
+					candidates[kept++] = candidates[i];
+				}
+			}
+			return kept;
+		}
+		int[] other = matches(node, exact);
+		int index = 0;
+		for (int i = 0; i < size; i++) {
+			index = gallop(other, index, candidates[i]);
+			if ((index < other.length && other[index] == candidates[i]) == keep) {
+				candidates[kept++] = candidates[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * keeps the candidates a phrase or NEAR node matches, or the ones it does not
+	 * match. Each term of the node gets one cursor that only moves forward, and a
+	 * candidate is checked by merging the sorted positions of its terms in place,
+	 * so nothing is allocated for each candidate and a document missing any term
+	 * costs a single seek.
+	 * 
+	 * @param candidates the sorted candidate document ids
+	 * @param size       the number of candidates
+	 * @param node       the phrase or NEAR node to check the candidates against
+	 * @param keep       true to keep the matched candidates, false to keep the
+	 *                   others
+	 * @return the number of candidates kept
+	 */
+	private int retainPositional(int[] candidates, int size, BooleanQuery.Node node, boolean keep) {
+		List<BooleanQuery.Node> children = node.getChildren();
+		boolean phrase = node.getType() == BooleanQuery.Type.PHRASE;
+		var cursors = new PostingCursor[children.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			PostingList list = postings(children.get(i).getStem());
+			if (list == null) {
+				// a missing word matches nothing
+				return keep ? 0 : size;
+			}
+			cursors[i] = new PostingCursor(list, 0, 0);
+			if (!phrase && i > 0 && children.get(i).getStem().equals(children.get(0).getStem())) {
+				// the same stem twice shares a cursor, so its own positions are compared
+				cursors[i] = cursors[0];
+			}
+		}
+		int[] offsets = new int[cursors.length];
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			boolean found = true;
+			for (PostingCursor cursor : cursors) {
+				cursor.seek(candidates[i]);
+				found &= cursor.document() == candidates[i];
+			}
+			if (found) {
+				found = phrase ? phraseAt(cursors, offsets) : nearAt(cursors[0], cursors[1], node.getDistance());
+			}
+			if (found == keep) {
+				candidates[kept++] = candidates[i];
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * determines if the terms of a phrase appear next to each other, in order, in
+	 * the document every cursor is on. The position of each term minus its place
+	 * in the phrase must agree, so the cursors leapfrog over each other towards
+	 * the largest such start until every term agrees or one runs out.
+	 * 
+	 * @param cursors the cursors of the terms, in phrase order
+	 * @param offsets space for the offset of each cursor into its positions
+	 * @return true if the phrase appears in the document
+	 */
+	private static boolean phraseAt(PostingCursor[] cursors, int[] offsets) {
+		Arrays.fill(offsets, 0);
+		int start = Integer.MIN_VALUE;
+		int agreed = 0;
+		for (int i = 0; agreed < cursors.length; i = (i + 1) % cursors.length) {
+			PostingCursor cursor = cursors[i];
+			int frequency = cursor.frequency();
+			while (offsets[i] < frequency && cursor.position(offsets[i]) - i < start) {
+				offsets[i]++;
+			}
+			if (offsets[i] == frequency) {
+				return false;
+			}
+			int candidate = cursor.position(offsets[i]) - i;
+			if (candidate == start) {
+				agreed++;
+			} else {
+				start = candidate;
+				agreed = 1;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * determines if two terms appear at most a given number of words apart, in
+	 * either order, in the document both cursors are on. The sorted positions are
+	 * walked together, always moving the smaller one, so the closest pair is
+	 * found in one pass. When both terms are the same stem, two of its own
+	 * positions must be close instead.
+	 * 
+	 * @param first    the cursor of the first term
+	 * @param second   the cursor of the second term, the same cursor if both terms
+	 *                 are the same stem
+	 * @param distance the largest distance allowed
+	 * @return true if the terms appear near each other
+	 */
+	private static boolean nearAt(PostingCursor first, PostingCursor second, int distance) {
+		int a = 0;
+		int b = 0;
+		int sizeA = first.frequency();
+		int sizeB = second.frequency();
+		if (first == second) {
+			for (int i = 1; i < sizeA; i++) {
+				if (first.position(i) - first.position(i - 1) <= distance) {
+					return true;
+				}
+			}
+			return false;
+		}
+		while (a < sizeA && b < sizeB) {
+			int positionA = first.position(a);
+			int positionB = second.position(b);
+			if (Math.abs(positionA - positionB) <= distance) {
+				return true;
+			}
+			if (positionA < positionB) {
+				a++;
+			} else {
+				b++;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * finds the first position at or after a starting point holding a value at
+	 * least as large as the target, galloping ahead and then searching back
+	 * 
+	 * @param sorted the sorted values
+	 * @param from   the position to start at
+	 * @param target the value to find
+	 * @return the position found, or the length of the array if every value left
+	 *         is smaller
+	 */
+	private static int gallop(int[] sorted, int from, int target) {
+		if (from >= sorted.length || sorted[from] >= target) {
+			return from;
+		}
+		int low = from;
+		int step = 1;
+		while (low + step < sorted.length && sorted[low + step] < target) {
+			low += step;
+			step <<= 1;
+		}
+		int high = Math.min(low + step, sorted.length);
+		// sorted[low] < target, and high is past the end or at least target
+		while (low + 1 < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] < target) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * estimates the number of documents a node of a boolean query matches, used to
+	 * pick the order of an intersection
+	 * 
+	 * @param node  the node of the query to use
+	 * @param exact true to match whole stems, false to match prefixes
+	 * @return an upper bound of the number of matches
+	 */
+	private long estimate(BooleanQuery.Node node, boolean exact) {
+		switch (node.getType()) {
+		case TERM:
+			long total = 0;
+			for (PostingList list : termLists(node.getStem(), exact)) {
+				total += list.size();
+			}
+			return total;
+		case NOT:
+			return locations.size();
+		case PHRASE:
+		case NEAR:
+			long fewest = locations.size();
+			for (BooleanQuery.Node child : node.getChildren()) {
+				PostingList list = postings(child.getStem());
+				fewest = Math.min(fewest, list == null ? 0 : list.size());
+			}
+			return fewest;
+		case OR:
+			long sum = 0;
+			for (BooleanQuery.Node child : node.getChildren()) {
+				sum += estimate(child, exact);
+			}
+			return Math.min(sum, locations.size());
+		default:
+			long least = locations.size();
+			for (BooleanQuery.Node child : node.getChildren()) {
+				if (child.getType() != BooleanQuery.Type.NOT) {
+					least = Math.min(least, estimate(child, exact));
+				}
+			}
+			return least;
+		}
+	}
+
+	/**
+	 * gets the posting lists of the stems a query word matches
+	 * 
+	 * @param word  the query word
+	 * @param exact true to match the whole stem, false to match every stem
+	 *              starting with the word
+	 * @return the posting lists
+	 */
+	private ArrayList<PostingList> termLists(String word, boolean exact) {
+		var lists = new ArrayList<PostingList>();
+		for (int term : queryTerms(List.of(word), exact)) {
+			lists.add(postings.get(term));
+		}
+		return lists;
+	}
+
+	/**
+	 * finds the documents that appear in any of several posting lists
+	 * 
+	 * @param lists the posting lists
+	 * @return the sorted document ids
+	 */
+	private static int[] union(List<PostingList> lists) {
+		var documents = new ArrayList<int[]>(lists.size());
+		for (PostingList list : lists) {
+			int[] ids = new int[list.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = list.document(i);
+			}
+			documents.add(ids);
+		}
+		return unionOf(documents);
+	}
+
+	/**
+	 * merges sorted arrays of document ids, dropping duplicates
+	 * 
+	 * @param sorted the sorted document ids
+	 * @return the sorted document ids found in any array
+	 */
+	private static int[] unionOf(List<int[]> sorted) {
+		if (sorted.size() == 1) {
+			return sorted.get(0);
+		}
+		int total = 0;
+		for (int[] ids : sorted) {
+			total += ids.length;
+		}
+		int[] merged = new int[total];
+		int size = 0;
+		for (int[] ids : sorted) {
+			System.arraycopy(ids, 0, merged, size, ids.length);
+			size += ids.length;
+		}
+		Arrays.sort(merged);
+		int unique = 0;
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || merged[unique - 1] != merged[i]) {
+				merged[unique++] = merged[i];
+			}
+		}
+		return Arrays.copyOf(merged, unique);
+	}
+
+	/**
+	 * finds every document not in a sorted array of document ids
+	 * 
+	 * @param sorted the sorted document ids to leave out
+	 * @return the sorted document ids of every other document
+	 */
+	private int[] complement(int[] sorted) {
+		int[] others = new int[locations.size() - sorted.length];
+		int size = 0;
+		int index = 0;
+		for (int document = 0; document < locations.size(); document++) {
+			if (index < sorted.length && sorted[index] == document) {
+				index++;
+			} else {
+				others[size++] = document;
+			}
+		}
+		return others;
+	}
+
+	/**
+	 * picks the best results out of a collection of results
+	 * 
+	 * @param results the results to choose from
+	 * @param k       the number of results to return
+	 * @return the best k results, best first
+	 */
+	public static ArrayList<Result> top(Collection<Result> results, int k) {
+		if (k < 1) {
+			return new ArrayList<Result>();
+		}
+		var best = new PriorityQueue<Result>(Math.min(k, results.size()) + 1, Collections.reverseOrder());
+		for (Result result : results) {
+			offer(best, result, k);
+		}
+		return drain(best);
+	}
+
+	/**
+	 * adds a result to a heap of the best results, dropping the worst result if
+	 * the heap grows past k
+	 * 
+	 * @param best   the heap of the best results, worst at the head
+	 * @param result the result to add
+	 * @param k      the number of results to keep
+	 * @return true if the result was added
+	 */
+	private static boolean offer(PriorityQueue<Result> best, Result result, int k) {
+		if (best.size() < k) {
+			best.add(result);
+		} else if (result.compareTo(best.peek()) < 0) {
+			best.poll();
+			best.add(result);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * empties a heap of the best results into a list
+	 * 
+	 * @param best the heap of the best results, worst at the head
+	 * @return the results, best first
+	 */
+	private static ArrayList<Result> drain(PriorityQueue<Result> best) {
+		var results = new ArrayList<Result>(best.size());
+		while (!best.isEmpty()) {
+			results.add(best.poll());
+		}
+		Collections.reverse(results);
+		return results;
+	}
+
 	/**
 	 * returns the inverted index as a string
 	 */
 	@Override
 	public String toString() {
-		return this.index.toString();
+		TreeMap<String, TreeMap<String, PositionList>> map = new TreeMap<String, TreeMap<String, PositionList>>();
+		for (var entry : terms.entrySet()) {
+			map.put(entry.getKey(), locationMap(postings.get(entry.getValue())));
+		}
+		return map.toString();
+	}
+
+	/**
+	 * The term weights and document norms used to score one search. They come from
+	 * the scores computed on commit when the search uses the statistics they were
+	 * computed with, and are computed while searching otherwise.
+	 */
+	private class Scorer {
+
+		/**
+		 * The statistics the search is scored with
+		 */
+		private final CollectionStatistics statistics;
+
+		/**
+		 * Whether the scores computed on commit can be used
+		 */
+		private final boolean committed;
+
+		/**
+		 * Initializes the scorer
+		 * 
+		 * @param statistics the statistics to score with, or null to use the
+		 *                   statistics of this index
+		 */
+		private Scorer(CollectionStatistics statistics) {
+			this.statistics = statistics == null ? localStatistics() : statistics;
+			this.committed = weights != null && this.statistics == InvertedIndex.this.statistics;
+		}
+
+		/**
+		 * determines if the score bounds computed on commit apply to this search
+		 * 
+		 * @return true if the bounds can be used
+		 */
+		private boolean isBounded() {
+			return committed;
+		}
+
+		/**
+		 * gets the weight of a term
+		 * 
+		 * @param term the term id
+		 * @return the weight of the term
+		 */
+		private double weight(int term) {
+			if (committed) {
+				return weights[term];
+			}
+			return model.weight(statistics.getFrequency(stems.get(term)), statistics.getDocuments());
+		}
+
+		/**
+		 * gets the largest score a term adds to any document
+		 * 
+		 * @param term the term id
+		 * @return the bound, or 0 if the bounds do not apply
+		 */
+		private double bound(int term) {
+			return committed ? bounds[term] : 0;
+		}
+
+		/**
+		 * gets the norm of a document
+		 * 
+		 * @param document the document id
+		 * @return the norm of the document
+		 */
+		private double norm(int document) {
+			if (committed) {
+				return norms[document];
+			}
+			return model.norm(lengths[document], statistics.getAverageLength());
+		}
 	}
 
 	/**
@@ -301,6 +1814,11 @@ public class InvertedIndex {
 	 */
 	public class Result implements Comparable<Result> {
 
+		/**
+		 * Stores the document id a search was found in
+		 */
+		private final int document;
+
 		/**
 		 * Stores the location a search was found
 		 */
@@ -311,6 +1829,16 @@ public class InvertedIndex {
 		 */
 		private int count;
 
+		/**
+		 * Stores the sum of the term scores of a search
+		 */
+		private double sum;
+
+		/**
+		 * Stores the norm of the document
+		 */
+		private final double norm;
+
 		/**
 		 * Stores the score associated with a search
 		 */
@@ -319,11 +1847,15 @@ public class InvertedIndex {
 		/**
 		 * Initializes search result
 		 * 
-		 * @param where the location to set the result to
+		 * @param document the document id to set the result to
+		 * @param norm     the norm of the document
 		 */
-		public Result(String where) {
-			this.where = where;
+		private Result(int document, double norm) {
+			this.document = document;
+			this.where = locations.get(document);
 			this.count = 0;
+			this.sum = 0;
+			this.norm = norm;
 			this.score = 0;
 		}
 
@@ -348,12 +1880,29 @@ public class InvertedIndex {
 		/**
 		 * updates results by updating new count and score
 		 * 
-		 * @param word the word to use
+		 * @param matches the number of matches to add
+		 * @param score   the term score to add
+		 * 
+		 */
+		private void updateResult(int matches, double score) {
+			this.count += matches;
+			this.sum += score;
+			this.score = model.total(this.sum, this.count, this.norm);
+		}
+
+		/**
+		 * combines the matches another result found for the same location into this
+		 * result, used when the words of a search are spread over several indexes.
+		 * Floating point sums depend on their order, so the scores only match those
+		 * of a single index if the results are combined one stem at a time in the
+		 * order the search visits the stems.
 		 * 
+		 * @param other the result to combine
 		 */
-		private void updateResult(String word) {
-			this.count += index.get(word).get(where).size();
-			this.score = (double) this.count / countsMap.get(where);
+		public void merge(Result other) {
+			this.count += other.count;
+			this.sum += other.sum;
+			this.score = model.total(this.sum, this.count, this.norm);
 		}
 
 		/**
@@ -0,0 +1,82 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only {@link PositionList} backed by a region of a {@link ByteBuffer},
+ * such as a memory-mapped index file. The positions are stored as sorted
+ * 4-byte integers and are read in place without being copied onto the heap.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class MappedPositionList extends PositionList {
+
+	/**
+	 * The buffer holding the positions
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The byte offset of the first position in the buffer
+	 */
+	private final int offset;
+
+	/**
+	 * The number of positions stored
+	 */
+	private final int size;
+
+	/**
+	 * Initializes a position list over a region of a buffer
+	 *
+	 * @param buffer the buffer holding the positions
+	 * @param offset the byte offset of the first position
+	 * @param size   the number of positions
+	 */
+	public MappedPositionList(ByteBuffer buffer, int offset, int size) {
+		super(0);
+		this.buffer = buffer;
+		this.offset = offset;
+		this.size = size;
+	}
+
+	@Override
+	public boolean add(int position) {
+		throw new UnsupportedOperationException("mapped positions are read-only");
+	}
+
+	@Override
+	public boolean addAll(PositionList other) {
+		throw new UnsupportedOperationException("mapped positions are read-only");
+	}
+
+	@Override
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return buffer.getInt(offset + 4 * index);
+	}
+
+	@Override
+	public boolean contains(int position) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = buffer.getInt(offset + 4 * middle);
+			if (value < position) {
+				low = middle + 1;
+			} else if (value > position) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,174 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only {@link PostingList} backed by a block of a {@link ByteBuffer}, such
+ * as a memory-mapped index file or direct memory from a {@link PostingArena}.
+ * The block holds the number of documents, the sorted document ids, the start
+ * of each document's positions and then all of the positions, every value as a
+ * 4-byte integer.
+ *
+ * @see IndexFile
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class MappedPostingList extends PostingList {
+
+	/**
+	 * The buffer holding the posting list
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The byte offset of the first document id
+	 */
+	private final int documents;
+
+	/**
+	 * The byte offset of the first position start
+	 */
+	private final int starts;
+
+	/**
+	 * The byte offset of the first position
+	 */
+	private final int positions;
+
+	/**
+	 * The number of documents stored
+	 */
+	private final int size;
+
+	/**
+	 * Initializes a posting list over a block of a buffer
+	 *
+	 * @param buffer the buffer holding the posting list
+	 * @param offset the byte offset of the block
+	 */
+	public MappedPostingList(ByteBuffer buffer, int offset) {
+		super(0);
+		this.buffer = buffer;
+		this.size = buffer.getInt(offset);
+		this.documents = offset + 4;
+		this.starts = documents + 4 * size;
+		this.positions = starts + 4 * (size + 1);
+	}
+
+	/**
+	 * returns the buffer holding this posting list
+	 *
+	 * @return the buffer
+	 */
+	ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/**
+	 * returns the number of bytes a posting list takes as a block
+	 *
+	 * @param list the posting list to measure
+	 * @return the size in bytes
+	 */
+	public static long blockSize(PostingList list) {
+		long values = 1 + list.size() + list.size() + 1;
+		for (int i = 0; i < list.size(); i++) {
+			values += list.frequency(i);
+		}
+		return 4 * values;
+	}
+
+	/**
+	 * writes a posting list as a block into a buffer
+	 *
+	 * @param buffer the buffer to write to
+	 * @param offset the byte offset to write the block at
+	 * @param list   the posting list to write
+	 * @return a read-only posting list over the written block
+	 */
+	public static MappedPostingList write(ByteBuffer buffer, int offset, PostingList list) {
+		int size = list.size();
+		buffer.putInt(offset, size);
+		int documents = offset + 4;
+		int starts = documents + 4 * size;
+		int positions = starts + 4 * (size + 1);
+		int start = 0;
+		buffer.putInt(starts, start);
+		for (int i = 0; i < size; i++) {
+			buffer.putInt(documents + 4 * i, list.document(i));
+			PositionList found = list.positions(i);
+			for (int j = 0; j < found.size(); j++) {
+				buffer.putInt(positions + 4 * start++, found.get(j));
+			}
+			buffer.putInt(starts + 4 * (i + 1), start);
+		}
+		return new MappedPostingList(buffer, offset);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int document(int index) {
+		return buffer.getInt(documents + 4 * index);
+	}
+
+	@Override
+	public int frequency(int index) {
+		return buffer.getInt(starts + 4 * (index + 1)) - buffer.getInt(starts + 4 * index);
+	}
+
+	/**
+	 * reads the position straight from the buffer, without creating a view of the
+	 * positions
+	 */
+	@Override
+	public int position(int index, int offset) {
+		return buffer.getInt(positions + 4 * (buffer.getInt(starts + 4 * index) + offset));
+	}
+
+	@Override
+	public PositionList positions(int index) {
+		int start = buffer.getInt(starts + 4 * index);
+		return new MappedPositionList(buffer, positions + 4 * start, frequency(index));
+	}
+
+	@Override
+	public int indexOf(int document) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = document(middle);
+			if (value < document) {
+				low = middle + 1;
+			} else if (value > document) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	@Override
+	public PositionList get(int document) {
+		int index = indexOf(document);
+		return index >= 0 ? positions(index) : null;
+	}
+
+	@Override
+	public PostingList toMutable() {
+		PostingList copy = new PostingList(size);
+		for (int i = 0; i < size; i++) {
+			copy.put(document(i), new PositionList(positions(i)));
+		}
+		return copy;
+	}
+
+	@Override
+	public void put(int document, PositionList list) {
+		throw new UnsupportedOperationException("mapped postings are read-only");
+	}
+}
@@ -2,7 +2,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Date;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -21,15 +21,31 @@ public class MyServer {
   /** The hard-coded port to run this server. */
   public static final int PORT = 8080;
 
+  /** The number of results shown on a page. */
+  public static final int PAGE_SIZE = 50;
+
   /**
  * 
  */
 public static ThreadSafeInvertedIndex index;
+
+  /** The cache of search results shared by every request, which also runs identical concurrent requests once. */
+  public static QueryCache cache;
+
   /**
  * @param index
  */
 public MyServer(ThreadSafeInvertedIndex index) {
+	  this(index, new QueryCache(index));
+  }
+
+  /**
+   * @param index the index to search
+   * @param cache the cache of search results to share between requests
+   */
+  public MyServer(ThreadSafeInvertedIndex index, QueryCache cache) {
 	  MyServer.index = index;
+	  MyServer.cache = cache;
   }
   
   /**
@@ -111,11 +127,18 @@ public MyServer(ThreadSafeInvertedIndex index) {
         out.printf("<body>");
         out.printf("<h1>Results</h1>");
     	//out.println("query: "+query);
-    	var queryLine = TextFileStemmer.uniqueStems(query);
-    	//out.println(queryLine.toString());
-    	var searchResults = index.search(queryLine, false);
+    	ArrayList<InvertedIndex.Result> searchResults;
+    	if (BooleanQuery.isBoolean(query)) {
+    		BooleanQuery parsed = BooleanQuery.parse(query);
+    		searchResults = cache.search(QueryCache.key(parsed, false, PAGE_SIZE),
+    				() -> InvertedIndex.top(index.booleanSearch(parsed, false), PAGE_SIZE));
+    	} else {
+    		var queryLine = TextFileStemmer.uniqueStems(query);
+    		//out.println(queryLine.toString());
+    		searchResults = cache.search(QueryCache.key(queryLine, false, PAGE_SIZE),
+    				() -> index.search(queryLine, false, PAGE_SIZE));
+    	}
     	int i = 1;
-    	Collections.sort(searchResults);
     	for (InvertedIndex.Result result : searchResults) {
     		String link = result.getWhere();
     		//out.println(i++ + ": " + result.getWhere());
@@ -0,0 +1,204 @@
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Compact, sorted set of word positions for a single stem in a single location.
+ * Positions are kept in a growable primitive array instead of a tree of boxed
+ * integers, so each position costs four bytes instead of a tree node and an
+ * {@link Integer} object. Positions are almost always added in increasing
+ * order, which makes the common add an append.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class PositionList extends AbstractSet<Integer> {
+
+	/**
+	 * The initial capacity used for a new position list
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/**
+	 * The sorted positions, only the first {@link #size} entries are used
+	 */
+	private int[] positions;
+
+	/**
+	 * The number of positions stored
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty position list
+	 */
+	public PositionList() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty position list with the given capacity
+	 *
+	 * @param capacity the number of positions to make room for
+	 */
+	protected PositionList(int capacity) {
+		this.positions = new int[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Initializes a position list holding a copy of another list, with no spare
+	 * capacity
+	 *
+	 * @param other the positions to copy
+	 */
+	public PositionList(PositionList other) {
+		this(other.size());
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = other.get(i);
+		}
+		this.size = positions.length;
+	}
+
+	/**
+	 * adds a position to the list, keeping the list sorted and free of duplicates
+	 *
+	 * @param position the position to add
+	 * @return true if the position was added, false if it already existed
+	 */
+	public boolean add(int position) {
+		if (size == 0 || positions[size - 1] < position) {
+			grow(size + 1);
+			positions[size++] = position;
+			return true;
+		}
+		int index = Arrays.binarySearch(positions, 0, size, position);
+		if (index >= 0) {
+			return false;
+		}
+		index = -(index + 1);
+		grow(size + 1);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		positions[index] = position;
+		size++;
+		return true;
+	}
+
+	@Override
+	public boolean add(Integer position) {
+		return add(position.intValue());
+	}
+
+	/**
+	 * merges another position list into this one with a single linear pass over
+	 * both sorted lists
+	 *
+	 * @param other the positions to merge
+	 * @return true if at least one position was added
+	 */
+	public boolean addAll(PositionList other) {
+		int count = other.size();
+		if (count == 0) {
+			return false;
+		}
+		if (size == 0 || positions[size - 1] < other.get(0)) {
+			grow(size + count);
+			for (int j = 0; j < count; j++) {
+				positions[size++] = other.get(j);
+			}
+			return true;
+		}
+		int[] merged = new int[size + count];
+		int i = 0, j = 0, k = 0;
+		while (i < size && j < count) {
+			int next = other.get(j);
+			if (positions[i] < next) {
+				merged[k++] = positions[i++];
+			} else if (positions[i] > next) {
+				merged[k++] = next;
+				j++;
+			} else {
+				merged[k++] = positions[i++];
+				j++;
+			}
+		}
+		while (i < size) {
+			merged[k++] = positions[i++];
+		}
+		while (j < count) {
+			merged[k++] = other.get(j++);
+		}
+		boolean changed = k > size;
+		positions = merged;
+		size = k;
+		return changed;
+	}
+
+	/**
+	 * gets the position stored at the given index
+	 *
+	 * @param index the index to use
+	 * @return the position at that index
+	 */
+	public int get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(index);
+		}
+		return positions[index];
+	}
+
+	/**
+	 * determines if a position is in this list
+	 *
+	 * @param position the position to find
+	 * @return true if found false if not
+	 */
+	public boolean contains(int position) {
+		return Arrays.binarySearch(positions, 0, size, position) >= 0;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return o instanceof Integer && contains(((Integer) o).intValue());
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * makes sure the backing array can hold the given number of positions
+	 *
+	 * @param capacity the capacity required
+	 */
+	private void grow(int capacity) {
+		if (capacity > positions.length) {
+			positions = Arrays.copyOf(positions, Math.max(capacity, positions.length + (positions.length >> 1) + 1));
+		}
+	}
+
+	@Override
+	public Iterator<Integer> iterator() {
+		return new Iterator<Integer>() {
+			/**
+			 * index of the next position to return
+			 */
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return next < size();
+			}
+
+			@Override
+			public Integer next() {
+				if (next >= size()) {
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+		};
+	}
+}
@@ -0,0 +1,133 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Direct memory that posting lists are written into so they live outside of
+ * the garbage collected heap. Posting lists are written in bulk into chunks of
+ * direct memory sized for them, and read back through {@link MappedPostingList}
+ * views, so the garbage collector only ever sees one small view object per
+ * posting list instead of every position.
+ *
+ * Space is never reused. When a posting list is copied back onto the heap to be
+ * changed, its block is counted as wasted, and the owner of the arena can move
+ * every posting list into a new arena once too much of it is wasted. The
+ * direct memory is freed once no view uses a chunk anymore.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class PostingArena {
+
+	/** The largest chunk of direct memory allocated at once. */
+	public static final int MAX_CHUNK = 1 << 30;
+
+	/**
+	 * The chunks of direct memory allocated by this arena
+	 */
+	private final ArrayList<ByteBuffer> chunks;
+
+	/**
+	 * The number of bytes written into this arena
+	 */
+	private long used;
+
+	/**
+	 * The number of written bytes that no posting list uses anymore
+	 */
+	private long wasted;
+
+	/**
+	 * Initializes an empty arena
+	 */
+	public PostingArena() {
+		this.chunks = new ArrayList<ByteBuffer>();
+		this.used = 0;
+		this.wasted = 0;
+	}
+
+	/**
+	 * writes posting lists into new chunks of direct memory
+	 *
+	 * @param lists the posting lists to write
+	 * @return a read-only view of each posting list, in the same order
+	 */
+	public MappedPostingList[] store(List<PostingList> lists) {
+		var stored = new MappedPostingList[lists.size()];
+		int first = 0;
+		while (first < lists.size()) {
+			long size = 0;
+			int last = first;
+			while (last < lists.size()) {
+				long block = MappedPostingList.blockSize(lists.get(last));
+				if (last > first && size + block > MAX_CHUNK) {
+					break;
+				}
+				size += block;
+				last++;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("posting list is larger than 2GB");
+			}
+
+			ByteBuffer chunk = ByteBuffer.allocateDirect((int) size);
+			chunks.add(chunk);
+			int offset = 0;
+			for (int i = first; i < last; i++) {
+				stored[i] = MappedPostingList.write(chunk, offset, lists.get(i));
+				offset += MappedPostingList.blockSize(lists.get(i));
+			}
+			used += size;
+			first = last;
+		}
+		return stored;
+	}
+
+	/**
+	 * determines if a posting list is a view of this arena
+	 *
+	 * @param list the posting list to check
+	 * @return true if the posting list is stored in this arena
+	 */
+	public boolean owns(PostingList list) {
+		if (!(list instanceof MappedPostingList)) {
+			return false;
+		}
+		ByteBuffer buffer = ((MappedPostingList) list).buffer();
+		for (ByteBuffer chunk : chunks) {
+			if (chunk == buffer) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * marks the block of a posting list stored in this arena as no longer used
+	 *
+	 * @param list the posting list that was replaced
+	 */
+	public void release(PostingList list) {
+		if (owns(list)) {
+			wasted += MappedPostingList.blockSize(list);
+		}
+	}
+
+	/**
+	 * returns the number of bytes written into this arena
+	 *
+	 * @return the number of bytes used
+	 */
+	public long used() {
+		return used;
+	}
+
+	/**
+	 * returns the number of written bytes no posting list uses anymore
+	 *
+	 * @return the number of bytes wasted
+	 */
+	public long wasted() {
+		return wasted;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Cursor moving forward over the documents of a {@link PostingList}, used to
+ * score a search one document at a time. The cursor also carries the weight of
+ * its stem and the largest score its stem can add to any document, so documents
+ * that cannot reach the best results can be skipped.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class PostingCursor {
+
+	/**
+	 * The posting list to move over
+	 */
+	private final PostingList list;
+
+	/**
+	 * The weight of the stem
+	 */
+	private final double weight;
+
+	/**
+	 * The largest score the stem adds to any document
+	 */
+	private final double bound;
+
+	/**
+	 * The number of documents in the posting list
+	 */
+	private final int size;
+
+	/**
+	 * The index of the current document in the posting list
+	 */
+	private int index;
+
+	/**
+	 * The current document id, or {@link Integer#MAX_VALUE} once every document
+	 * has been visited
+	 */
+	private int current;
+
+	/**
+	 * Initializes a cursor at the first document of a posting list
+	 *
+	 * @param list   the posting list to move over
+	 * @param weight the weight of the stem
+	 * @param bound  the largest score the stem adds to any document
+	 */
+	public PostingCursor(PostingList list, double weight, double bound) {
+		this.list = list;
+		this.weight = weight;
+		this.bound = bound;
+		this.size = list.size();
+		this.index = 0;
+		this.current = size > 0 ? list.document(0) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * returns the weight of the stem
+	 *
+	 * @return the weight
+	 */
+	public double weight() {
+		return weight;
+	}
+
+	/**
+	 * returns the largest score the stem adds to any document
+	 *
+	 * @return the upper bound of the score
+	 */
+	public double bound() {
+		return bound;
+	}
+
+	/**
+	 * returns the current document id
+	 *
+	 * @return the current document id, or {@link Integer#MAX_VALUE} once every
+	 *         document has been visited
+	 */
+	public int document() {
+		return current;
+	}
+
+	/**
+	 * returns the number of times the stem appears in the current document
+	 *
+	 * @return the frequency in the current document
+	 */
+	public int frequency() {
+		return list.frequency(index);
+	}
+
+	/**
+	 * returns one of the positions of the stem in the current document
+	 *
+	 * @param offset which of the sorted positions to get, less than
+	 *               {@link #frequency()}
+	 * @return the position
+	 */
+	public int position(int offset) {
+		return list.position(index, offset);
+	}
+
+	/**
+	 * returns the number of documents left to visit, including the current one
+	 *
+	 * @return the number of documents left
+	 */
+	public int remaining() {
+		return size - index;
+	}
+
+	/**
+	 * moves to the next document
+	 */
+	public void next() {
+		index++;
+		current = index < size ? list.document(index) : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * moves to the first document at or after a document id, galloping ahead and
+	 * then searching back so short skips stay cheap
+	 *
+	 * @param target the document id to move to
+	 */
+	public void seek(int target) {
+		if (current >= target) {
+			return;
+		}
+		int low = index;
+		int step = 1;
+		int high = index + step;
+		while (high < size && list.document(high) < target) {
+			low = high;
+			step <<= 1;
+			high = index + step;
+		}
+		high = Math.min(high, size);
+		// list.document(low) < target, and high is past the end or at least target
+		while (low + 1 < high) {
+			int middle = (low + high) >>> 1;
+			if (list.document(middle) < target) {
+				low = middle;
+			} else {
+				high = middle;
+			}
+		}
+		index = high;
+		current = index < size ? list.document(index) : Integer.MAX_VALUE;
+	}
+}
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/**
+ * The postings for a single stem: the sorted document ids the stem appears in,
+ * each paired with the {@link PositionList} of where it appears in that
+ * document. Document ids are handed out in increasing order as locations are
+ * first seen, so adding to the most recent document is an append.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class PostingList {
+
+	/**
+	 * The initial capacity used for a new posting list
+	 */
+	private static final int INITIAL_CAPACITY = 2;
+
+	/**
+	 * The sorted document ids, only the first {@link #size} entries are used
+	 */
+	private int[] documents;
+
+	/**
+	 * The positions for each document id at the same index
+	 */
+	private PositionList[] positions;
+
+	/**
+	 * The number of documents stored
+	 */
+	private int size;
+
+	/**
+	 * Initializes an empty posting list
+	 */
+	public PostingList() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Initializes an empty posting list with the given capacity
+	 *
+	 * @param capacity the number of documents to make room for
+	 */
+	protected PostingList(int capacity) {
+		this.documents = new int[capacity];
+		this.positions = new PositionList[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * returns the number of documents in this posting list
+	 *
+	 * @return the number of documents
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * gets the document id stored at the given index
+	 *
+	 * @param index the index to use
+	 * @return the document id at that index
+	 */
+	public int document(int index) {
+		return documents[index];
+	}
+
+	/**
+	 * gets the number of positions stored at the given index
+	 *
+	 * @param index the index to use
+	 * @return the number of times the stem appears in that document
+	 */
+	public int frequency(int index) {
+		return positions(index).size();
+	}
+
+	/**
+	 * gets one of the positions stored at the given index
+	 *
+	 * @param index  the index to use
+	 * @param offset which of the sorted positions to get
+	 * @return the position
+	 */
+	public int position(int index, int offset) {
+		return positions(index).get(offset);
+	}
+
+	/**
+	 * returns a posting list that can be changed with the contents of this one,
+	 * which is this posting list itself unless it is read-only
+	 *
+	 * @return a posting list that supports {@link #put(int, PositionList)}
+	 */
+	public PostingList toMutable() {
+		return this;
+	}
+
+	/**
+	 * gets the positions stored at the given index
+	 *
+	 * @param index the index to use
+	 * @return the positions at that index
+	 */
+	public PositionList positions(int index) {
+		return positions[index];
+	}
+
+	/**
+	 * finds the index of a document id in this posting list
+	 *
+	 * @param document the document id to find
+	 * @return the index of the document, or a negative value if not found
+	 */
+	public int indexOf(int document) {
+		if (size > 0 && documents[size - 1] == document) {
+			return size - 1;
+		}
+		return Arrays.binarySearch(documents, 0, size, document);
+	}
+
+	/**
+	 * gets the positions for a document id
+	 *
+	 * @param document the document id to use
+	 * @return the positions, or null if the document is not in this posting list
+	 */
+	public PositionList get(int document) {
+		int index = indexOf(document);
+		return index >= 0 ? positions[index] : null;
+	}
+
+	/**
+	 * gets the positions for a document id, adding an empty position list if the
+	 * document is not in this posting list yet
+	 *
+	 * @param document the document id to use
+	 * @return the positions for that document
+	 */
+	public PositionList getOrCreate(int document) {
+		PositionList found = get(document);
+		if (found == null) {
+			found = new PositionList();
+			put(document, found);
+		}
+		return found;
+	}
+
+	/**
+	 * stores the positions for a document id, replacing any positions stored
+	 * before
+	 *
+	 * @param document the document id to use
+	 * @param list     the positions to store
+	 */
+	public void put(int document, PositionList list) {
+		int index = indexOf(document);
+		if (index >= 0) {
+			positions[index] = list;
+			return;
+		}
+		index = -(index + 1);
+		if (size == documents.length) {
+			int capacity = size + (size >> 1) + 1;
+			documents = Arrays.copyOf(documents, capacity);
+			positions = Arrays.copyOf(positions, capacity);
+		}
+		System.arraycopy(documents, index, documents, index + 1, size - index);
+		System.arraycopy(positions, index, positions, index + 1, size - index);
+		documents[index] = document;
+		positions[index] = list;
+		size++;
+	}
+}
@@ -0,0 +1,298 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded cache of search results shared by everything searching the same
+ * index. Results are keyed by the sorted unique stems of a query, or the
+ * canonical form of a boolean query, together with the kind of search and the
+ * number of results kept. The least recently used results are dropped once the
+ * cache is full.
+ *
+ * Every result remembers the generation of the index it was found at, and is
+ * ignored once the index moves to a new generation, so a commit makes every
+ * older result stale without touching the cache. Changes an index makes
+ * visible before they are committed are not seen by results cached since the
+ * last commit.
+ *
+ * Identical searches missing from the cache at the same time are only run
+ * once, the others wait for its results.
+ *
+ * @see InvertedIndex#getGeneration()
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class QueryCache {
+
+	/**
+	 * The default number of searches to keep
+	 */
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	/**
+	 * The results of a search and the generation of the index they were found at
+	 */
+	private static class Entry {
+
+		/**
+		 * The generation of the index the results were found at
+		 */
+		private final long generation;
+
+		/**
+		 * The results of the search
+		 */
+		private final ArrayList<InvertedIndex.Result> results;
+
+		/**
+		 * Initializes an entry
+		 *
+		 * @param generation the generation of the index the results were found at
+		 * @param results    the results of the search
+		 */
+		private Entry(long generation, ArrayList<InvertedIndex.Result> results) {
+			this.generation = generation;
+			this.results = results;
+		}
+	}
+
+	/**
+	 * The index the results come from
+	 */
+	private final InvertedIndex index;
+
+	/**
+	 * The number of searches to keep
+	 */
+	private final int capacity;
+
+	/**
+	 * The searches running right now, so identical searches wait for them
+	 */
+	private final SingleFlight<String, ArrayList<InvertedIndex.Result>> flights;
+
+	/**
+	 * The cached results, least recently used first, guarded by this cache
+	 */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/**
+	 * The number of searches found in the cache, guarded by this cache
+	 */
+	private long hits;
+
+	/**
+	 * The number of searches missing from the cache or stale, guarded by this cache
+	 */
+	private long misses;
+
+	/**
+	 * The number of results dropped to make room, guarded by this cache
+	 */
+	private long evictions;
+
+	/**
+	 * Initializes a cache holding the default number of searches
+	 *
+	 * @param index the index the results come from
+	 */
+	public QueryCache(InvertedIndex index) {
+		this(index, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Initializes a cache
+	 *
+	 * @param index    the index the results come from
+	 * @param capacity the number of searches to keep, or 0 to cache nothing
+	 */
+	public QueryCache(InvertedIndex index, int capacity) {
+		this.index = index;
+		this.capacity = capacity;
+		this.flights = new SingleFlight<String, ArrayList<InvertedIndex.Result>>();
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * builds the key of a normal search
+	 *
+	 * @param stems the sorted unique stems of the query
+	 * @param exact true for an exact search, false for a partial search
+	 * @param top   the number of results kept, or 0 for every result
+	 * @return the key of the search
+	 */
+	public static String key(Collection<String> stems, boolean exact, int top) {
+		return (exact ? "exact " : "partial ") + top + ":" + String.join(" ", stems);
+	}
+
+	/**
+	 * builds the key of a boolean search
+	 *
+	 * @param query the parsed query
+	 * @param exact true to match whole stems, false to match prefixes
+	 * @param top   the number of results kept, or 0 for every result
+	 * @return the key of the search
+	 */
+	public static String key(BooleanQuery query, boolean exact, int top) {
+		return (exact ? "boolean exact " : "boolean partial ") + top + ":" + query;
+	}
+
+	/**
+	 * returns the generation of the index, to be passed to
+	 * {@link #put(String, long, ArrayList)} once a search started now is done
+	 *
+	 * @return the current generation of the index
+	 */
+	public long generation() {
+		return index.getGeneration();
+	}
+
+	/**
+	 * gets the cached results of a search, if they were found at the current
+	 * generation of the index
+	 *
+	 * @param key the key of the search
+	 * @return a copy of the results, or null if they are not cached
+	 */
+	public synchronized ArrayList<InvertedIndex.Result> get(String key) {
+		ArrayList<InvertedIndex.Result> results = lookup(key);
+		if (results == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return results;
+	}
+
+	/**
+	 * helper method that gets the cached results of a search without counting a
+	 * hit or miss, dropping them if they are stale
+	 *
+	 * @param key the key of the search
+	 * @return a copy of the results, or null if they are not cached
+	 */
+	private synchronized ArrayList<InvertedIndex.Result> lookup(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.generation != generation()) {
+			entries.remove(key);
+			entry = null;
+		}
+		return entry == null ? null : new ArrayList<InvertedIndex.Result>(entry.results);
+	}
+
+	/**
+	 * caches the results of a search. Results found at an older generation than
+	 * the current one are not cached.
+	 *
+	 * @param key        the key of the search
+	 * @param generation the generation of the index when the search started
+	 * @param results    the results of the search, which must not be changed
+	 *                   afterwards
+	 */
+	public synchronized void put(String key, long generation, ArrayList<InvertedIndex.Result> results) {
+		if (capacity > 0 && generation == generation()) {
+			entries.put(key, new Entry(generation, new ArrayList<InvertedIndex.Result>(results)));
+		}
+	}
+
+	/**
+	 * gets the cached results of a search, or runs the search and caches its
+	 * results. If the same search is already running in another thread, waits for
+	 * its results instead of running it again.
+	 *
+	 * @param key    the key of the search
+	 * @param search runs the search
+	 * @return the results of the search
+	 */
+	public ArrayList<InvertedIndex.Result> search(String key, Supplier<ArrayList<InvertedIndex.Result>> search) {
+		ArrayList<InvertedIndex.Result> results = get(key);
+		if (results != null) {
+			return results;
+		}
+		results = flights.run(key, () -> {
+			// the search may have finished between the lookup and now
+			ArrayList<InvertedIndex.Result> found = lookup(key);
+			if (found == null) {
+				long generation = generation();
+				found = search.get();
+				put(key, generation, found);
+			}
+			return found;
+		});
+		return new ArrayList<InvertedIndex.Result>(results);
+	}
+
+	/**
+	 * drops every cached result
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * returns the number of searches cached, including stale ones not looked up
+	 * since the index changed
+	 *
+	 * @return the number of searches cached
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * returns the number of searches found in the cache
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * returns the number of searches missing from the cache, including stale ones
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * returns the number of searches that waited for an identical search already
+	 * running instead of running again
+	 *
+	 * @return the number of shared searches
+	 */
+	public long getShared() {
+		return flights.getShared();
+	}
+
+	/**
+	 * returns the number of results dropped to make room
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("hits: %d, misses: %d, shared: %d, evictions: %d, size: %d", hits, misses,
+				flights.getShared(), evictions, entries.size());
+	}
+}
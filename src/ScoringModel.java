@@ -0,0 +1,68 @@
+/**
+ * Ranks search results. A model gives every term a weight from how many
+ * documents it appears in, gives every document a norm from its word count,
+ * and scores a document by adding up the scores of the terms it matches. The
+ * weights and norms are computed once when an index is committed, so scoring a
+ * search is only arithmetic over arrays.
+ *
+ * @see ShareScoringModel
+ * @see BM25ScoringModel
+ *
+ * @author ahmaad idrees
+ *
+ */
+public interface ScoringModel {
+
+	/**
+	 * returns the weight of a term
+	 *
+	 * @param frequency the number of documents the term appears in
+	 * @param documents the number of documents in the index
+	 * @return the weight of the term
+	 */
+	public double weight(int frequency, int documents);
+
+	/**
+	 * returns the norm of a document
+	 *
+	 * @param length  the number of words in the document
+	 * @param average the average number of words in a document of the index
+	 * @return the norm of the document
+	 */
+	public double norm(int length, double average);
+
+	/**
+	 * returns the score a term adds to a document. The score must not be negative.
+	 *
+	 * @param frequency the number of times the term appears in the document
+	 * @param weight    the weight of the term
+	 * @param norm      the norm of the document
+	 * @return the score of the term in the document
+	 */
+	public double score(int frequency, double weight, double norm);
+
+	/**
+	 * returns the final score of a document from the scores of the terms it
+	 * matches. Apart from rounding, the final score must not be larger than the
+	 * sum of the term scores.
+	 *
+	 * @param sum   the sum of the term scores
+	 * @param count the number of times the terms appear in the document
+	 * @param norm  the norm of the document
+	 * @return the score of the document
+	 */
+	public default double total(double sum, int count, double norm) {
+		return sum;
+	}
+
+	/**
+	 * determines if the model uses the number of documents, the average number of
+	 * words or the number of documents a term appears in. If not, an index split
+	 * into several parts can score each part on its own.
+	 *
+	 * @return true if the model uses statistics of the whole index
+	 */
+	public default boolean usesStatistics() {
+		return true;
+	}
+}
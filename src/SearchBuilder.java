@@ -23,15 +23,33 @@ public class SearchBuilder implements SearchBuilderInterface {
 	 */
 	private final InvertedIndex index;
 
+	/**
+	 * The number of results to keep for each search, or 0 to keep every result
+	 */
+	private final int top;
+
 	/**
 	 * initializes results and inverted index
 	 * 
 	 * @param invertedIndex inverted index to use
 	 */
 	public SearchBuilder(InvertedIndex invertedIndex) {
+		this(invertedIndex, 0);
+	}
+
+	/**
+	 * initializes results and inverted index, keeping only the best results of
+	 * each search
+	 * 
+	 * @param invertedIndex inverted index to use
+	 * @param top           the number of results to keep for each search, or 0 to
+	 *                      keep every result
+	 */
+	public SearchBuilder(InvertedIndex invertedIndex, int top) {
 
 		this.index = invertedIndex;
 		this.results = new TreeMap<String, ArrayList<InvertedIndex.Result>>();
+		this.top = top;
 	}
 
 	/**
@@ -55,6 +73,15 @@ public class SearchBuilder implements SearchBuilderInterface {
 	 */
 	@Override
 	public void buildSearch(String line, boolean exact) {
+		if (BooleanQuery.isBoolean(line)) {
+			BooleanQuery query = BooleanQuery.parse(line);
+			if (query.isEmpty() || results.containsKey(query.toString())) {
+				return;
+			}
+			var searchResults = index.booleanSearch(query, exact);
+			results.put(query.toString(), top > 0 ? InvertedIndex.top(searchResults, top) : searchResults);
+			return;
+		}
 		var queryLine = TextFileStemmer.uniqueStems(line);
 		if (queryLine.isEmpty()) {
 			return;
@@ -63,7 +90,7 @@ public class SearchBuilder implements SearchBuilderInterface {
 		if (results.containsKey(line)) {
 			return;
 		}
-		var searchResults = index.search(queryLine, exact);
+		var searchResults = top > 0 ? index.search(queryLine, exact, top) : index.search(queryLine, exact);
 		results.put(line, searchResults);
 	}
 
@@ -38,6 +38,9 @@ public interface SearchBuilderInterface {
 	public void resultsToJson(Path path) throws IOException;
 
 	/**
+	 * performs a search on a line. A line using boolean operators or parentheses
+	 * is searched as a {@link BooleanQuery}.
+	 * 
 	 * @param line  to use
 	 * @param exact boolean to determine which search to perform
 	 */
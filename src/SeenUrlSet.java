@@ -0,0 +1,313 @@
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe set of the urls a web crawl has seen, kept as 64-bit
+ * fingerprints of their canonical strings instead of {@link URL} objects. A
+ * url is canonical once its scheme and host are lower case, its port is left
+ * out if it is the default one, its path is not empty and its fragment is
+ * removed. Urls are never resolved, so unlike {@link URL#equals(Object)} and
+ * {@link URL#hashCode()} the set never looks up a host name, and two urls are
+ * the same if their canonical strings are.
+ *
+ * A Bloom filter sits in front of the fingerprints. Checking a url that was
+ * never added usually only reads a few bits of the filter, without taking a
+ * lock. The fingerprints are split into stripes by their high bits, each an
+ * open addressing table of longs with its own lock, so threads adding
+ * different urls rarely wait on each other and there is no lock over the whole
+ * set.
+ *
+ * Two different urls with the same fingerprint are taken for the same url.
+ * With 64-bit fingerprints this is unlikely to happen even once in a crawl of
+ * millions of urls.
+ *
+ * @see WebCrawler#linkSet
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class SeenUrlSet {
+
+	/**
+	 * The default number of urls the Bloom filter is sized for
+	 */
+	public static final int DEFAULT_EXPECTED = 1 << 16;
+
+	/**
+	 * The rate of urls never added the Bloom filter lets through once it holds
+	 * the expected number of urls
+	 */
+	public static final double FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * The number of stripes of fingerprints, a power of two
+	 */
+	private static final int STRIPES = 64;
+
+	/**
+	 * The bits of the Bloom filter
+	 */
+	private final AtomicLongArray bits;
+
+	/**
+	 * The number of bits of the Bloom filter
+	 */
+	private final long bitCount;
+
+	/**
+	 * The number of bits set in the Bloom filter for each url
+	 */
+	private final int hashes;
+
+	/**
+	 * The fingerprints, split by their high bits
+	 */
+	private final Stripe[] stripes;
+
+	/**
+	 * The number of urls in the set
+	 */
+	private final AtomicInteger size;
+
+	/**
+	 * Initializes a set sized for the default number of urls
+	 */
+	public SeenUrlSet() {
+		this(DEFAULT_EXPECTED);
+	}
+
+	/**
+	 * Initializes a set. The set holds any number of urls, but the Bloom filter
+	 * lets more urls through to the fingerprints once it holds more than the
+	 * expected number.
+	 *
+	 * @param expected the number of urls the Bloom filter is sized for
+	 */
+	public SeenUrlSet(int expected) {
+		long n = Math.max(expected, 1024);
+		long m = (long) Math.ceil(-n * Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2)));
+		this.bits = new AtomicLongArray((int) ((m + 63) / 64));
+		this.bitCount = 64L * bits.length();
+		this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+		this.stripes = new Stripe[STRIPES];
+		for (int i = 0; i < STRIPES; i++) {
+			stripes[i] = new Stripe();
+		}
+		this.size = new AtomicInteger();
+	}
+
+	/**
+	 * adds a url to the set
+	 *
+	 * @param url the url to add
+	 * @return true if the url was not in the set
+	 */
+	public boolean add(URL url) {
+		long fingerprint = fingerprint(url);
+		Stripe stripe = stripe(fingerprint);
+		synchronized (stripe) {
+			// another thread adding the same url goes through this stripe, so it sees these bits
+			if (mightContain(fingerprint) && stripe.contains(fingerprint)) {
+				return false;
+			}
+			stripe.add(fingerprint);
+			setBits(fingerprint);
+		}
+		size.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * determines if a url is in the set
+	 *
+	 * @param url the url to check
+	 * @return true if the url is in the set
+	 */
+	public boolean contains(URL url) {
+		long fingerprint = fingerprint(url);
+		if (!mightContain(fingerprint)) {
+			return false;
+		}
+		Stripe stripe = stripe(fingerprint);
+		synchronized (stripe) {
+			return stripe.contains(fingerprint);
+		}
+	}
+
+	/**
+	 * returns the number of urls in the set
+	 *
+	 * @return the number of urls
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("urls: %d, filter bits: %d, hashes: %d", size(), bitCount, hashes);
+	}
+
+	/**
+	 * returns the canonical string of a url, used to tell urls apart without
+	 * resolving them
+	 *
+	 * @param url the url
+	 * @return the canonical string
+	 */
+	public static String canonical(URL url) {
+		StringBuilder builder = new StringBuilder(url.getProtocol().toLowerCase(Locale.ROOT)).append("://");
+		if (url.getUserInfo() != null) {
+			builder.append(url.getUserInfo()).append('@');
+		}
+		builder.append(url.getHost().toLowerCase(Locale.ROOT));
+		if (url.getPort() >= 0 && url.getPort() != url.getDefaultPort()) {
+			builder.append(':').append(url.getPort());
+		}
+		if (!url.getFile().startsWith("/")) {
+			builder.append('/');
+		}
+		return builder.append(url.getFile()).toString();
+	}
+
+	/**
+	 * returns the 64-bit fingerprint of the canonical string of a url, a 64-bit
+	 * FNV-1a hash with its bits mixed like the MurmurHash3 finalizer does
+	 *
+	 * @param url the url
+	 * @return the fingerprint, never 0
+	 */
+	public static long fingerprint(URL url) {
+		String text = canonical(url);
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		// 0 marks an empty slot of a stripe
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * helper method that finds the stripe holding a fingerprint
+	 *
+	 * @param fingerprint the fingerprint
+	 * @return the stripe
+	 */
+	private Stripe stripe(long fingerprint) {
+		return stripes[(int) (fingerprint >>> 58) & (STRIPES - 1)];
+	}
+
+	/**
+	 * helper method that checks the bits of a fingerprint in the Bloom filter
+	 *
+	 * @param fingerprint the fingerprint
+	 * @return false if the fingerprint was never added, true if it may have been
+	 */
+	private boolean mightContain(long fingerprint) {
+		long first = fingerprint & 0xffffffffL;
+		long second = fingerprint >>> 32 | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = (first + i * second) % bitCount;
+			if ((bits.get((int) (bit >>> 6)) & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * helper method that sets the bits of a fingerprint in the Bloom filter
+	 *
+	 * @param fingerprint the fingerprint
+	 */
+	private void setBits(long fingerprint) {
+		long first = fingerprint & 0xffffffffL;
+		long second = fingerprint >>> 32 | 1;
+		for (int i = 0; i < hashes; i++) {
+			long bit = (first + i * second) % bitCount;
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			long current;
+			while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+				// another bit of the word changed, so try again
+			}
+		}
+	}
+
+	/**
+	 * An open addressing table of fingerprints, guarded by its own lock
+	 *
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class Stripe {
+
+		/**
+		 * The slots of the table, 0 where empty
+		 */
+		private long[] slots = new long[64];
+
+		/**
+		 * The number of fingerprints in the table
+		 */
+		private int count;
+
+		/**
+		 * determines if the table holds a fingerprint
+		 *
+		 * @param fingerprint the fingerprint, not 0
+		 * @return true if the table holds it
+		 */
+		private boolean contains(long fingerprint) {
+			int mask = slots.length - 1;
+			for (int i = (int) fingerprint & mask; slots[i] != 0; i = i + 1 & mask) {
+				if (slots[i] == fingerprint) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * adds a fingerprint the table does not hold, growing the table once it is
+		 * half full
+		 *
+		 * @param fingerprint the fingerprint, not 0
+		 */
+		private void add(long fingerprint) {
+			if (++count * 2 > slots.length) {
+				long[] old = slots;
+				slots = new long[old.length * 2];
+				for (long slot : old) {
+					if (slot != 0) {
+						put(slot);
+					}
+				}
+			}
+			put(fingerprint);
+		}
+
+		/**
+		 * helper method that puts a fingerprint in the first empty slot after its
+		 * own
+		 *
+		 * @param fingerprint the fingerprint, not 0
+		 */
+		private void put(long fingerprint) {
+			int mask = slots.length - 1;
+			int i = (int) fingerprint & mask;
+			while (slots[i] != 0) {
+				i = i + 1 & mask;
+			}
+			slots[i] = fingerprint;
+		}
+	}
+}
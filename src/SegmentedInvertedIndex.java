@@ -0,0 +1,692 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Thread safe inverted index made of immutable segments. Every local index
+ * passed to {@link #addAll(InvertedIndex)} is published as its own segment
+ * instead of being merged into one shared map under a write lock, and searches
+ * fan out across the published segments without taking any lock. A background
+ * thread merges small segments into larger ones so the number of segments
+ * stays small.
+ *
+ * Every location lives in exactly one segment, so the results of each segment
+ * can simply be combined.
+ *
+ * Words added one at a time are buffered in a local index instead of being
+ * published one segment at a time, and the buffer is published once it holds
+ * {@link #BUFFER_SIZE} words, or before anything reads the index.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class SegmentedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The default number of similar sized segments that get merged together. */
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+
+	/** The number of words added one at a time that are buffered before publishing. */
+	public static final int BUFFER_SIZE = 1 << 12;
+
+	/**
+	 * The published segments. The list is never modified, writers replace it with
+	 * a new list while holding {@link #lock}.
+	 */
+	private volatile List<InvertedIndex> segments;
+
+	/**
+	 * The segment that holds each location, guarded by {@link #lock}
+	 */
+	private final HashMap<String, InvertedIndex> owners;
+
+	/**
+	 * The words added one at a time and not published yet, guarded by
+	 * {@link #lock}
+	 */
+	private InvertedIndex buffer;
+
+	/**
+	 * The number of words in {@link #buffer}, only changed while holding
+	 * {@link #lock}
+	 */
+	private volatile int buffered;
+
+	/**
+	 * The number of similar sized segments that get merged together
+	 */
+	private final int mergeFactor;
+
+	/**
+	 * The lock object used by writers when publishing segments
+	 */
+	private final Object lock;
+
+	/**
+	 * The background thread merging segments
+	 */
+	private final Thread merger;
+
+	/**
+	 * Used to signal the merge thread to stop
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Used to signal the merge thread that new segments were published, guarded by
+	 * {@link #lock}
+	 */
+	private boolean pending;
+
+	/**
+	 * Whether new segments keep their posting lists off the heap
+	 */
+	private volatile boolean offHeap;
+
+	/**
+	 * The model new segments score search results with
+	 */
+	private volatile ScoringModel model;
+
+	/**
+	 * Initializes a segmented index with the default merge factor
+	 */
+	public SegmentedInvertedIndex() {
+		this(DEFAULT_MERGE_FACTOR);
+	}
+
+	/**
+	 * Initializes a segmented index
+	 *
+	 * @param mergeFactor the number of similar sized segments to merge together;
+	 *                    should be at least 2
+	 */
+	public SegmentedInvertedIndex(int mergeFactor) {
+		super();
+		this.segments = Collections.emptyList();
+		this.owners = new HashMap<String, InvertedIndex>();
+		this.buffer = new InvertedIndex();
+		this.buffered = 0;
+		this.mergeFactor = Math.max(2, mergeFactor);
+		this.lock = new Object();
+		this.pending = false;
+		this.closed = false;
+		this.offHeap = false;
+		this.model = new ShareScoringModel();
+		this.merger = new Thread(this::mergeLoop, "segment-merger");
+		this.merger.setDaemon(true);
+		this.merger.start();
+	}
+
+	/**
+	 * publishes a local index as a new immutable segment. The local index must not
+	 * be changed afterwards. If the local index holds a location that is already
+	 * in another segment, the two are merged right away so every location stays in
+	 * a single segment.
+	 *
+	 * @param local the index to publish
+	 */
+	public void flush(InvertedIndex local) {
+		if (local.getUnmodifiableLocations().isEmpty()) {
+			return;
+		}
+		synchronized (lock) {
+			var replaced = new ArrayList<InvertedIndex>();
+			for (String location : local.getUnmodifiableLocations()) {
+				InvertedIndex owner = owners.get(location);
+				if (owner != null && !containsSegment(replaced, owner)) {
+					replaced.add(owner);
+				}
+			}
+			InvertedIndex segment = local;
+			if (!replaced.isEmpty()) {
+				segment = new InvertedIndex();
+				for (InvertedIndex old : replaced) {
+					segment.addAll(old);
+				}
+				segment.addAll(local);
+			}
+			freeze(segment);
+			publish(replaced, segment);
+			nextGeneration();
+			pending = true;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * publishes the words added one at a time, must be called while holding
+	 * {@link #lock}
+	 */
+	private void flushBuffer() {
+		if (buffered > 0) {
+			InvertedIndex local = buffer;
+			buffer = new InvertedIndex();
+			buffered = 0;
+			flush(local);
+		}
+	}
+
+	/**
+	 * returns the published segments, publishing the buffered words first so
+	 * readers see every word added so far
+	 *
+	 * @return the published segments
+	 */
+	private List<InvertedIndex> current() {
+		if (buffered > 0) {
+			synchronized (lock) {
+				flushBuffer();
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * publishes the buffered words right away
+	 */
+	@Override
+	public void commit() {
+		synchronized (lock) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * commits a segment about to be published, which builds its prefix trie and
+	 * scores, and moves its posting lists off the heap if this index uses off-heap
+	 * storage
+	 *
+	 * @param segment the segment to commit
+	 */
+	private void freeze(InvertedIndex segment) {
+		if (offHeap) {
+			segment.useOffHeap();
+		}
+		segment.setScoringModel(model);
+		segment.commit();
+	}
+
+	/**
+	 * replaces the model used to score search results. Published segments are
+	 * never changed, so the model applies to segments published from now on and
+	 * should be set before anything is added.
+	 */
+	@Override
+	public void setScoringModel(ScoringModel model) {
+		this.model = model;
+		nextGeneration();
+	}
+
+	@Override
+	public ScoringModel getScoringModel() {
+		return model;
+	}
+
+	/**
+	 * gets the statistics of the whole index, adding up the statistics of the
+	 * published segments
+	 */
+	@Override
+	public CollectionStatistics getStatistics() {
+		return statistics(current());
+	}
+
+	@Override
+	public int documentFrequency(String stem) {
+		return documentFrequency(current(), stem);
+	}
+
+	/**
+	 * adds up the statistics of segments. Every location lives in a single
+	 * segment, so the counts of the segments add up to the counts of the whole
+	 * index.
+	 *
+	 * @param current the segments to add up
+	 * @return the statistics of the segments together
+	 */
+	private static CollectionStatistics statistics(List<InvertedIndex> current) {
+		int documents = 0;
+		double total = 0;
+		for (InvertedIndex segment : current) {
+			CollectionStatistics statistics = segment.getStatistics();
+			documents += statistics.getDocuments();
+			total += statistics.getAverageLength() * statistics.getDocuments();
+		}
+		double average = documents == 0 ? 0 : total / documents;
+		return new CollectionStatistics(documents, average, stem -> documentFrequency(current, stem));
+	}
+
+	/**
+	 * adds up the number of locations a stem appears in across segments
+	 *
+	 * @param current the segments to add up
+	 * @param stem    the stem to use
+	 * @return the number of locations
+	 */
+	private static int documentFrequency(List<InvertedIndex> current, String stem) {
+		int frequency = 0;
+		for (InvertedIndex segment : current) {
+			frequency += segment.documentFrequency(stem);
+		}
+		return frequency;
+	}
+
+	/**
+	 * gets the statistics to score a search of some segments with, so every
+	 * segment is scored as part of the whole index
+	 *
+	 * @param current the segments being searched
+	 * @return the statistics of the segments, or null if the model does not use
+	 *         them
+	 */
+	private CollectionStatistics searchStatistics(List<InvertedIndex> current) {
+		return model.usesStatistics() && current.size() > 1 ? statistics(current) : null;
+	}
+
+	/**
+	 * keeps the posting lists of every segment published from now on in direct
+	 * memory, each segment with its own {@link PostingArena}
+	 */
+	@Override
+	public void useOffHeap() {
+		offHeap = true;
+	}
+
+	/**
+	 * replaces segments with a new one, must be called while holding
+	 * {@link #lock}
+	 *
+	 * @param replaced the segments to remove
+	 * @param segment  the segment to add
+	 */
+	private void publish(List<InvertedIndex> replaced, InvertedIndex segment) {
+		var updated = new ArrayList<InvertedIndex>(segments.size() + 1);
+		for (InvertedIndex old : segments) {
+			if (!containsSegment(replaced, old)) {
+				updated.add(old);
+			}
+		}
+		updated.add(segment);
+		for (String location : segment.getUnmodifiableLocations()) {
+			owners.put(location, segment);
+		}
+		segments = Collections.unmodifiableList(updated);
+	}
+
+	/**
+	 * determines if a list holds this exact segment
+	 *
+	 * @param list    the list to search
+	 * @param segment the segment to find
+	 * @return true if found false if not
+	 */
+	private static boolean containsSegment(List<InvertedIndex> list, InvertedIndex segment) {
+		for (InvertedIndex other : list) {
+			if (other == segment) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * returns the number of published segments
+	 *
+	 * @return the number of segments
+	 */
+	public int segmentCount() {
+		return current().size();
+	}
+
+	/**
+	 * picks segments to merge: the first group of {@link #mergeFactor} segments
+	 * that fall in the same size tier, where the tier grows by a factor of
+	 * {@link #mergeFactor} in the number of locations
+	 *
+	 * @param current the segments to choose from
+	 * @return the segments to merge, or an empty list if there is nothing to do
+	 */
+	private List<InvertedIndex> selectMerge(List<InvertedIndex> current) {
+		var tiers = new TreeMap<Integer, List<InvertedIndex>>();
+		for (InvertedIndex segment : current) {
+			int size = segment.getUnmodifiableLocations().size();
+			int tier = 0;
+			while (size >= mergeFactor) {
+				size /= mergeFactor;
+				tier++;
+			}
+			var tierList = tiers.computeIfAbsent(tier, k -> new ArrayList<InvertedIndex>());
+			tierList.add(segment);
+			if (tierList.size() == mergeFactor) {
+				return tierList;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * publishes the buffered words and stops the background thread merging
+	 * segments. Segments published afterwards are no longer merged.
+	 */
+	@Override
+	public void close() {
+		commit();
+		closed = true;
+		merger.interrupt();
+	}
+
+	/**
+	 * Waits until segments are published and merges them in the background for as
+	 * long as the merge policy finds work, until the index is closed.
+	 */
+	private void mergeLoop() {
+		while (!closed) {
+			synchronized (lock) {
+				while (!pending) {
+					if (closed) {
+						return;
+					}
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				pending = false;
+			}
+
+			List<InvertedIndex> selected;
+			while (!closed && !(selected = selectMerge(segments)).isEmpty()) {
+				InvertedIndex merged = new InvertedIndex();
+				for (InvertedIndex segment : selected) {
+					merged.addAll(segment);
+				}
+				freeze(merged);
+				synchronized (lock) {
+					boolean current = true;
+					for (InvertedIndex segment : selected) {
+						current = current && containsSegment(segments, segment);
+					}
+					if (current) {
+						publish(selected, merged);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * merges every published segment into a single index, used for output
+	 *
+	 * @return an index holding the contents of every segment
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex();
+		for (InvertedIndex segment : current()) {
+			merged.addAll(segment);
+		}
+		return merged;
+	}
+
+	/**
+	 * adds a word to the buffer, which is published once it is full or the index
+	 * is read
+	 */
+	@Override
+	public boolean add(String stem, String inputFile, int position) {
+		synchronized (lock) {
+			if (buffer.containsPosition(stem, inputFile, position)
+					|| containsPosition(segments, stem, inputFile, position)) {
+				return false;
+			}
+			int count = Math.max(buffer.getCount(inputFile), getCount(segments, inputFile));
+			buffer.add(stem, inputFile, position);
+			buffer.setCount(inputFile, count + 1);
+			if (++buffered >= BUFFER_SIZE) {
+				flushBuffer();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * adds the words of a location as one local index and publishes it at once.
+	 * If the location is already in the index, only the positions it does not
+	 * hold yet are added.
+	 */
+	@Override
+	public boolean addAll(String inputFile, Collection<String> stemmedWords) {
+		if (getCount(inputFile) == 0) {
+			InvertedIndex local = new InvertedIndex();
+			boolean added = local.addAll(inputFile, stemmedWords);
+			flush(local);
+			return added;
+		}
+		synchronized (lock) {
+			flushBuffer();
+			InvertedIndex local = new InvertedIndex();
+			int added = 0;
+			int position = 1;
+			for (String word : stemmedWords) {
+				if (!containsPosition(segments, word, inputFile, position) && local.add(word, inputFile, position)) {
+					added++;
+				}
+				position++;
+			}
+			if (added == 0) {
+				return false;
+			}
+			local.setCount(inputFile, getCount(segments, inputFile) + added);
+			flush(local);
+			return true;
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex index) {
+		synchronized (lock) {
+			flushBuffer();
+			flush(index);
+		}
+	}
+
+	@Override
+	public void countsToJson(Path path) throws IOException {
+		merged().countsToJson(path);
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		for (InvertedIndex segment : current()) {
+			if (segment.containsWord(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		return containsPosition(current(), word, location, position);
+	}
+
+	/**
+	 * determines if any of some segments holds a position
+	 *
+	 * @param current  the segments to search
+	 * @param word     the word to look for
+	 * @param location the location to look for
+	 * @param position the position to look for
+	 * @return true if found false if not
+	 */
+	private static boolean containsPosition(List<InvertedIndex> current, String word, String location,
+			int position) {
+		for (InvertedIndex segment : current) {
+			if (segment.containsPosition(word, location, position)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		for (InvertedIndex segment : current()) {
+			if (segment.containsLocation(word, location)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int getCount(String location) {
+		return getCount(current(), location);
+	}
+
+	/**
+	 * finds the word count of a location in the segment that holds it
+	 *
+	 * @param current  the segments to search
+	 * @param location the location to look for
+	 * @return the word count, or 0 if no segment holds the location
+	 */
+	private static int getCount(List<InvertedIndex> current, String location) {
+		for (InvertedIndex segment : current) {
+			int count = segment.getCount(location);
+			if (count > 0) {
+				return count;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public Map<String, Integer> getCountsMap() {
+		var counts = new TreeMap<String, Integer>();
+		for (InvertedIndex segment : current()) {
+			counts.putAll(segment.getCountsMap());
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public Set<String> getUnmodifiableWords() {
+		var words = new TreeSet<String>();
+		for (InvertedIndex segment : current()) {
+			words.addAll(segment.getUnmodifiableWords());
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> getUnmodifiableLocations() {
+		var locations = new TreeSet<String>();
+		for (InvertedIndex segment : current()) {
+			locations.addAll(segment.getUnmodifiableLocations());
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Set<String> getUnmodifiableLocations(String word) {
+		var locations = new TreeSet<String>();
+		for (InvertedIndex segment : current()) {
+			locations.addAll(segment.getUnmodifiableLocations(word));
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Set<Integer> getUnmodifiablePositions(String word, String location) {
+		for (InvertedIndex segment : current()) {
+			if (segment.containsLocation(word, location)) {
+				return segment.getUnmodifiablePositions(word, location);
+			}
+		}
+		return Collections.emptySet();
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queries) {
+		var results = new ArrayList<Result>();
+		List<InvertedIndex> current = current();
+		CollectionStatistics statistics = searchStatistics(current);
+		for (InvertedIndex segment : current) {
+			results.addAll(segment.exactSearch(queries, statistics));
+		}
+		return results;
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queries) {
+		var results = new ArrayList<Result>();
+		List<InvertedIndex> current = current();
+		CollectionStatistics statistics = searchStatistics(current);
+		for (InvertedIndex segment : current) {
+			results.addAll(segment.partialSearch(queries, statistics));
+		}
+		return results;
+	}
+
+	/**
+	 * performs a search and returns only the best results. Every location lives in
+	 * a single segment, so the best results overall are among the best results of
+	 * each segment.
+	 */
+	@Override
+	public ArrayList<Result> search(Collection<String> queries, boolean exact, int k) {
+		var results = new ArrayList<Result>();
+		List<InvertedIndex> current = current();
+		CollectionStatistics statistics = searchStatistics(current);
+		for (InvertedIndex segment : current) {
+			results.addAll(segment.search(queries, exact, k, statistics));
+		}
+		return top(results, k);
+	}
+
+	/**
+	 * performs a boolean search. Every location lives in a single segment, so the
+	 * results are the results of each segment together.
+	 */
+	@Override
+	public ArrayList<Result> booleanSearch(BooleanQuery query, boolean exact) {
+		var results = new ArrayList<Result>();
+		List<InvertedIndex> current = current();
+		CollectionStatistics statistics = searchStatistics(current);
+		for (InvertedIndex segment : current) {
+			results.addAll(segment.booleanSearch(query, exact, statistics));
+		}
+		return results;
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException {
+		merged().toJson(path);
+	}
+
+	@Override
+	public void toBinary(Path path) throws IOException {
+		merged().toBinary(path);
+	}
+
+	@Override
+	public void load(Path path) throws IOException {
+		InvertedIndex loaded = new InvertedIndex();
+		loaded.load(path);
+		flush(loaded);
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+}
@@ -0,0 +1,653 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Thread safe inverted index that partitions word stems by hash into several
+ * independent shards, each with its own lock. Adding a local index only locks
+ * the shards its stems fall in, so writers working on different shards run in
+ * parallel, and an exact search only locks the shards its stems touch.
+ *
+ * Every shard keeps the full word count of the locations it holds, so each
+ * shard scores its part of a search on its own and the parts are combined by
+ * location, one stem at a time in the order a single index visits the stems,
+ * so the scores add up exactly as they do in a single index. A scoring model
+ * that uses statistics of the whole index, such as BM25, gets them from every
+ * shard, so a search using one locks every shard.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class ShardedInvertedIndex extends ThreadSafeInvertedIndex {
+
+	/** The default number of shards. */
+	public static final int DEFAULT_SHARDS = 16;
+
+	/**
+	 * The shards, each holding the stems that hash to it
+	 */
+	private final InvertedIndex[] shards;
+
+	/**
+	 * The lock protecting each shard
+	 */
+	private final SimpleReadWriteLock[] locks;
+
+	/**
+	 * The lock objects held while words are added to a location, picked by the
+	 * hash of the location, so the word count of a location is read and raised
+	 * by one writer at a time without locking every shard
+	 */
+	private final Object[] locationLocks;
+
+	/**
+	 * The model every shard scores search results with
+	 */
+	private volatile ScoringModel model;
+
+	/**
+	 * The statistics every shard computed its scores with on the last commit, or
+	 * null if a shard changed since
+	 */
+	private volatile CollectionStatistics committed;
+
+	/**
+	 * Initializes a sharded index with the default number of shards
+	 */
+	public ShardedInvertedIndex() {
+		this(DEFAULT_SHARDS);
+	}
+
+	/**
+	 * Initializes a sharded index
+	 *
+	 * @param count the number of shards to use; should be at least 1
+	 */
+	public ShardedInvertedIndex(int count) {
+		super();
+		count = Math.max(1, count);
+		this.shards = new InvertedIndex[count];
+		this.locks = new SimpleReadWriteLock[count];
+		this.locationLocks = new Object[count];
+		for (int i = 0; i < count; i++) {
+			shards[i] = new InvertedIndex();
+			locks[i] = new SimpleReadWriteLock();
+			locationLocks[i] = new Object();
+		}
+		this.model = new ShareScoringModel();
+		this.committed = null;
+	}
+
+	/**
+	 * returns the shard a word stem belongs in
+	 *
+	 * @param word the word stem to use
+	 * @return the index of the shard
+	 */
+	private int shardOf(String word) {
+		return Math.floorMod(word.hashCode(), shards.length);
+	}
+
+	/**
+	 * returns the number of shards
+	 *
+	 * @return the number of shards
+	 */
+	public int shardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * locks every shard in order, so two threads locking every shard never wait on
+	 * each other in a cycle
+	 *
+	 * @param write true for the write locks, false for the read locks
+	 */
+	private void lockAll(boolean write) {
+		for (SimpleReadWriteLock lock : locks) {
+			(write ? lock.writeLock() : lock.readLock()).lock();
+		}
+	}
+
+	/**
+	 * unlocks every shard locked by {@link #lockAll(boolean)}
+	 *
+	 * @param write true for the write locks, false for the read locks
+	 */
+	private void unlockAll(boolean write) {
+		for (int i = locks.length - 1; i >= 0; i--) {
+			(write ? locks[i].writeLock() : locks[i].readLock()).unlock();
+		}
+	}
+
+	/**
+	 * returns the lock object held while words are added to a location
+	 *
+	 * @param location the location to use
+	 * @return the lock object
+	 */
+	private Object locationLock(String location) {
+		return locationLocks[Math.floorMod(location.hashCode(), locationLocks.length)];
+	}
+
+	/**
+	 * adds individual entries into the inverted index. The word is added as a
+	 * local index to the shard of the stem, the same way
+	 * {@link #addAll(InvertedIndex)} adds each part, so only that shard is locked,
+	 * and then the word count of the location is raised in the other shards
+	 * holding it one shard at a time.
+	 */
+	@Override
+	public boolean add(String stem, String inputFile, int position) {
+		synchronized (locationLock(inputFile)) {
+			if (containsPosition(stem, inputFile, position)) {
+				return false;
+			}
+			int count = getCount(inputFile) + 1;
+			InvertedIndex local = new InvertedIndex();
+			local.add(stem, inputFile, position);
+			local.setCount(inputFile, count);
+			addAll(shardOf(stem), local);
+			setCount(inputFile, count);
+			return true;
+		}
+	}
+
+	/**
+	 * adds the words of a location as one local index through
+	 * {@link #addAll(InvertedIndex)}. If the location is already in the index,
+	 * only the positions it does not hold yet are added, and the word count of the
+	 * location is raised in every shard holding it.
+	 */
+	@Override
+	public boolean addAll(String inputFile, Collection<String> stemmedWords) {
+		synchronized (locationLock(inputFile)) {
+			int count = getCount(inputFile);
+			InvertedIndex local = new InvertedIndex();
+			if (count == 0) {
+				boolean added = local.addAll(inputFile, stemmedWords);
+				addAll(local);
+				return added;
+			}
+			int added = 0;
+			int position = 1;
+			for (String word : stemmedWords) {
+				if (!containsPosition(word, inputFile, position) && local.add(word, inputFile, position)) {
+					added++;
+				}
+				position++;
+			}
+			if (added == 0) {
+				return false;
+			}
+			local.setCount(inputFile, count + added);
+			addAll(local);
+			setCount(inputFile, count + added);
+			return true;
+		}
+	}
+
+	/**
+	 * replaces the word count of a location in every shard holding it, one shard
+	 * at a time, so every shard scores the location with its full word count
+	 *
+	 * @param location the location to use
+	 * @param count    the word count to store
+	 */
+	@Override
+	void setCount(String location, int count) {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				if (shards[i].getCount(location) != count) {
+					shards[i].setCount(location, count);
+					committed = null;
+				}
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex index) {
+		InvertedIndex[] parts = index.partition(shards.length, this::shardOf);
+		for (int i = 0; i < shards.length; i++) {
+			if (!parts[i].getUnmodifiableLocations().isEmpty()) {
+				addAll(i, parts[i]);
+			}
+		}
+	}
+
+	/**
+	 * helper method that adds an index holding only stems of one shard to that
+	 * shard, locking only that shard
+	 *
+	 * @param shard the number of the shard
+	 * @param part  the index to add
+	 */
+	private void addAll(int shard, InvertedIndex part) {
+		locks[shard].writeLock().lock();
+		try {
+			shards[shard].addAll(part);
+			committed = null;
+		} finally {
+			locks[shard].writeLock().unlock();
+		}
+	}
+
+	/**
+	 * commits every shard. If the scoring model uses statistics of the whole
+	 * index, every shard is locked so all of them compute their scores with the
+	 * same statistics.
+	 */
+	@Override
+	public void commit() {
+		if (!model.usesStatistics()) {
+			for (int i = 0; i < shards.length; i++) {
+				locks[i].writeLock().lock();
+				try {
+					shards[i].commit();
+				} finally {
+					locks[i].writeLock().unlock();
+				}
+			}
+			nextGeneration();
+			return;
+		}
+		lockAll(true);
+		try {
+			CollectionStatistics statistics = statistics();
+			for (InvertedIndex shard : shards) {
+				shard.commit(statistics);
+			}
+			committed = statistics;
+			nextGeneration();
+		} finally {
+			unlockAll(true);
+		}
+	}
+
+	/**
+	 * replaces the model used to score search results in every shard
+	 */
+	@Override
+	public void setScoringModel(ScoringModel model) {
+		lockAll(true);
+		try {
+			for (InvertedIndex shard : shards) {
+				shard.setScoringModel(model);
+			}
+			this.model = model;
+			committed = null;
+			nextGeneration();
+		} finally {
+			unlockAll(true);
+		}
+	}
+
+	@Override
+	public ScoringModel getScoringModel() {
+		return model;
+	}
+
+	/**
+	 * gets the statistics of the whole index. The number of locations a stem
+	 * appears in is looked up in the shard of the stem when asked for.
+	 */
+	@Override
+	public CollectionStatistics getStatistics() {
+		Map<String, Integer> counts = getCountsMap();
+		return new CollectionStatistics(counts.size(), averageLength(counts), this::documentFrequency);
+	}
+
+	@Override
+	public int documentFrequency(String stem) {
+		int i = shardOf(stem);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].documentFrequency(stem);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	/**
+	 * gets the statistics of the whole index, must be called while holding every
+	 * lock. Returns the statistics of the last commit if no shard changed since,
+	 * so the shards use the scores they computed with them.
+	 *
+	 * @return the statistics of the whole index
+	 */
+	private CollectionStatistics statistics() {
+		CollectionStatistics statistics = committed;
+		if (statistics != null) {
+			return statistics;
+		}
+		var counts = new HashMap<String, Integer>();
+		for (InvertedIndex shard : shards) {
+			for (var entry : shard.getCountsMap().entrySet()) {
+				counts.merge(entry.getKey(), entry.getValue(), Math::max);
+			}
+		}
+		return new CollectionStatistics(counts.size(), averageLength(counts),
+				stem -> shards[shardOf(stem)].documentFrequency(stem));
+	}
+
+	/**
+	 * returns the average word count of the locations
+	 *
+	 * @param counts the word count of every location
+	 * @return the average word count, or 0 if there are no locations
+	 */
+	private static double averageLength(Map<String, Integer> counts) {
+		long total = 0;
+		for (int count : counts.values()) {
+			total += count;
+		}
+		return counts.isEmpty() ? 0 : (double) total / counts.size();
+	}
+
+	/**
+	 * keeps the posting lists of every shard in direct memory, each shard with its
+	 * own {@link PostingArena}
+	 */
+	@Override
+	public void useOffHeap() {
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].writeLock().lock();
+			try {
+				shards[i].useOffHeap();
+			} finally {
+				locks[i].writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * merges every shard into a single index, used for output
+	 *
+	 * @return an index holding the contents of every shard
+	 */
+	private InvertedIndex merged() {
+		InvertedIndex merged = new InvertedIndex();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				merged.addAll(shards[i]);
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * combines the results of each shard into one result per location
+	 *
+	 * @param lookup  the results found so far mapped by location
+	 * @param results the combined results
+	 * @param found   the results of a single shard
+	 */
+	private static void combine(Map<String, Result> lookup, ArrayList<Result> results, ArrayList<Result> found) {
+		for (Result result : found) {
+			Result existing = lookup.get(result.getWhere());
+			if (existing == null) {
+				lookup.put(result.getWhere(), result);
+				results.add(result);
+			} else {
+				existing.merge(result);
+			}
+		}
+	}
+
+	@Override
+	public void countsToJson(Path path) throws IOException {
+		merged().countsToJson(path);
+	}
+
+	@Override
+	public int getCount(String location) {
+		int count = 0;
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				count = Math.max(count, shards[i].getCount(location));
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public Map<String, Integer> getCountsMap() {
+		var counts = new TreeMap<String, Integer>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				for (var entry : shards[i].getCountsMap().entrySet()) {
+					counts.merge(entry.getKey(), entry.getValue(), Math::max);
+				}
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableMap(counts);
+	}
+
+	@Override
+	public boolean containsWord(String word) {
+		int i = shardOf(word);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].containsWord(word);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsPosition(String word, String location, int position) {
+		int i = shardOf(word);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].containsPosition(word, location, position);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean containsLocation(String word, String location) {
+		int i = shardOf(word);
+		locks[i].readLock().lock();
+		try {
+			return shards[i].containsLocation(word, location);
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<String> getUnmodifiableWords() {
+		var words = new TreeSet<String>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				words.addAll(shards[i].getUnmodifiableWords());
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(words);
+	}
+
+	@Override
+	public Set<String> getUnmodifiableLocations() {
+		var locations = new TreeSet<String>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				locations.addAll(shards[i].getUnmodifiableLocations());
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		return Collections.unmodifiableSet(locations);
+	}
+
+	@Override
+	public Set<String> getUnmodifiableLocations(String word) {
+		int i = shardOf(word);
+		locks[i].readLock().lock();
+		try {
+			return Collections.unmodifiableSet(new TreeSet<String>(shards[i].getUnmodifiableLocations(word)));
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public Set<Integer> getUnmodifiablePositions(String word, String location) {
+		int i = shardOf(word);
+		locks[i].readLock().lock();
+		try {
+			return Collections.unmodifiableSet(new TreeSet<Integer>(shards[i].getUnmodifiablePositions(word, location)));
+		} finally {
+			locks[i].readLock().unlock();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> exactSearch(Collection<String> queries) {
+		return searchInOrder(queries, true);
+	}
+
+	@Override
+	public ArrayList<Result> partialSearch(Collection<String> queries) {
+		return searchInOrder(queries, false);
+	}
+
+	/**
+	 * performs a search one stem at a time, visiting the stems in the same order
+	 * a single index does, so the term scores of every location are added up in
+	 * the same order and the scores match those of a single index exactly. A
+	 * model that uses statistics of the whole index locks every shard for the
+	 * whole search, so every stem is scored with the same statistics.
+	 *
+	 * @param queries the query words
+	 * @param exact   true to match whole stems, false to match prefixes
+	 * @return the results combined by location
+	 */
+	private ArrayList<Result> searchInOrder(Collection<String> queries, boolean exact) {
+		boolean usesStatistics = model.usesStatistics();
+		if (usesStatistics) {
+			lockAll(false);
+		}
+		try {
+			CollectionStatistics statistics = usesStatistics ? statistics() : null;
+			var results = new ArrayList<Result>();
+			var lookup = new HashMap<String, Result>();
+			for (String word : queries) {
+				for (String stem : exact ? List.of(word) : matchingStems(word)) {
+					int i = shardOf(stem);
+					locks[i].readLock().lock();
+					try {
+						combine(lookup, results, shards[i].stemSearch(stem, statistics));
+					} finally {
+						locks[i].readLock().unlock();
+					}
+				}
+			}
+			return results;
+		} finally {
+			if (usesStatistics) {
+				unlockAll(false);
+			}
+		}
+	}
+
+	/**
+	 * finds the stems of every shard starting with a query word, in sorted order
+	 * like a partial search of a single index visits them
+	 *
+	 * @param word the query word
+	 * @return the stems
+	 */
+	@Override
+	ArrayList<String> matchingStems(String word) {
+		var found = new ArrayList<String>();
+		for (int i = 0; i < shards.length; i++) {
+			locks[i].readLock().lock();
+			try {
+				found.addAll(shards[i].matchingStems(word));
+			} finally {
+				locks[i].readLock().unlock();
+			}
+		}
+		Collections.sort(found);
+		return found;
+	}
+
+	/**
+	 * performs a search and returns only the best results. The matches of a
+	 * location can be spread over several shards, so the results of every shard
+	 * are combined before the best are picked.
+	 */
+	@Override
+	public ArrayList<Result> search(Collection<String> queries, boolean exact, int k) {
+		return top(search(queries, exact), k);
+	}
+
+	/**
+	 * performs a boolean search. The stems of a query can fall in different
+	 * shards, so the posting lists the query needs are copied out of every shard
+	 * into one index and searched there.
+	 */
+	@Override
+	public ArrayList<Result> booleanSearch(BooleanQuery query, boolean exact) {
+		var stems = query.getStems();
+		lockAll(false);
+		try {
+			InvertedIndex selected = new InvertedIndex();
+			for (InvertedIndex shard : shards) {
+				selected.addAll(shard.select(stems, exact));
+			}
+			selected.setScoringModel(model);
+			return selected.booleanSearch(query, exact, model.usesStatistics() ? statistics() : null);
+		} finally {
+			unlockAll(false);
+		}
+	}
+
+	@Override
+	public void toJson(Path path) throws IOException {
+		merged().toJson(path);
+	}
+
+	@Override
+	public void toBinary(Path path) throws IOException {
+		merged().toBinary(path);
+	}
+
+	@Override
+	public void load(Path path) throws IOException {
+		InvertedIndex loaded = new InvertedIndex();
+		loaded.load(path);
+		addAll(loaded);
+	}
+
+	@Override
+	public String toString() {
+		return merged().toString();
+	}
+}
@@ -0,0 +1,39 @@
+/**
+ * The default {@link ScoringModel}, which scores a document by the share of its
+ * words that match the search: the number of matches divided by the number of
+ * words in the document.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class ShareScoringModel implements ScoringModel {
+
+	@Override
+	public double weight(int frequency, int documents) {
+		return 1;
+	}
+
+	@Override
+	public double norm(int length, double average) {
+		return length;
+	}
+
+	@Override
+	public double score(int frequency, double weight, double norm) {
+		return frequency / norm;
+	}
+
+	/**
+	 * divides the number of matches by the number of words, instead of adding up
+	 * the term scores, so the score does not depend on rounding
+	 */
+	@Override
+	public double total(double sum, int count, double norm) {
+		return count / norm;
+	}
+
+	@Override
+	public boolean usesStatistics() {
+		return false;
+	}
+}
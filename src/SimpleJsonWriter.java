@@ -8,6 +8,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -240,7 +241,22 @@ public class SimpleJsonWriter {
 	 */
 	public static void asInvertedIndex(Map<String, ? extends Map<String, ? extends Collection<Integer>>> elements,
 			Writer writer, int level) throws IOException {
-		var stemIterator = elements.entrySet().iterator();
+		asInvertedIndex(elements.entrySet().iterator(), writer, level);
+	}
+
+	/**
+	 * Writes the elements as a pretty JSON object with an inverted index, taking
+	 * the stems and their nested maps one at a time from an iterator so the whole
+	 * nested structure never has to exist at once
+	 * 
+	 * @param stemIterator the elements to write
+	 * @param writer       the writer to use
+	 * @param level        the initial indent level
+	 * @throws IOException if an IO error occurs
+	 */
+	public static void asInvertedIndex(
+			Iterator<? extends Map.Entry<String, ? extends Map<String, ? extends Collection<Integer>>>> stemIterator,
+			Writer writer, int level) throws IOException {
 		writer.write("{");
 		level++;
 		if (stemIterator.hasNext()) {
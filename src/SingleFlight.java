@@ -0,0 +1,87 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical work running at the same time. The first thread to ask
+ * for a key does the work, and every thread asking for the same key before it
+ * is done waits for that result instead of doing the work again. Once the work
+ * is done the key is forgotten, so the next request does the work again, which
+ * keeps this from ever holding stale results.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class SingleFlight<K, V> {
+
+	/**
+	 * The work running right now, by key
+	 */
+	private final ConcurrentHashMap<K, CompletableFuture<V>> running;
+
+	/**
+	 * The number of requests that waited for work already running
+	 */
+	private final AtomicLong shared;
+
+	/**
+	 * Initializes with no work running
+	 */
+	public SingleFlight() {
+		this.running = new ConcurrentHashMap<K, CompletableFuture<V>>();
+		this.shared = new AtomicLong();
+	}
+
+	/**
+	 * does the work for a key, or waits for the same work already running in
+	 * another thread. If the work throws an exception, every thread waiting for it
+	 * throws the same exception.
+	 *
+	 * @param key  the key of the work
+	 * @param work does the work
+	 * @return the result of the work
+	 */
+	public V run(K key, Supplier<V> work) {
+		var mine = new CompletableFuture<V>();
+		CompletableFuture<V> other = running.putIfAbsent(key, mine);
+		if (other != null) {
+			shared.incrementAndGet();
+			try {
+				return other.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw e;
+			}
+		}
+		try {
+			V result = work.get();
+			mine.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			mine.completeExceptionally(e);
+			throw e;
+		} finally {
+			running.remove(key, mine);
+		}
+	}
+
+	/**
+	 * returns the number of requests that waited for work already running instead
+	 * of doing it again
+	 *
+	 * @return the number of shared results
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+}
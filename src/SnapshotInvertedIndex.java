@@ -0,0 +1,188 @@
+import java.util.Collection;
+
+/**
+ * Segmented inverted index that batches changes before publishing them.
+ * Searches only ever see published, immutable segments and never take a lock,
+ * so they do not wait on a crawl or build that is adding to the index. Writers
+ * add to a pending batch that readers cannot see, and the batch is published
+ * as a new segment once it holds enough locations, once enough time has
+ * passed, or when {@link #commit()} is called.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class SnapshotInvertedIndex extends SegmentedInvertedIndex {
+
+	/** The default number of locations to batch before publishing. */
+	public static final int DEFAULT_BATCH = 50;
+
+	/** The default number of milliseconds to wait before publishing a batch. */
+	public static final long DEFAULT_INTERVAL = 1000;
+
+	/**
+	 * The changes that have not been published yet, guarded by {@link #batchLock}
+	 */
+	private InvertedIndex pending;
+
+	/**
+	 * The number of locations to batch before publishing
+	 */
+	private final int batchSize;
+
+	/**
+	 * The number of milliseconds to wait before publishing a batch
+	 */
+	private final long interval;
+
+	/**
+	 * The time of the last publish in milliseconds, guarded by {@link #batchLock}
+	 */
+	private long lastPublish;
+
+	/**
+	 * The lock object used by writers when changing the pending batch
+	 */
+	private final Object batchLock;
+
+	/**
+	 * The background thread publishing batches
+	 */
+	private final Thread publisher;
+
+	/**
+	 * Used to signal the publishing thread to stop
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Initializes a snapshot index with the default batch size and interval
+	 */
+	public SnapshotInvertedIndex() {
+		this(DEFAULT_BATCH, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Initializes a snapshot index
+	 *
+	 * @param batchSize the number of locations to batch before publishing
+	 * @param interval  the number of milliseconds to wait before publishing a
+	 *                  batch
+	 */
+	public SnapshotInvertedIndex(int batchSize, long interval) {
+		super();
+		this.pending = new InvertedIndex();
+		this.batchSize = Math.max(1, batchSize);
+		this.interval = Math.max(1, interval);
+		this.batchLock = new Object();
+		this.lastPublish = System.currentTimeMillis();
+		this.closed = false;
+
+		this.publisher = new Thread(this::publishLoop, "snapshot-publisher");
+		this.publisher.setDaemon(true);
+		this.publisher.start();
+	}
+
+	/**
+	 * publishes the pending batch if it holds any changes, must be called while
+	 * holding {@link #batchLock}
+	 */
+	private void publishPending() {
+		if (!pending.getUnmodifiableLocations().isEmpty()) {
+			flush(pending);
+			pending = new InvertedIndex();
+		}
+		lastPublish = System.currentTimeMillis();
+	}
+
+	/**
+	 * publishes the pending batch if it is large enough or old enough, must be
+	 * called while holding {@link #batchLock}
+	 */
+	private void publishIfDue() {
+		if (pending.getUnmodifiableLocations().size() >= batchSize
+				|| System.currentTimeMillis() - lastPublish >= interval) {
+			publishPending();
+		}
+	}
+
+	/**
+	 * Publishes the pending batch every interval, so changes become visible even
+	 * when writers stop adding, until the index is closed.
+	 */
+	private void publishLoop() {
+		while (!closed) {
+			try {
+				Thread.sleep(interval);
+			} catch (InterruptedException e) {
+				return;
+			}
+			synchronized (batchLock) {
+				if (System.currentTimeMillis() - lastPublish >= interval) {
+					publishPending();
+				}
+			}
+		}
+	}
+
+	/**
+	 * publishes the pending batch and stops the background threads publishing
+	 * batches and merging segments. Changes made afterwards are published when
+	 * the batch fills up or {@link #commit()} is called.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		publisher.interrupt();
+		synchronized (batchLock) {
+			publishPending();
+		}
+		super.close();
+	}
+
+	/**
+	 * publishes every pending change right away
+	 */
+	@Override
+	public void commit() {
+		synchronized (batchLock) {
+			publishPending();
+		}
+	}
+
+	@Override
+	public boolean add(String stem, String inputFile, int position) {
+		synchronized (batchLock) {
+			if (pending.containsPosition(stem, inputFile, position)
+					|| super.containsPosition(stem, inputFile, position)) {
+				return false;
+			}
+			int count = Math.max(pending.getCount(inputFile), super.getCount(inputFile));
+			pending.add(stem, inputFile, position);
+			pending.setCount(inputFile, count + 1);
+			publishIfDue();
+			return true;
+		}
+	}
+
+	@Override
+	public boolean addAll(String inputFile, Collection<String> stemmedWords) {
+		synchronized (batchLock) {
+			boolean ret = false;
+			int position = 1;
+			for (String word : stemmedWords) {
+				if (add(word, inputFile, position++)) {
+					ret = true;
+				}
+			}
+			return ret;
+		}
+	}
+
+	@Override
+	public void addAll(InvertedIndex index) {
+		synchronized (batchLock) {
+			pending.addAll(index);
+			publishIfDue();
+		}
+	}
+}
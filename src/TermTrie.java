@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+import java.util.SortedMap;
+
+/**
+ * Compact, read-only trie over the sorted stems of a term dictionary. Every
+ * node covers the contiguous range of stems that share its prefix, so all of
+ * the stems starting with a prefix are found by walking down the trie one
+ * character at a time, without comparing or creating any strings.
+ *
+ * The trie is path-compressed: a node stores only the length of the prefix
+ * shared by its range, and the characters of that prefix are read from the
+ * first stem of the range. The nodes are kept in flat arrays, with the
+ * children of a node stored next to each other.
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class TermTrie {
+
+	/**
+	 * The stems in sorted order
+	 */
+	private final String[] stems;
+
+	/**
+	 * The term id of every stem, in sorted order
+	 */
+	private final int[] ids;
+
+	/**
+	 * The first rank covered by each node
+	 */
+	private final int[] low;
+
+	/**
+	 * One past the last rank covered by each node
+	 */
+	private final int[] high;
+
+	/**
+	 * The length of the prefix shared by every stem a node covers
+	 */
+	private final int[] depth;
+
+	/**
+	 * The character leading from the parent of each node to the node
+	 */
+	private final char[] label;
+
+	/**
+	 * The index of the first child of each node
+	 */
+	private final int[] firstChild;
+
+	/**
+	 * The number of children of each node
+	 */
+	private final int[] childCount;
+
+	/**
+	 * Builds a trie over a term dictionary
+	 *
+	 * @param terms the term dictionary mapping stems to their term id
+	 */
+	public TermTrie(SortedMap<String, Integer> terms) {
+		this.stems = new String[terms.size()];
+		this.ids = new int[terms.size()];
+		int rank = 0;
+		for (var entry : terms.entrySet()) {
+			stems[rank] = entry.getKey();
+			ids[rank++] = entry.getValue();
+		}
+
+		var ranges = new ArrayList<int[]>();
+		var children = new ArrayList<int[]>();
+		if (stems.length > 0) {
+			ranges.add(new int[] { 0, stems.length, 0 });
+		}
+		// nodes are laid out breadth first, so the children of a node are added
+		// next to each other once the node itself is reached
+		for (int node = 0; node < ranges.size(); node++) {
+			int[] range = ranges.get(node);
+			int first = range[0];
+			int last = range[1] - 1;
+			int shared = commonPrefix(stems[first], stems[last]);
+			children.add(new int[] { ranges.size(), 0, shared });
+
+			int start = first;
+			if (stems[start].length() == shared) {
+				start++;
+			}
+			while (start <= last) {
+				char c = stems[start].charAt(shared);
+				int end = start + 1;
+				while (end <= last && stems[end].charAt(shared) == c) {
+					end++;
+				}
+				ranges.add(new int[] { start, end, c });
+				children.get(node)[1]++;
+				start = end;
+			}
+		}
+
+		int count = ranges.size();
+		this.low = new int[count];
+		this.high = new int[count];
+		this.depth = new int[count];
+		this.label = new char[count];
+		this.firstChild = new int[count];
+		this.childCount = new int[count];
+		for (int node = 0; node < count; node++) {
+			low[node] = ranges.get(node)[0];
+			high[node] = ranges.get(node)[1];
+			label[node] = (char) ranges.get(node)[2];
+			firstChild[node] = children.get(node)[0];
+			childCount[node] = children.get(node)[1];
+			depth[node] = children.get(node)[2];
+		}
+	}
+
+	/**
+	 * returns the length of the prefix two stems share
+	 *
+	 * @param first  the first stem
+	 * @param second the second stem
+	 * @return the number of leading characters in common
+	 */
+	private static int commonPrefix(String first, String second) {
+		int length = Math.min(first.length(), second.length());
+		int i = 0;
+		while (i < length && first.charAt(i) == second.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * finds the child of a node that continues with the given character
+	 *
+	 * @param node the node to search
+	 * @param c    the next character
+	 * @return the child node, or -1 if there is none
+	 */
+	private int child(int node, char c) {
+		int lowChild = firstChild[node];
+		int highChild = lowChild + childCount[node] - 1;
+		while (lowChild <= highChild) {
+			int middle = (lowChild + highChild) >>> 1;
+			if (label[middle] < c) {
+				lowChild = middle + 1;
+			} else if (label[middle] > c) {
+				highChild = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * finds the node covering every stem that starts with a prefix
+	 *
+	 * @param prefix the prefix to find
+	 * @return the node, or -1 if no stem starts with the prefix
+	 */
+	public int find(String prefix) {
+		if (stems.length == 0) {
+			return -1;
+		}
+		int node = 0;
+		int matched = 0;
+		while (true) {
+			String stem = stems[low[node]];
+			int end = Math.min(prefix.length(), depth[node]);
+			for (; matched < end; matched++) {
+				if (stem.charAt(matched) != prefix.charAt(matched)) {
+					return -1;
+				}
+			}
+			if (matched == prefix.length()) {
+				return node;
+			}
+			node = child(node, prefix.charAt(matched));
+			if (node < 0) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * returns the first rank of the stems a node covers
+	 *
+	 * @param node the node returned by {@link #find(String)}
+	 * @return the first rank, equal to {@link #end(int)} if the node is -1
+	 */
+	public int start(int node) {
+		return node < 0 ? 0 : low[node];
+	}
+
+	/**
+	 * returns one past the last rank of the stems a node covers
+	 *
+	 * @param node the node returned by {@link #find(String)}
+	 * @return one past the last rank, equal to {@link #start(int)} if the node is
+	 *         -1
+	 */
+	public int end(int node) {
+		return node < 0 ? 0 : high[node];
+	}
+
+	/**
+	 * gets the term id of the stem at a rank
+	 *
+	 * @param rank the position of the stem in sorted order
+	 * @return the term id
+	 */
+	public int termId(int rank) {
+		return ids[rank];
+	}
+
+	/**
+	 * returns the number of stems in the trie
+	 *
+	 * @return the number of stems
+	 */
+	public int size() {
+		return stems.length;
+	}
+}
@@ -29,7 +29,7 @@ public class TextFileStemmer {
 	 * @return a list of cleaned and stemmed words
 	 *
 	 * @see Stemmer#stem(CharSequence)
-	 * @see TextParser#parse(String)
+	 * @see TextTokenizer#tokenize(String)
 	 */
 	public static ArrayList<String> listStems(String line, Stemmer stemmer) {
 		ArrayList<String> stemmedWords = new ArrayList<String>();
@@ -46,9 +46,10 @@ public class TextFileStemmer {
 	 * @param stemmedWords some collecton of strings
 	 */
 	public static void stemToCollection(String line, Stemmer stemmer, Collection<String> stemmedWords) {
-		String wordList[] = TextParser.parse(line);
-		for (String word : wordList) {
-			String stem = stemmer.stem(word).toString();
+		TextTokenizer tokenizer = TextTokenizer.forThread();
+		int words = tokenizer.tokenize(line);
+		for (int i = 0; i < words; i++) {
+			String stem = stemmer.stem(tokenizer.token(i)).toString();
 			stemmedWords.add(stem);
 		}
 	}
@@ -59,12 +60,11 @@ public class TextFileStemmer {
 	 * @param line the line of words to clean, split, and stem
 	 * @return a list of cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer
-	 * @see #DEFAULT
+	 * @see CachingStemmer#SHARED
 	 * @see #listStems(String, Stemmer)
 	 */
 	public static ArrayList<String> listStems(String line) {
-		return listStems(line, new SnowballStemmer(DEFAULT));
+		return listStems(line, CachingStemmer.SHARED);
 	}
 
 	/**
@@ -76,7 +76,7 @@ public class TextFileStemmer {
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
 	 * @see Stemmer#stem(CharSequence)
-	 * @see TextParser#parse(String)
+	 * @see TextTokenizer#tokenize(String)
 	 */
 	public static TreeSet<String> uniqueStems(String line, Stemmer stemmer) {
 		TreeSet<String> stemmedWords = new TreeSet<String>();
@@ -91,12 +91,11 @@ public class TextFileStemmer {
 	 * @param line the line of words to clean, split, and stem
 	 * @return a sorted set of unique cleaned and stemmed words
 	 *
-	 * @see SnowballStemmer
-	 * @see #DEFAULT
+	 * @see CachingStemmer#SHARED
 	 * @see #uniqueStems(String, Stemmer)
 	 */
 	public static TreeSet<String> uniqueStems(String line) {
-		return uniqueStems(line, new SnowballStemmer(DEFAULT));
+		return uniqueStems(line, CachingStemmer.SHARED);
 	}
 
 	/**
@@ -108,7 +107,7 @@ public class TextFileStemmer {
 	 * @throws IOException if unable to read or parse file
 	 *
 	 * @see #uniqueStems(String)
-	 * @see TextParser#parse(String)
+	 * @see TextTokenizer#tokenize(String)
 	 */
 	public static TreeSet<String> uniqueStems(Path inputFile) throws IOException {
 		TreeSet<String> stemmedWords = new TreeSet<String>();
@@ -127,7 +126,7 @@ public class TextFileStemmer {
 	public static void stemToCollection(Path inputFile, Collection<String> stemmedWords) throws IOException {
 		try (BufferedReader reader = Files.newBufferedReader(inputFile, StandardCharsets.UTF_8)) {
 			String line;
-			Stemmer stemmer = new SnowballStemmer(DEFAULT);
+			Stemmer stemmer = CachingStemmer.SHARED;
 			while ((line = reader.readLine()) != null) {
 				stemToCollection(line, stemmer, stemmedWords);
 			}
@@ -143,7 +142,7 @@ public class TextFileStemmer {
 	 * @throws IOException if unable to read or parse file
 	 *
 	 * @see #uniqueStems(String)
-	 * @see TextParser#parse(String)
+	 * @see TextTokenizer#tokenize(String)
 	 */
 	public static ArrayList<String> listStems(Path inputFile) throws IOException {
 		ArrayList<String> stemmedWords = new ArrayList<String>();
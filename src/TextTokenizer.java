@@ -0,0 +1,299 @@
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Splits text into cleaned words in a single pass over its characters, finding
+ * exactly the words {@link TextParser#parse(String)} finds. Letters are kept
+ * and lower cased, whitespace separates words, and every other character is
+ * dropped. Plain ASCII text is handled one character at a time without copying
+ * the line, and only runs of other characters are normalized first, so accents
+ * and other marks are split off and dropped the same way.
+ *
+ * Lines holding letters that lower case differently depending on the letters
+ * around them are cleaned as a whole, like {@link TextParser} does.
+ *
+ * The words are written into an array that is reused by the next line, so a
+ * tokenizer must only be used by one thread at a time.
+ *
+ * @see #forThread()
+ *
+ * @author ahmaad idrees
+ *
+ */
+public class TextTokenizer {
+
+	/**
+	 * The capital Greek sigma, which lower cases differently at the end of a word
+	 */
+	private static final char CAPITAL_SIGMA = '\u03a3';
+
+	/**
+	 * The tokenizer of each thread
+	 */
+	private static final ThreadLocal<TextTokenizer> TOKENIZERS = ThreadLocal.withInitial(TextTokenizer::new);
+
+	/**
+	 * The characters of the last line given as a string, reused for every line
+	 */
+	private char[] line;
+
+	/**
+	 * The characters of the word being read, reused for every word
+	 */
+	private char[] buffer;
+
+	/**
+	 * The number of characters of the word being read
+	 */
+	private int length;
+
+	/**
+	 * Whether the word being read holds only ASCII letters, which are lower cased
+	 * as they are read
+	 */
+	private boolean ascii;
+
+	/**
+	 * The words of the last line, reused for every line
+	 */
+	private String[] tokens;
+
+	/**
+	 * The number of words of the last line
+	 */
+	private int count;
+
+	/**
+	 * Whether the line has only shown characters {@link String#strip()} removes
+	 * so far
+	 */
+	private boolean leading;
+
+	/**
+	 * Whether the line starts with a separator {@link String#strip()} keeps, which
+	 * makes {@link TextParser#split(String)} start with an empty word
+	 */
+	private boolean emptyFirst;
+
+	/**
+	 * Initializes a tokenizer
+	 */
+	public TextTokenizer() {
+		this.line = new char[256];
+		this.buffer = new char[32];
+		this.tokens = new String[16];
+	}
+
+	/**
+	 * returns the tokenizer of the current thread
+	 *
+	 * @return the tokenizer
+	 */
+	public static TextTokenizer forThread() {
+		return TOKENIZERS.get();
+	}
+
+	/**
+	 * splits text into cleaned words, replacing the words of the last call
+	 *
+	 * @param text the text to split
+	 * @return the number of words
+	 *
+	 * @see #token(int)
+	 */
+	public int tokenize(String text) {
+		if (text.length() > line.length) {
+			line = new char[Math.max(text.length(), line.length * 2)];
+		}
+		text.getChars(0, text.length(), line, 0);
+		return tokenize(line, 0, text.length());
+	}
+
+	/**
+	 * splits text held in an array into cleaned words, replacing the words of the
+	 * last call. The text is split as one line, like {@link #tokenize(String)}.
+	 *
+	 * @param text  the characters holding the line
+	 * @param start the index of the first character of the line
+	 * @param end   the index after the last character of the line
+	 * @return the number of words
+	 *
+	 * @see #token(int)
+	 */
+	public int tokenize(char[] text, int start, int end) {
+		count = 0;
+		length = 0;
+		ascii = true;
+		leading = true;
+		emptyFirst = false;
+		if (lowerCaseDependsOnContext() || contains(text, start, end, CAPITAL_SIGMA)) {
+			for (String token : TextParser.parse(new String(text, start, end - start))) {
+				emit(token);
+			}
+			return count;
+		}
+		int i = start;
+		while (i < end) {
+			char c = text[i];
+			if (c < 0x80) {
+				accept(c);
+				i++;
+				continue;
+			}
+			int run = i + 1;
+			while (run < end && text[run] >= 0x80) {
+				run++;
+			}
+			String normalized = Normalizer.normalize(CharBuffer.wrap(text, i, run - i), Normalizer.Form.NFD);
+			for (int j = 0; j < normalized.length();) {
+				int codePoint = normalized.codePointAt(j);
+				accept(codePoint);
+				j += Character.charCount(codePoint);
+			}
+			i = run;
+		}
+		flush();
+		if (emptyFirst && count > 0) {
+			emit(null);
+			System.arraycopy(tokens, 0, tokens, 1, count - 1);
+			tokens[0] = "";
+		}
+		return count;
+	}
+
+	/**
+	 * returns one of the words of the last call to {@link #tokenize(String)}
+	 *
+	 * @param index the index of the word, less than the number of words
+	 * @return the word
+	 */
+	public String token(int index) {
+		return tokens[index];
+	}
+
+	/**
+	 * splits text into cleaned words
+	 *
+	 * @param text the text to split
+	 * @return a new array of the words
+	 *
+	 * @see TextParser#parse(String)
+	 */
+	public String[] parse(String text) {
+		int words = tokenize(text);
+		return Arrays.copyOf(tokens, words);
+	}
+
+	/**
+	 * handles one character of the normalized text
+	 *
+	 * @param codePoint the character to handle
+	 */
+	private void accept(int codePoint) {
+		if (codePoint < 0x80) {
+			if (codePoint >= 'a' && codePoint <= 'z' || codePoint >= 'A' && codePoint <= 'Z') {
+				leading = false;
+				append((char) (codePoint | 0x20));
+			} else if (codePoint == ' ' || codePoint >= 0x9 && codePoint <= 0xd) {
+				flush();
+			}
+			return;
+		}
+		if (Character.isAlphabetic(codePoint)) {
+			leading = false;
+			ascii = false;
+			if (Character.isBmpCodePoint(codePoint)) {
+				append((char) codePoint);
+			} else {
+				append(Character.highSurrogate(codePoint));
+				append(Character.lowSurrogate(codePoint));
+			}
+		} else if (isSpace(codePoint)) {
+			if (leading && !Character.isWhitespace(codePoint)) {
+				emptyFirst = true;
+			}
+			leading = leading && Character.isWhitespace(codePoint);
+			flush();
+		}
+	}
+
+	/**
+	 * adds a character to the word being read
+	 *
+	 * @param c the character to add
+	 */
+	private void append(char c) {
+		if (length == buffer.length) {
+			buffer = Arrays.copyOf(buffer, length * 2);
+		}
+		buffer[length++] = c;
+	}
+
+	/**
+	 * ends the word being read, if there is one
+	 */
+	private void flush() {
+		if (length > 0) {
+			String token = new String(buffer, 0, length);
+			emit(ascii ? token : token.toLowerCase());
+			length = 0;
+			ascii = true;
+		}
+	}
+
+	/**
+	 * adds a word to the words of the line
+	 *
+	 * @param token the word to add
+	 */
+	private void emit(String token) {
+		if (count == tokens.length) {
+			tokens = Arrays.copyOf(tokens, count * 2);
+		}
+		tokens[count++] = token;
+	}
+
+	/**
+	 * determines if part of an array holds a character
+	 *
+	 * @param text  the characters to search
+	 * @param start the index of the first character to search
+	 * @param end   the index after the last character to search
+	 * @param c     the character to find
+	 * @return true if the character was found
+	 */
+	private static boolean contains(char[] text, int start, int end, char c) {
+		for (int i = start; i < end; i++) {
+			if (text[i] == c) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * determines if a character separates words, matching the Unicode whitespace
+	 * used by {@link TextParser#SPLIT_REGEX}
+	 *
+	 * @param codePoint the character to check
+	 * @return true if the character is whitespace
+	 */
+	private static boolean isSpace(int codePoint) {
+		int type = Character.getType(codePoint);
+		return type == Character.SPACE_SEPARATOR || type == Character.LINE_SEPARATOR
+				|| type == Character.PARAGRAPH_SEPARATOR || codePoint >= 0x9 && codePoint <= 0xd || codePoint == 0x85;
+	}
+
+	/**
+	 * determines if the default locale lower cases letters differently depending
+	 * on the letters around them, in which case every line is cleaned as a whole
+	 *
+	 * @return true for the Turkish, Azerbaijani and Lithuanian locales
+	 */
+	private static boolean lowerCaseDependsOnContext() {
+		String language = Locale.getDefault().getLanguage();
+		return language.equals("tr") || language.equals("az") || language.equals("lt");
+	}
+}
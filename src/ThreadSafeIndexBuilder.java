@@ -1,7 +1,10 @@
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -15,7 +18,9 @@ public class ThreadSafeIndexBuilder {
 
 	/**
 	 * add input into the inverted index but uses a specified number of threads in a
-	 * work queue
+	 * work queue. Files larger than {@link IndexBuilder#CHUNK_SIZE} are split into
+	 * parts indexed in parallel, which are joined back into one local index once
+	 * every part is done.
 	 * 
 	 * @param inputPath file to use
 	 * @param index     inverted index to use
@@ -32,10 +37,99 @@ public class ThreadSafeIndexBuilder {
 		stream = TextFileFinder.find(inputPath).collect(Collectors.toList());
 		WorkQueue workQ = new WorkQueue(threads);
 		for (Path textFile : stream) {
-			workQ.execute(new IndexTask(textFile, index));
+			workQ.execute(new IndexTask(textFile, index, workQ));
 		}
 		workQ.finish();
 		workQ.shutdown();
+		index.commit();
+	}
+
+	/**
+	 * add input into the inverted index using a specified number of threads in a
+	 * work queue, but merges the local index of each file pairwise with other
+	 * local indexes before touching the shared index. Local indexes are combined
+	 * like a binary counter: two partial indexes built from the same number of
+	 * files are merged into one twice as large, so only a logarithmic number of
+	 * partial indexes are merged into the shared index at the end.
+	 * 
+	 * @param inputPath file to use
+	 * @param index     inverted index to use
+	 * @param threads   number of threads to use
+	 * @throws IOException          if IO error occurs
+	 * @throws InterruptedException if interrupt occurs
+	 */
+	public static void addInputWithTreeMerge(Path inputPath, ThreadSafeInvertedIndex index, int threads)
+			throws IOException, InterruptedException {
+		if (threads < 1) {
+			return;
+		}
+		List<Path> stream = TextFileFinder.list(inputPath);
+		HashMap<Integer, InvertedIndex> partials = new HashMap<Integer, InvertedIndex>();
+		WorkQueue workQ = new WorkQueue(threads);
+		for (Path textFile : stream) {
+			workQ.execute(new TreeMergeTask(textFile, partials));
+		}
+		workQ.finish();
+		workQ.shutdown();
+		for (InvertedIndex partial : partials.values()) {
+			index.addAll(partial);
+		}
+		index.commit();
+	}
+
+	/**
+	 * Class responsible for building the local index of a file and merging it with
+	 * the other partial indexes of the same level
+	 * 
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class TreeMergeTask implements Runnable {
+
+		/**
+		 * the text file to build the local index from
+		 */
+		private final Path textFile;
+
+		/**
+		 * the partial indexes waiting for a partner, mapped by level
+		 */
+		private final HashMap<Integer, InvertedIndex> partials;
+
+		/**
+		 * Initializes text file and partial indexes
+		 * 
+		 * @param text     to use
+		 * @param partials to use
+		 */
+		public TreeMergeTask(Path text, HashMap<Integer, InvertedIndex> partials) {
+			this.textFile = text;
+			this.partials = partials;
+		}
+
+		@Override
+		public void run() {
+			try {
+				InvertedIndex local = new InvertedIndex();
+				IndexBuilder.build(textFile, local);
+				int level = 0;
+				while (true) {
+					InvertedIndex other;
+					synchronized (partials) {
+						other = partials.remove(level);
+						if (other == null) {
+							partials.put(level, local);
+							return;
+						}
+					}
+					other.addAll(local);
+					local = other;
+					level++;
+				}
+			} catch (Exception e) {
+				System.err.println("Error occured while building the index with threads");
+			}
+		}
 	}
 
 	/**
@@ -56,20 +150,37 @@ public class ThreadSafeIndexBuilder {
 		 */
 		private final ThreadSafeInvertedIndex index;
 
+		/**
+		 * the work queue to index the parts of large files with
+		 */
+		private final WorkQueue workQ;
+
 		/**
 		 * Initializes text file and thread safe inverted index
 		 * 
 		 * @param text          to use
 		 * @param invertedIndex to use
+		 * @param workQ         to index the parts of large files with
 		 */
-		public IndexTask(Path text, ThreadSafeInvertedIndex invertedIndex) {
+		public IndexTask(Path text, ThreadSafeInvertedIndex invertedIndex, WorkQueue workQ) {
 			textFile = text;
 			index = invertedIndex;
+			this.workQ = workQ;
 		}
 
 		@Override
 		public void run() {
 			try {
+				if (Files.size(textFile) > IndexBuilder.CHUNK_SIZE) {
+					List<Long> bounds = IndexBuilder.split(textFile, IndexBuilder.CHUNK_SIZE);
+					if (bounds.size() > 2) {
+						var file = new ChunkedFile(textFile, index, bounds.size() - 1);
+						for (int i = 0; i < bounds.size() - 1; i++) {
+							workQ.execute(new ChunkTask(file, i, bounds.get(i), bounds.get(i + 1)));
+						}
+						return;
+					}
+				}
 				InvertedIndex local = new InvertedIndex();
 				IndexBuilder.build(textFile, local);
 				index.addAll(local);
@@ -78,4 +189,145 @@ public class ThreadSafeIndexBuilder {
 			}
 		}
 	}
+
+	/**
+	 * Class responsible for collecting the parts of a large file and joining them
+	 * into the inverted index once every part is indexed
+	 * 
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class ChunkedFile {
+
+		/**
+		 * the text file being indexed
+		 */
+		private final Path textFile;
+
+		/**
+		 * the inverted index to build to
+		 */
+		private final ThreadSafeInvertedIndex index;
+
+		/**
+		 * the local index of each part, in the order of the file
+		 */
+		private final InvertedIndex[] parts;
+
+		/**
+		 * the number of words in each part
+		 */
+		private final int[] words;
+
+		/**
+		 * the number of parts not done yet
+		 */
+		private final AtomicInteger remaining;
+
+		/**
+		 * whether a part could not be indexed
+		 */
+		private volatile boolean failed;
+
+		/**
+		 * Initializes text file, thread safe inverted index and number of parts
+		 * 
+		 * @param text          to use
+		 * @param invertedIndex to use
+		 * @param count         number of parts
+		 */
+		public ChunkedFile(Path text, ThreadSafeInvertedIndex invertedIndex, int count) {
+			this.textFile = text;
+			this.index = invertedIndex;
+			this.parts = new InvertedIndex[count];
+			this.words = new int[count];
+			this.remaining = new AtomicInteger(count);
+		}
+
+		/**
+		 * records a finished part. The last part to finish joins every part, moving
+		 * the positions of each part past the words of the parts before it, and adds
+		 * them to the inverted index.
+		 * 
+		 * @param chunk the number of the part
+		 * @param part  the local index of the part, or null if it failed
+		 * @param count the number of words in the part
+		 */
+		public void done(int chunk, InvertedIndex part, int count) {
+			if (part == null) {
+				failed = true;
+			} else {
+				parts[chunk] = part;
+				words[chunk] = count;
+			}
+			if (remaining.decrementAndGet() > 0 || failed) {
+				return;
+			}
+			InvertedIndex local = parts[0];
+			int offset = words[0];
+			for (int i = 1; i < parts.length; i++) {
+				local.append(parts[i], offset);
+				offset += words[i];
+			}
+			index.addAll(local);
+		}
+	}
+
+	/**
+	 * Class responsible for indexing one part of a large file
+	 * 
+	 * @author ahmaad idrees
+	 *
+	 */
+	private static class ChunkTask implements Runnable {
+
+		/**
+		 * the file the part belongs to
+		 */
+		private final ChunkedFile file;
+
+		/**
+		 * the number of the part
+		 */
+		private final int chunk;
+
+		/**
+		 * the byte the part starts at
+		 */
+		private final long start;
+
+		/**
+		 * the byte after the part
+		 */
+		private final long end;
+
+		/**
+		 * Initializes the part
+		 * 
+		 * @param file  the file the part belongs to
+		 * @param chunk the number of the part
+		 * @param start the byte the part starts at
+		 * @param end   the byte after the part
+		 */
+		public ChunkTask(ChunkedFile file, int chunk, long start, long end) {
+			this.file = file;
+			this.chunk = chunk;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public void run() {
+			InvertedIndex part = null;
+			int count = 0;
+			try {
+				part = new InvertedIndex();
+				count = IndexBuilder.build(file.textFile, start, end, file.textFile.toString(), part);
+			} catch (Exception e) {
+				part = null;
+				System.err.println("Error occured while building the index with threads");
+			}
+			file.done(chunk, part, count);
+		}
+	}
 }
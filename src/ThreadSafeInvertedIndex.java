@@ -2,6 +2,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -53,6 +54,66 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public void commit() {
+		lock.writeLock().lock();
+		try {
+			super.commit();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void useOffHeap() {
+		lock.writeLock().lock();
+		try {
+			super.useOffHeap();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setScoringModel(ScoringModel model) {
+		lock.writeLock().lock();
+		try {
+			super.setScoringModel(model);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public ScoringModel getScoringModel() {
+		lock.readLock().lock();
+		try {
+			return super.getScoringModel();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public CollectionStatistics getStatistics() {
+		lock.readLock().lock();
+		try {
+			return super.getStatistics();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public int documentFrequency(String stem) {
+		lock.readLock().lock();
+		try {
+			return super.documentFrequency(stem);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void countsToJson(Path path) throws IOException {
 		lock.readLock().lock();
@@ -63,6 +124,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public int getCount(String location) {
+		lock.readLock().lock();
+		try {
+			return super.getCount(location);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<String, Integer> getCountsMap() {
+		lock.readLock().lock();
+		try {
+			return super.getCountsMap();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public boolean containsWord(String word) {
 		lock.readLock().lock();
@@ -103,6 +184,16 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public Set<String> getUnmodifiableLocations() {
+		lock.readLock().lock();
+		try {
+			return super.getUnmodifiableLocations();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public Set<String> getUnmodifiableLocations(String prefix) {
 		lock.readLock().lock();
@@ -143,6 +234,26 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public ArrayList<Result> search(Collection<String> queries, boolean exact, int k) {
+		lock.readLock().lock();
+		try {
+			return super.search(queries, exact, k);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ArrayList<Result> booleanSearch(BooleanQuery query, boolean exact) {
+		lock.readLock().lock();
+		try {
+			return super.booleanSearch(query, exact);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
 	@Override
 	public void toJson(Path path) throws IOException {
 		lock.readLock().lock();
@@ -153,6 +264,45 @@ public class ThreadSafeInvertedIndex extends InvertedIndex {
 		}
 	}
 
+	@Override
+	public void toBinary(Path path) throws IOException {
+		lock.readLock().lock();
+		try {
+			super.toBinary(path);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * loads a binary index file, adding its contents if this index is not empty.
+	 * The lock is not reentrant, so the contents are added without going through
+	 * {@link #addAll(InvertedIndex)}.
+	 */
+	@Override
+	public void load(Path path) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (super.getUnmodifiableLocations().isEmpty()) {
+				super.load(path);
+			} else {
+				InvertedIndex loaded = new InvertedIndex();
+				loaded.load(path);
+				super.addAll(loaded);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * stops any background threads of the index once it is no longer needed. The
+	 * index keeps working afterwards, but indexes that work in the background do
+	 * that work no more. This index has no background threads.
+	 */
+	public void close() {
+	}
+
 	@Override
 	public String toString() {
 		lock.readLock().lock();
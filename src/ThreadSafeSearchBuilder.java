@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * ThreadSafe version of the search builder class, uses a work queue to build
@@ -30,6 +31,23 @@ public class ThreadSafeSearchBuilder implements SearchBuilderInterface {
 	 */
 	private int threads;
 
+	/**
+	 * The number of results to keep for each search, or 0 to keep every result
+	 */
+	private final int top;
+
+	/**
+	 * The cache shared with other searches of the same index, or null to search
+	 * every query
+	 */
+	private final QueryCache cache;
+
+	/**
+	 * The searches running right now, so workers given the same query line wait
+	 * for the first one instead of searching again
+	 */
+	private final SingleFlight<String, ArrayList<InvertedIndex.Result>> flights;
+
 	/**
 	 * Initializes the data structures to use
 	 * 
@@ -37,9 +55,40 @@ public class ThreadSafeSearchBuilder implements SearchBuilderInterface {
 	 * @param threads       number of threads to initialize
 	 */
 	public ThreadSafeSearchBuilder(ThreadSafeInvertedIndex invertedIndex, int threads) {
+		this(invertedIndex, threads, 0);
+	}
+
+	/**
+	 * Initializes the data structures to use, keeping only the best results of
+	 * each search
+	 * 
+	 * @param invertedIndex index to initialize
+	 * @param threads       number of threads to initialize
+	 * @param top           the number of results to keep for each search, or 0 to
+	 *                      keep every result
+	 */
+	public ThreadSafeSearchBuilder(ThreadSafeInvertedIndex invertedIndex, int threads, int top) {
+		this(invertedIndex, threads, top, null);
+	}
+
+	/**
+	 * Initializes the data structures to use, keeping only the best results of
+	 * each search and reusing the results cached by other searches of the index
+	 * 
+	 * @param invertedIndex index to initialize
+	 * @param threads       number of threads to initialize
+	 * @param top           the number of results to keep for each search, or 0 to
+	 *                      keep every result
+	 * @param cache         the cache shared with other searches of the index, or
+	 *                      null to search every query
+	 */
+	public ThreadSafeSearchBuilder(ThreadSafeInvertedIndex invertedIndex, int threads, int top, QueryCache cache) {
 		this.index = invertedIndex;
 		this.results = new TreeMap<String, ArrayList<InvertedIndex.Result>>();
 		this.threads = threads;
+		this.top = top;
+		this.cache = cache;
+		this.flights = new SingleFlight<String, ArrayList<InvertedIndex.Result>>();
 	}
 
 	/**
@@ -119,20 +168,62 @@ public class ThreadSafeSearchBuilder implements SearchBuilderInterface {
 
 	@Override
 	public void buildSearch(String line, boolean exact) {
+		if (BooleanQuery.isBoolean(line)) {
+			BooleanQuery query = BooleanQuery.parse(line);
+			if (query.isEmpty()) {
+				return;
+			}
+			store(query.toString(), QueryCache.key(query, exact, top), () -> {
+				var found = index.booleanSearch(query, exact);
+				return top > 0 ? InvertedIndex.top(found, top) : found;
+			});
+			return;
+		}
 		var queryLine = TextFileStemmer.uniqueStems(line);
 		if (queryLine.isEmpty()) {
 			return;
 		}
-		line = String.join(" ", queryLine);
+		store(String.join(" ", queryLine), QueryCache.key(queryLine, exact, top),
+				() -> top > 0 ? index.search(queryLine, exact, top) : index.search(queryLine, exact));
+	}
+
+	/**
+	 * searches a normalized query line unless it was searched already. Workers
+	 * given the same line while it is being searched wait for those results, and
+	 * the results are stored before the next worker can miss them.
+	 * 
+	 * @param line   the normalized query line
+	 * @param key    the key of the search in the shared cache
+	 * @param search runs the search
+	 */
+	private void store(String line, String key, Supplier<ArrayList<InvertedIndex.Result>> search) {
 		synchronized (results) {
 			if (results.containsKey(line)) {
 				return;
 			}
 		}
-		var searchResults = index.search(queryLine, exact);
-		synchronized (results) {
-			results.put(line, searchResults);
-		}
+		flights.run(line, () -> {
+			synchronized (results) {
+				if (results.containsKey(line)) {
+					return results.get(line);
+				}
+			}
+			var searchResults = cached(key, search);
+			synchronized (results) {
+				results.put(line, searchResults);
+			}
+			return searchResults;
+		});
+	}
 
+	/**
+	 * runs a search through the shared cache, if there is one
+	 * 
+	 * @param key    the key of the search
+	 * @param search runs the search
+	 * @return the results of the search
+	 */
+	private ArrayList<InvertedIndex.Result> cached(String key, Supplier<ArrayList<InvertedIndex.Result>> search) {
+		return cache == null ? search.get() : cache.search(key, search);
 	}
 }
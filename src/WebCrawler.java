@@ -1,7 +1,10 @@
 import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -10,6 +13,12 @@ import java.util.HashSet;
  */
 public class WebCrawler {
 
+	/**
+	 * default number of pages fetched at the same time when crawling with
+	 * fetchers
+	 */
+	public static final int DEFAULT_FETCHES = 64;
+
 	/**
 	 * work queue to use
 	 */
@@ -27,12 +36,33 @@ public class WebCrawler {
 	/**
 	 * set of links found within the seed url
 	 */
-	public HashSet<URL> linkSet;
+	public SeenUrlSet linkSet;
+
+	/**
+	 * number of links found that are crawled, at most the limit
+	 */
+	private final AtomicInteger admitted;
 	
 	/**
 	 * 
 	 */
 	public ThreadSafeInvertedIndex index;
+
+	/**
+	 * number of pages fetched at the same time when crawling with fetchers, or 0
+	 * to crawl on the work queue
+	 */
+	public int fetches;
+	
+	/**
+	 * frontier deciding which page to fetch next
+	 */
+	public CrawlFrontier frontier;
+
+	/**
+	 * state of the crawl kept on disk, or null to keep it in memory only
+	 */
+	private CrawlCheckpoint checkpoint;
 	
 	/**
 	 * constructor for the web crawler
@@ -42,8 +72,41 @@ public class WebCrawler {
 	 * @param index to use
 	 */
 	public WebCrawler(WorkQueue workQ, int limit, int threads, ThreadSafeInvertedIndex index ) {
+		this(workQ, limit, threads, index, 0);
+	}
+
+	/**
+	 * constructor for a web crawler that fetches every page on its own fetcher
+	 * thread, a virtual thread where the runtime has them, and cleans and indexes
+	 * the pages on a work queue with a thread per processor
+	 * @param workQ the work queue to use
+	 * @param limit limit to use
+	 * @param threads to use
+	 * @param index to use
+	 * @param fetches number of pages fetched at the same time, or 0 to fetch on
+	 *                the work queue
+	 */
+	public WebCrawler(WorkQueue workQ, int limit, int threads, ThreadSafeInvertedIndex index, int fetches) {
+		this(workQ, limit, threads, index, fetches, new CrawlFrontier());
+	}
+
+	/**
+	 * constructor for a web crawler that limits how often it fetches from each host
+	 * @param workQ the work queue to use
+	 * @param limit limit to use
+	 * @param threads to use
+	 * @param index to use
+	 * @param fetches number of pages fetched at the same time, or 0 to fetch on
+	 *                the work queue
+	 * @param frontier the frontier deciding which page to fetch next
+	 */
+	public WebCrawler(WorkQueue workQ, int limit, int threads, ThreadSafeInvertedIndex index, int fetches,
+			CrawlFrontier frontier) {
+		this.frontier = frontier;
+		this.fetches = fetches;
 		this.workQ = workQ;
-		this.linkSet = new HashSet<URL>();
+		this.linkSet = new SeenUrlSet(Math.max(limit, SeenUrlSet.DEFAULT_EXPECTED));
+		this.admitted = new AtomicInteger();
 		this.limit = limit;
 		this.threads = threads;
 		this.workQ = new WorkQueue(threads);
@@ -58,81 +121,257 @@ public class WebCrawler {
 	 * @throws InterruptedException if interrupt error occurs
 	 */
 	public  void buildFromSeed(URL url, ThreadSafeInvertedIndex index) throws IOException, InterruptedException {
+		buildFromSeed(url, index, null);
+	}
+
+	/**
+	 * crawls from a seed url, keeping the state of the crawl on disk. If the
+	 * checkpoint resumes an earlier crawl, the crawl goes on from its last
+	 * checkpoint instead of the seed.
+	 * @param url seed url to build from
+	 * @param index thread safe inverted index to use
+	 * @param checkpoint the state of the crawl on disk, or null to keep it in memory only
+	 * @throws IOException if IO error occurs
+	 * @throws InterruptedException if interrupt error occurs
+	 */
+	public void buildFromSeed(URL url, ThreadSafeInvertedIndex index, CrawlCheckpoint checkpoint)
+			throws IOException, InterruptedException {
 		if (threads < 1) {
 			return;
 		}
-		ArrayList<URL> linkList = new ArrayList<URL>();
-		String html = HtmlFetcher.fetch(url,3);
-		html = HtmlCleaner.stripComments(html);
-		html = HtmlCleaner.stripElement(html, "head");
-		html = HtmlCleaner.stripElement(html, "style");
-		html = HtmlCleaner.stripElement(html, "script");
-		html = HtmlCleaner.stripElement(html, "noscript");
-		html = HtmlCleaner.stripElement(html, "svg");
-		linkList = LinkParser.listLinks(url, html);
-		html = HtmlCleaner.stripTags(html);
-		html = HtmlCleaner.stripEntities(html);
-		for (URL link : linkList) {
-			if(linkSet.size() < limit && !linkSet.contains(link)) {
-				linkSet.add(link);
-				workQ.execute(new Crawler(link, index));
+		this.checkpoint = checkpoint;
+		if (checkpoint == null || !checkpoint.restore(index, linkSet, frontier)) {
+			addLinks(List.of(url));
+		} else {
+			admitted.set(linkSet.size());
+		}
+		if (fetches > 0) {
+			workQ.shutdown();
+			new FetcherCrawl().crawl();
+		} else {
+			for (int i = 0; i < threads; i++) {
+				workQ.execute(new Crawler(index));
 			}
+			workQ.finish();
+			workQ.shutdown();
+		}
+		if (checkpoint != null) {
+			checkpoint.finish();
 		}
-		workQ.finish();
-		workQ.shutdown();
+		index.commit();
 	}
 
 	/**
+	 * helper method that adds the links not seen yet to the frontier, as long as
+	 * the limit is not reached. Each link seen for the first time takes a
+	 * number, and only the links numbered within the limit are crawled, so the
+	 * limit holds without locking the set of links.
+	 *
+	 * @param links the links to add
+	 */
+	private void addLinks(List<URL> links) {
+		for (URL link : links) {
+			if (admitted.get() >= limit) {
+				return;
+			}
+			if (linkSet.add(link) && admitted.incrementAndGet() <= limit) {
+				if (checkpoint != null) {
+					checkpoint.seen(link);
+				}
+				frontier.add(link);
+			}
+		}
+	}
+
+	/**
+	 * helper method that cleans and indexes a fetched page and adds the links
+	 * found on it to the frontier, logging the page as done if the crawl keeps
+	 * its state on disk
+	 *
+	 * @param url the url of the page
+	 * @param html the html of the page
+	 * @param index the index to add to
+	 */
+	private void indexPage(URL url, String html, ThreadSafeInvertedIndex index) {
+		HtmlScanner page = HtmlScanner.forThread();
+		page.scan(url, html);
+		InvertedIndex local = new InvertedIndex();
+		IndexBuilder.build(url, local, page);
+		if (checkpoint == null) {
+			index.addAll(local);
+			addLinks(page.getLinks());
+			return;
+		}
+		checkpoint.startPage();
+		try {
+			index.addAll(local);
+			addLinks(page.getLinks());
+			checkpoint.done(url, local);
+		} finally {
+			checkpoint.endPage();
+		}
+	}
+
+	/**
+	 * Fetches and indexes pages taken from the frontier until every page is done
+	 * 
 	 * @author ahmaadidrees
 	 *
 	 */
 	private  class Crawler implements Runnable {
 
-		/**
-		 * 
-		 */
-		private  URL url;
 		/**
 		 * 
 		 */
 		private ThreadSafeInvertedIndex index;
 
 		/**
-		 * @param link to use
 		 * @param index index to use
 		 */
-		public Crawler(URL link, ThreadSafeInvertedIndex index) {
-			url = link;
+		public Crawler(ThreadSafeInvertedIndex index) {
 			this.index = index;
 		}
 
 		@Override
 		public void run() {
 			try {
-				String html = HtmlFetcher.fetch(url, 3);
-				html = HtmlCleaner.stripComments(html);
-				html = HtmlCleaner.stripElement(html, "head");
-				html = HtmlCleaner.stripElement(html, "style");
-				html = HtmlCleaner.stripElement(html, "script");
-				html = HtmlCleaner.stripElement(html, "noscript");
-				html = HtmlCleaner.stripElement(html, "svg");
-				ArrayList<URL> otherLinks = new ArrayList<URL>();
-				otherLinks = LinkParser.listLinks(url, html);
-				html = HtmlCleaner.stripTags(html);
-				html = HtmlCleaner.stripEntities(html);
-				InvertedIndex local = new InvertedIndex();
-				IndexBuilder.build(url, local, html);
-				index.addAll(local);
-				synchronized(linkSet) {
-					for (URL urls : otherLinks) {
-						if(linkSet.size() < limit && !linkSet.contains(urls)) {
-							linkSet.add(urls);
-							workQ.execute(new Crawler(urls, index));
+				URL url;
+				while ((url = frontier.take()) != null) {
+					try {
+						String html;
+						try {
+							html = HtmlFetcher.fetch(url, 3);
+						} finally {
+							frontier.release(url);
 						}
+						indexPage(url, html, index);
+					} catch (IOException e) {
+						System.out.println("error occured while fetching the html from the url: " + url.toString());
+					} catch (RuntimeException e) {
+						// one bad page must not stop this thread from crawling the rest
+						System.out.println("error occured while crawling the url: " + url.toString() + ": " + e);
+					} finally {
+						frontier.done();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * creates the executor running the fetchers, giving every fetch its own
+	 * virtual thread if the runtime has them. Otherwise the fetches run on a fixed
+	 * number of platform threads.
+	 *
+	 * @param fetches number of pages fetched at the same time
+	 * @return the executor
+	 */
+	private static ExecutorService newFetchers(int fetches) {
+		try {
+			// looked up at run time so this still builds and runs on runtimes without virtual threads
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return Executors.newFixedThreadPool(fetches);
+		}
+	}
+
+	/**
+	 * A crawl that fetches pages on fetcher threads and cleans and indexes them on
+	 * a work queue with a thread per processor. Fetches mostly wait on the
+	 * network, so the number of pages fetched at the same time is bounded by
+	 * {@link WebCrawler#fetches} instead of the number of threads.
+	 *
+	 * @author ahmaad idrees
+	 *
+	 */
+	private class FetcherCrawl {
+
+		/**
+		 * the executor running the fetches
+		 */
+		private final ExecutorService fetchers;
+
+		/**
+		 * permits for the pages fetched at the same time
+		 */
+		private final Semaphore inFlight;
+
+		/**
+		 * the work queue cleaning and indexing the fetched pages
+		 */
+		private final WorkQueue cleaners;
+
+		/**
+		 * Initializes the fetchers and cleaners
+		 */
+		public FetcherCrawl() {
+			this.fetchers = newFetchers(fetches);
+			this.inFlight = new Semaphore(fetches);
+			this.cleaners = new WorkQueue(Runtime.getRuntime().availableProcessors());
+		}
+
+		/**
+		 * crawls until every page found within the limit is indexed, starting a
+		 * fetch whenever a permit is free and the frontier has a page to fetch
+		 *
+		 * @throws InterruptedException if interrupted while waiting
+		 */
+		public void crawl() throws InterruptedException {
+			try {
+				while (true) {
+					inFlight.acquire();
+					URL link = frontier.take();
+					if (link == null) {
+						break;
 					}
+					fetchers.execute(() -> fetch(link));
 				}
+			} finally {
+				fetchers.shutdown();
+				cleaners.finish();
+				cleaners.shutdown();
+			}
+		}
+
+		/**
+		 * fetches a page and hands it to the cleaners, holding a permit while fetching
+		 *
+		 * @param link the url of the page
+		 */
+		private void fetch(URL link) {
+			boolean queued = false;
+			try {
+				String html;
+				try {
+					html = HtmlFetcher.fetch(link, 3);
+				} finally {
+					frontier.release(link);
+					inFlight.release();
+				}
+				cleaners.execute(() -> clean(link, html));
+				queued = true;
 			} catch (IOException e) {
-				System.out.println("error occured while fetching the html from the url: " + url.toString());
+				System.out.println("error occured while fetching the html from the url: " + link.toString());
+			} finally {
+				if (!queued) {
+					frontier.done();
+				}
+			}
+		}
+
+		/**
+		 * cleans and indexes a fetched page and adds the new pages it links to
+		 *
+		 * @param link the url of the page
+		 * @param html the html of the page
+		 */
+		private void clean(URL link, String html) {
+			try {
+				indexPage(link, html, index);
+			} finally {
+				frontier.done();
 			}
 		}
 	}